@@ -0,0 +1,52 @@
+package dbaccess.bench;
+
+import dbaccess.Database;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Coste de obtener una conexión: del pool con Database.connect() o abriendo
+ * una conexión física nueva como se hacía antes en cada consulta.
+ * @author zelda
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConnectBenchmark {
+    
+    private Database northwind;
+    
+    @Setup
+    public void setup(){
+        this.northwind = Northwind.open();
+    }
+    
+    @TearDown
+    public void tearDown(){
+        this.northwind.close();
+    }
+    
+    @Benchmark
+    public boolean pooled() throws SQLException{
+        try (Connection conn = this.northwind.connect()){
+            return conn.getAutoCommit();
+        }
+    }
+    
+    @Benchmark
+    public boolean physical() throws SQLException{
+        try (Connection conn = this.northwind.getDialect().connect("db/", 0, 
+                "Northwind.db", "", "", this.northwind.getDriverProperties())){
+            return conn.getAutoCommit();
+        }
+    }
+}
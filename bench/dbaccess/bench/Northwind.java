@@ -0,0 +1,59 @@
+package dbaccess.bench;
+
+import dbaccess.Database;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Properties;
+import utils.Configuration;
+
+/**
+ * Utilidades comunes de los benchmarks: la base de datos SQLite de ejemplo 
+ * (db/Northwind.db) y una salida que descarta lo que se escribe contando los
+ * bytes. Los benchmarks se ejecutan desde la carpeta del proyecto.
+ * @author zelda
+ */
+final class Northwind {
+    
+    private Northwind(){
+    }
+    
+    /**
+     * Crea la base de datos con la configuración de config/SQLite.cfg.
+     * @return La base de datos Northwind.
+     */
+    static Database open(){
+        Properties config = Configuration.loadConfig("config/SQLite.cfg");
+        Database northwind = new Database(
+                config.getProperty("path"),
+                config.getProperty("file"),
+                "SQLite"
+        );
+        northwind.configure(config);
+        return northwind;
+    }
+    
+    /**
+     * Salida que descarta lo que se escribe y cuenta los bytes.
+     */
+    static class CountingOutput extends OutputStream {
+        
+        long bytes;
+        
+        @Override
+        public void write(int b){
+            this.bytes++;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len){
+            this.bytes += len;
+        }
+        
+        /**
+         * @return Una salida de consola que escribe en este contador.
+         */
+        PrintStream stream(){
+            return new PrintStream(this, false);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package dbaccess.bench;
+
+import dbaccess.Database;
+import dbaccess.QueryResult;
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Velocidad de dibujado de tablas con printTable(), en filas y bytes por 
+ * segundo. Los resultados se leen una vez en memoria para medir solo el 
+ * dibujado y la salida de consola se descarta.
+ * @author zelda
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RenderBenchmark {
+    
+    private QueryResult orders;
+    private Database northwind;
+    private PrintStream console;
+    private Northwind.CountingOutput output;
+    
+    /**
+     * Filas y bytes dibujados, JMH los muestra como ritmo por segundo.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        
+        public long rows;
+        public long bytes;
+        
+        @Setup(Level.Iteration)
+        public void reset(){
+            this.rows = this.bytes = 0;
+        }
+    }
+    
+    @Setup
+    public void setup() throws SQLException{
+        this.northwind = Northwind.open();
+        try (
+                Connection conn = this.northwind.connect();
+                PreparedStatement stmt = conn.prepareStatement("SELECT * FROM Orders");
+                ResultSet result = stmt.executeQuery();
+            ){
+            this.orders = QueryResult.read(result);
+        }
+        this.console = System.out;
+        this.output = new Northwind.CountingOutput();
+        System.setOut(this.output.stream());
+    }
+    
+    @TearDown
+    public void tearDown(){
+        System.setOut(this.console);
+        this.northwind.close();
+    }
+    
+    @Benchmark
+    public void printTable(Counters counters){
+        long before = this.output.bytes;
+        this.northwind.printTable(this.orders, "Orders");
+        counters.rows += this.orders.getRowCount();
+        counters.bytes += this.output.bytes - before;
+    }
+}
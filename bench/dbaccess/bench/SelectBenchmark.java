@@ -0,0 +1,53 @@
+package dbaccess.bench;
+
+import dbaccess.Database;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Latencia de una búsqueda con parámetros completa (conexión, consulta y 
+ * dibujado), como la opción "Buscar un empleado" del menú de SQLite.
+ * @author zelda
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SelectBenchmark {
+    
+    private static final String SEARCH = "SELECT EmployeeID, FirstName, "
+            + "LastName, HireDate, Address, City, HomePhone FROM Employees "
+            + "WHERE FirstName = ?;";
+    
+    @Param({"Nancy", "Andrew", "Nadie"})
+    public String firstName;
+    
+    private Database northwind;
+    private PrintStream console;
+    
+    @Setup
+    public void setup(){
+        this.northwind = Northwind.open();
+        this.console = System.out;
+        System.setOut(new Northwind.CountingOutput().stream());
+    }
+    
+    @TearDown
+    public void tearDown(){
+        System.setOut(this.console);
+        this.northwind.close();
+    }
+    
+    @Benchmark
+    public void search(){
+        this.northwind.select(SEARCH, "Employees", new Object[]{this.firstName});
+    }
+}
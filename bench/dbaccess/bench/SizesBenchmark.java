@@ -0,0 +1,79 @@
+package dbaccess.bench;
+
+import dbaccess.Database;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Cálculo de los tamaños de las columnas de la tabla Orders: recorriendo el
+ * resultado con loadSizes(), con la consulta de agregado de 
+ * loadSizeByQuery() o con la definición de las columnas en el catálogo con
+ * getColumnWidths(), sin leer las filas.
+ * @author zelda
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SizesBenchmark {
+    
+    private static final String SELECT = "SELECT OrderID, CustomerID, "
+            + "OrderDate, ShipName, ShipCity, ShipCountry FROM Orders";
+    private static final String SIZES = "SELECT "
+            + "MAX(LENGTH(OrderID)) as OrderID, "
+            + "MAX(LENGTH(CustomerID)) as CustomerID, "
+            + "MAX(LENGTH(OrderDate)) as OrderDate, "
+            + "MAX(LENGTH(ShipName)) as ShipName, "
+            + "MAX(LENGTH(ShipCity)) as ShipCity, "
+            + "MAX(LENGTH(ShipCountry)) as ShipCountry, "
+            + "COUNT(OrderID) FROM Orders";
+    
+    private Database northwind;
+    
+    @Setup
+    public void setup(){
+        this.northwind = Northwind.open();
+    }
+    
+    @TearDown
+    public void tearDown(){
+        this.northwind.close();
+    }
+    
+    @Benchmark
+    public int[] loadSizes() throws SQLException{
+        try (
+                Connection conn = this.northwind.connect();
+                PreparedStatement stmt = conn.prepareStatement(SELECT);
+                ResultSet result = stmt.executeQuery();
+            ){
+            return this.northwind.loadSizes(result);
+        }
+    }
+    
+    @Benchmark
+    public int[] loadSizeByQuery(){
+        return this.northwind.loadSizeByQuery(SIZES);
+    }
+    
+    @Benchmark
+    public int[] getColumnWidths() throws SQLException{
+        try (
+                Connection conn = this.northwind.connect();
+                PreparedStatement stmt = conn.prepareStatement(SELECT);
+                ResultSet result = stmt.executeQuery();
+            ){
+            return this.northwind.getColumnWidths(result);
+        }
+    }
+}
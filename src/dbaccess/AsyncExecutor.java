@@ -0,0 +1,159 @@
+package dbaccess;
+
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Ejecuta consultas de una base de datos en segundo plano. Si la máquina
+ * virtual tiene hilos virtuales (Java 21 o posterior) cada consulta se
+ * ejecuta en su propio hilo virtual, de forma que esperar al servidor no
+ * ocupa un hilo del sistema; si no, se usa un grupo fijo de hilos. En ambos
+ * casos no se ejecutan más de <b>async.limit</b> consultas a la vez.
+ * @author zelda
+ */
+class AsyncExecutor {
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final boolean virtual;
+
+    /**
+     * @param name Nombre de la base de datos, para nombrar los hilos.
+     * @param limit Número máximo de consultas ejecutándose a la vez.
+     */
+    AsyncExecutor(String name, int limit){
+        this.permits = new Semaphore(limit, true);
+        ExecutorService virtualExecutor = newVirtualExecutor();
+        this.virtual = virtualExecutor != null;
+        if (this.virtual)
+            this.executor = virtualExecutor;
+        else {
+            AtomicInteger count = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(limit, task -> {
+                Thread thread = new Thread(task, name + "-async-"
+                        + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Ejecuta una consulta en segundo plano.
+     * @param <T> Tipo del resultado.
+     * @param task La consulta.
+     * @return El resultado futuro. Al cancelarlo se cancela también la
+     * sentencia que se está ejecutando en el servidor.
+     */
+    <T> CompletableFuture<T> submit(Task<T> task){
+        QueryFuture<T> future = new QueryFuture<>();
+        try {
+            future.worker = this.executor.submit(() -> this.run(task, future));
+        } catch (RuntimeException e){ // Ya se ha cerrado.
+            future.completeExceptionally(e);
+        }
+        if (future.isCancelled() && future.worker != null)
+            future.worker.cancel(true);
+        return future;
+    }
+
+    /**
+     * @return True si las consultas se ejecutan en hilos virtuales.
+     */
+    boolean isVirtual(){
+        return this.virtual;
+    }
+
+    /**
+     * Deja de aceptar consultas, las que ya estaban en marcha terminan.
+     */
+    void shutdown(){
+        this.executor.shutdown();
+    }
+
+    private <T> void run(Task<T> task, QueryFuture<T> future){
+        if (future.isDone())
+            return;
+        try {
+            this.permits.acquire();
+        } catch (InterruptedException e){
+            future.completeExceptionally(e);
+            return;
+        }
+        try {
+            if (!future.isDone())
+                future.complete(task.run(future.running));
+        } catch (SQLException | RuntimeException e){
+            future.completeExceptionally(e);
+        } finally {
+            this.permits.release();
+        }
+    }
+
+    /**
+     * Crea un ejecutor de hilos virtuales por reflexión, para poder compilar
+     * con Java 8.
+     * @return El ejecutor o null si la máquina virtual no los tiene.
+     */
+    private static ExecutorService newVirtualExecutor(){
+        try {
+            Method factory = Executors.class.getMethod(
+                    "newVirtualThreadPerTaskExecutor");
+            return (ExecutorService)factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e){
+            return null;
+        }
+    }
+
+    /**
+     * Consulta que se ejecuta en segundo plano.
+     * @param <T> Tipo del resultado.
+     */
+    interface Task<T> {
+
+        /**
+         * @param running Se le asigna la sentencia mientras se ejecuta en el
+         * servidor, para poder cancelarla.
+         * @return El resultado de la consulta.
+         * @throws SQLException
+         */
+        T run(AtomicReference<Statement> running) throws SQLException;
+    }
+
+    /**
+     * Resultado futuro que al cancelarse cancela la sentencia en el servidor
+     * o, si todavía no se estaba ejecutando, interrumpe el hilo que espera
+     * su turno o una conexión.
+     */
+    private static class QueryFuture<T> extends CompletableFuture<T> {
+
+        private final AtomicReference<Statement> running = new AtomicReference<>();
+        private volatile Future<?> worker;
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning){
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled){
+                Statement statement = this.running.get();
+                Future<?> current = this.worker;
+                if (statement != null)
+                    try {
+                        statement.cancel();
+                    } catch (SQLException e){
+                        // El driver no permite cancelar, la consulta terminará sola.
+                    }
+                else if (current != null)
+                    current.cancel(true); // Esperando un permiso o una conexión.
+            }
+            return cancelled;
+        }
+    }
+}
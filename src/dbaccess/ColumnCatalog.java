@@ -0,0 +1,293 @@
+package dbaccess;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Definición de las columnas de las tablas (tipo, tamaño y si admite nulos)
+ * leída de DatabaseMetaData la primera vez que se muestra cada tabla, para
+ * calcular el ancho de las columnas de una consulta sin tener que recorrer
+ * sus valores ni hacer una consulta de agregado con MAX(LENGTH(...)).
+ * <p>
+ * Se guarda en memoria durante toda la sesión y, si se indica un archivo, se
+ * escribe en él para no tener que leer el catálogo en la siguiente
+ * ejecución. Si cambia la definición de una tabla hay que borrar el archivo
+ * (o llamar a clear()).
+ * @author zelda
+ */
+class ColumnCatalog {
+
+    /**
+     * Ancho de una columna cuyo tamaño no se conoce o no está acotado (TEXT,
+     * BLOB...).
+     */
+    static final int UNKNOWN = -1;
+
+    private final Path file;
+    private final Map<String, Map<String, Column>> tables = new ConcurrentHashMap<>();
+    private boolean loaded;
+
+    /**
+     * @param file Archivo en el que se guarda el catálogo entre ejecuciones,
+     * null para guardarlo solo en memoria.
+     */
+    ColumnCatalog(Path file){
+        this.file = file;
+    }
+
+    /**
+     * Calcula el ancho máximo que pueden tener los valores de cada columna de
+     * un resultado. Las columnas de una tabla se miden con su definición en
+     * el catálogo y el resto (expresiones, o si el driver no indica la tabla)
+     * con el tamaño de presentación que da el driver.
+     * @param conn Conexión del resultado, para leer el catálogo.
+     * @param data Información de las columnas del resultado.
+     * @return El ancho de cada columna, UNKNOWN si no está acotado.
+     * @throws SQLException
+     */
+    int[] widths(Connection conn, ResultSetMetaData data) throws SQLException{
+        int[] widths = new int[data.getColumnCount()];
+        for (int i = 0; i < widths.length; i++){
+            Column column = null;
+            String table = data.getTableName(i + 1);
+            if (table != null && !table.isEmpty())
+                column = this.table(conn, data.getCatalogName(i + 1),
+                        data.getSchemaName(i + 1), table).get(
+                        data.getColumnName(i + 1).toLowerCase());
+            widths[i] = column != null ? column.width() : displayWidth(data, i + 1);
+        }
+        return widths;
+    }
+
+    /**
+     * Olvida todas las definiciones y borra el archivo.
+     */
+    synchronized void clear(){
+        this.tables.clear();
+        if (this.file != null)
+            try {
+                Files.deleteIfExists(this.file);
+            } catch (IOException e){
+                //e.printStackTrace();
+            }
+    }
+
+    /**
+     * Obtiene las columnas de una tabla, leyéndolas del catálogo si no se
+     * conocían.
+     * @return Las columnas por nombre en minúsculas, vacío si no se
+     * encuentra la tabla.
+     */
+    private Map<String, Column> table(Connection conn, String catalog,
+            String schema, String table) throws SQLException{
+        this.load();
+        if (catalog == null || catalog.isEmpty())
+            catalog = conn.getCatalog();
+        String key = (catalog != null ? catalog : "") + "."
+                + (schema != null ? schema : "") + "." + table;
+        key = key.toLowerCase();
+        Map<String, Column> columns = this.tables.get(key);
+        if (columns != null)
+            return columns;
+        columns = new HashMap<>();
+        DatabaseMetaData meta = conn.getMetaData();
+        String escape = meta.getSearchStringEscape();
+        try (ResultSet result = meta.getColumns(catalog == null
+                || catalog.isEmpty() ? null : catalog, schema == null
+                || schema.isEmpty() ? null : pattern(schema, escape),
+                pattern(table, escape), "%")){
+            while (result.next()){
+                // Los patrones no distinguen mayúsculas en algunos drivers.
+                if (!table.equalsIgnoreCase(result.getString("TABLE_NAME")))
+                    continue;
+                String name = result.getString("COLUMN_NAME").toLowerCase();
+                if (!columns.containsKey(name))
+                    columns.put(name, new Column(result.getInt("DATA_TYPE"),
+                            result.getInt("COLUMN_SIZE"),
+                            result.getInt("DECIMAL_DIGITS"),
+                            result.getInt("NULLABLE")
+                                    != DatabaseMetaData.columnNoNulls));
+            }
+        }
+        columns = Collections.unmodifiableMap(columns);
+        this.tables.put(key, columns);
+        this.save();
+        return columns;
+    }
+
+    /**
+     * Lee el archivo la primera vez.
+     */
+    private synchronized void load(){
+        if (this.loaded)
+            return;
+        this.loaded = true;
+        if (this.file == null || !Files.exists(this.file))
+            return;
+        Properties saved = new Properties();
+        try (InputStream in = Files.newInputStream(this.file)){
+            saved.load(in);
+        } catch (IOException e){
+            return; // Se vuelve a leer del catálogo.
+        }
+        for (String key : saved.stringPropertyNames()){
+            Map<String, Column> columns = new HashMap<>();
+            for (String line : saved.getProperty(key).split("\n")){
+                String[] fields = line.split("\t", 5);
+                if (fields.length == 5)
+                    try {
+                        columns.put(fields[4], new Column(
+                                Integer.parseInt(fields[0]),
+                                Integer.parseInt(fields[1]),
+                                Integer.parseInt(fields[2]),
+                                Boolean.parseBoolean(fields[3])));
+                    } catch (NumberFormatException e){
+                        //e.printStackTrace();
+                    }
+            }
+            this.tables.put(key, Collections.unmodifiableMap(columns));
+        }
+    }
+
+    /**
+     * Escribe todas las tablas conocidas en el archivo, una por propiedad
+     * con una línea por columna.
+     */
+    private synchronized void save(){
+        if (this.file == null)
+            return;
+        Properties saved = new Properties();
+        for (Map.Entry<String, Map<String, Column>> table : this.tables.entrySet()){
+            StringBuilder lines = new StringBuilder();
+            for (Map.Entry<String, Column> column : table.getValue().entrySet()){
+                Column c = column.getValue();
+                if (lines.length() > 0)
+                    lines.append('\n');
+                lines.append(c.type).append('\t').append(c.size).append('\t')
+                        .append(c.scale).append('\t').append(c.nullable)
+                        .append('\t').append(column.getKey());
+            }
+            saved.setProperty(table.getKey(), lines.toString());
+        }
+        try {
+            if (this.file.getParent() != null)
+                Files.createDirectories(this.file.getParent());
+            try (OutputStream out = Files.newOutputStream(this.file)){
+                saved.store(out, "Columnas de las tablas: tipo, longitud, "
+                        + "decimales, nulos y nombre");
+            }
+        } catch (IOException e){
+            //e.printStackTrace();
+        }
+    }
+
+    /**
+     * Escapa los comodines de un nombre para usarlo como patrón.
+     */
+    private static String pattern(String name, String escape){
+        if (escape == null || escape.isEmpty())
+            return name;
+        return name.replace(escape, escape + escape).replace("_", escape + "_")
+                .replace("%", escape + "%");
+    }
+
+    /**
+     * Ancho según el tamaño de presentación del driver, que muchos drivers
+     * dan como Integer.MAX_VALUE para los tipos sin límite.
+     * @param data Información de las columnas del resultado.
+     * @param column Índice de la columna, empezando en 1.
+     * @return El ancho, UNKNOWN si no está acotado.
+     * @throws SQLException
+     */
+    static int displayWidth(ResultSetMetaData data, int column)
+            throws SQLException{
+        int size = data.getColumnDisplaySize(column);
+        if (size <= 0 || size > 0xFFFF)
+            return UNKNOWN;
+        return data.isNullable(column) != ResultSetMetaData.columnNoNulls
+                ? Math.max(size, 4) : size;
+    }
+
+    /**
+     * Definición de una columna.
+     */
+    private static class Column {
+
+        private final int type;
+        private final int size;
+        private final int scale;
+        private final boolean nullable;
+
+        Column(int type, int size, int scale, boolean nullable){
+            this.type = type;
+            this.size = size;
+            this.scale = scale;
+            this.nullable = nullable;
+        }
+
+        /**
+         * @return Caracteres que ocupa el valor más largo de la columna tal
+         * como lo devuelve getString(), UNKNOWN si no está acotado.
+         */
+        int width(){
+            int width;
+            switch (this.type){
+                case Types.BIT:
+                case Types.BOOLEAN:
+                    width = this.size > 1 ? this.size : 5;
+                    break;
+                case Types.TINYINT:
+                    width = 4;
+                    break;
+                case Types.SMALLINT:
+                    width = 6;
+                    break;
+                case Types.INTEGER:
+                    width = 11;
+                    break;
+                case Types.BIGINT:
+                    width = 20;
+                    break;
+                case Types.DECIMAL:
+                case Types.NUMERIC:
+                    // Signo y punto decimal.
+                    width = this.size > 0 ? this.size + (this.scale > 0 ? 2 : 1)
+                            : UNKNOWN;
+                    break;
+                case Types.DATE:
+                    width = 10;
+                    break;
+                case Types.TIME:
+                    width = 8;
+                    break;
+                case Types.TIMESTAMP:
+                    width = 19 + (this.scale > 0 ? this.scale + 1 : 0);
+                    break;
+                case Types.CHAR:
+                case Types.VARCHAR:
+                case Types.NCHAR:
+                case Types.NVARCHAR:
+                    width = this.size > 0 && this.size <= 0xFFFF ? this.size
+                            : UNKNOWN;
+                    break;
+                default:
+                    width = UNKNOWN;
+            }
+            return this.nullable && width != UNKNOWN ? Math.max(width, 4) : width;
+        }
+    }
+}
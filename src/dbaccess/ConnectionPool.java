@@ -0,0 +1,351 @@
+package dbaccess;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import utils.Configuration;
+
+/**
+ * Pool de conexiones de una base de datos. Mantiene abiertas las conexiones
+ * físicas para reutilizarlas entre consultas, de forma que cada operación no
+ * tenga que pagar de nuevo la conexión TCP y la autenticación.
+ * <p>
+ * Las conexiones que entrega son envoltorios de la conexión física: al
+ * llamar a <code>close()</code> la conexión vuelve al pool en lugar de
+ * cerrarse, por lo que se pueden seguir usando con try-with-resources.
+ * <p>
+ * Parámetros leídos del archivo de configuración:
+ * <ul>
+ *     <li><b>pool.maxSize</b> - Número máximo de conexiones abiertas (8).</li>
+ *     <li><b>pool.minSize</b> - Conexiones que se mantienen abiertas aunque
+ *     estén inactivas (1).</li>
+ *     <li><b>pool.idleTimeout</b> - Segundos que una conexión puede estar
+ *     inactiva antes de cerrarse (300).</li>
+ *     <li><b>pool.acquireTimeout</b> - Segundos que se espera por una conexión
+ *     libre antes de abandonar (10).</li>
+ *     <li><b>pool.validate</b> - Comprueba que la conexión sigue viva antes de
+ *     entregarla (true).</li>
+ *     <li><b>pool.statementCacheSize</b> - Sentencias preparadas que se
+ *     guardan por cada conexión para reutilizarlas, 0 la desactiva (32).</li>
+ * </ul>
+ * @author zelda
+ */
+public class ConnectionPool {
+
+    private final Database database;
+    private final int maxSize;
+    private final int minSize;
+    private final long idleTimeout;
+    private final long acquireTimeout;
+    private final boolean validate;
+    private final int statementCacheSize;
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final Timer evictor;
+    private int total;
+    private boolean closed;
+
+    /**
+     * Crea el pool de una base de datos.
+     * @param database Base de datos que abre las conexiones físicas.
+     * @param config Propiedades de configuración, puede ser null.
+     */
+    public ConnectionPool(Database database, Properties config){
+        this.database = database;
+        this.maxSize = Math.max(1, Configuration.getInt(config, "pool.maxSize", 8));
+        this.minSize = Math.min(this.maxSize,
+                Math.max(0, Configuration.getInt(config, "pool.minSize", 1)));
+        this.idleTimeout = TimeUnit.SECONDS.toMillis(
+                Configuration.getInt(config, "pool.idleTimeout", 300));
+        this.acquireTimeout = TimeUnit.SECONDS.toMillis(
+                Configuration.getInt(config, "pool.acquireTimeout", 10));
+        this.validate = Configuration.getBoolean(config, "pool.validate", true);
+        this.statementCacheSize = Math.max(0, 
+                Configuration.getInt(config, "pool.statementCacheSize", 32));
+        this.permits = new Semaphore(this.maxSize, true);
+        this.evictor = new Timer("pool-evictor", true);
+        long period = Math.max(1000, this.idleTimeout / 2);
+        this.evictor.schedule(new TimerTask(){
+            @Override
+            public void run(){
+                evictIdle();
+            }
+        }, period, period);
+    }
+
+    /**
+     * Obtiene una conexión del pool, reutilizando una inactiva si la hay o
+     * abriendo una nueva si no se ha alcanzado el máximo.
+     * @return La conexión, se devuelve al pool al cerrarla.
+     * @throws SQLException Si no se puede conectar o se agota el tiempo de
+     * espera.
+     */
+    public Connection borrow() throws SQLException{
+        try {
+            if (!this.permits.tryAcquire(this.acquireTimeout, TimeUnit.MILLISECONDS))
+                throw new SQLException("Tiempo de espera agotado al obtener una"
+                        + " conexión del pool");
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido mientras se esperaba una "
+                    + "conexión del pool", e);
+        }
+        try {
+            PooledConnection pooled;
+            while ((pooled = this.pollIdle()) != null){
+                if (this.isUsable(pooled))
+                    return pooled.lease();
+                this.destroy(pooled);
+            }
+            pooled = this.create();
+            if (pooled == null){
+                this.permits.release();
+                return null;
+            }
+            return pooled.lease();
+        } catch (SQLException | RuntimeException e){
+            this.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Abre conexiones hasta alcanzar el tamaño mínimo del pool.
+     */
+    public void fill(){
+        try {
+            while (this.needsConnection()){
+                PooledConnection pooled = this.create();
+                if (pooled == null)
+                    return;
+                this.giveBack(pooled);
+            }
+        } catch (SQLException e){
+            System.out.println("No se ha podido abrir las conexiones mínimas "
+                    + "del pool");
+        }
+    }
+
+    /**
+     * Cierra todas las conexiones inactivas y deja de aceptar devoluciones.
+     */
+    public void close(){
+        this.evictor.cancel();
+        synchronized (this){
+            this.closed = true;
+            while (!this.idle.isEmpty())
+                this.destroyLocked(this.idle.pollFirst());
+        }
+    }
+
+    /**
+     * Cierra las conexiones que han superado el tiempo de inactividad,
+     * manteniendo siempre el mínimo configurado.
+     */
+    public void evictIdle(){
+        long now = System.currentTimeMillis();
+        synchronized (this){
+            Iterator<PooledConnection> it = this.idle.descendingIterator();
+            while (it.hasNext() && this.total > this.minSize){
+                PooledConnection pooled = it.next();
+                if (now - pooled.lastUsed > this.idleTimeout){
+                    it.remove();
+                    this.destroyLocked(pooled);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Número de conexiones físicas abiertas.
+     */
+    public synchronized int getTotal(){
+        return this.total;
+    }
+
+    /**
+     * @return Número de conexiones inactivas disponibles en el pool.
+     */
+    public synchronized int getIdle(){
+        return this.idle.size();
+    }
+
+    /**
+     * @return Número de veces que se ha reutilizado una sentencia preparada.
+     */
+    public long getStatementHits(){
+        return this.statementHits.get();
+    }
+
+    /**
+     * @return Número de veces que se ha tenido que preparar una sentencia.
+     */
+    public long getStatementMisses(){
+        return this.statementMisses.get();
+    }
+
+    private synchronized PooledConnection pollIdle(){
+        return this.idle.pollFirst(); // LIFO: la más reciente sigue caliente.
+    }
+
+    private synchronized boolean needsConnection(){
+        return !this.closed && this.total < this.minSize;
+    }
+
+    /**
+     * Comprueba si una conexión inactiva se puede volver a entregar.
+     */
+    private boolean isUsable(PooledConnection pooled){
+        if (System.currentTimeMillis() - pooled.lastUsed > this.idleTimeout)
+            return false;
+        try {
+            if (pooled.physical.isClosed())
+                return false;
+            return !this.validate || pooled.physical.isValid(2);
+        } catch (SQLException e){
+            return false;
+        }
+    }
+
+    private PooledConnection create() throws SQLException{
+        Connection physical = this.database.openConnection();
+        if (physical == null)
+            return null;
+        synchronized (this){
+            this.total++;
+        }
+        return new PooledConnection(physical);
+    }
+
+    private synchronized void destroy(PooledConnection pooled){
+        this.destroyLocked(pooled);
+    }
+
+    private void destroyLocked(PooledConnection pooled){
+        this.total--;
+        if (pooled.statements != null)
+            pooled.statements.clear();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e){
+            // La conexión ya no es utilizable, no hay nada más que hacer.
+        }
+    }
+
+    private synchronized void giveBack(PooledConnection pooled){
+        pooled.lastUsed = System.currentTimeMillis();
+        if (this.closed)
+            this.destroyLocked(pooled);
+        else
+            this.idle.addFirst(pooled);
+    }
+
+    /**
+     * Devuelve una conexión prestada al pool, restableciendo su estado.
+     */
+    private void release(PooledConnection pooled){
+        try {
+            boolean broken = pooled.physical.isClosed();
+            if (!broken && !pooled.physical.getAutoCommit()){
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            if (broken)
+                this.destroy(pooled);
+            else
+                this.giveBack(pooled);
+        } catch (SQLException e){
+            this.destroy(pooled);
+        } finally {
+            this.permits.release();
+        }
+    }
+
+    /**
+     * Conexión física gestionada por el pool.
+     */
+    private class PooledConnection {
+
+        private final Connection physical;
+        private final StatementCache statements;
+        private long lastUsed = System.currentTimeMillis();
+
+        PooledConnection(Connection physical){
+            this.physical = physical;
+            this.statements = statementCacheSize > 0 ? new StatementCache(
+                    statementCacheSize, statementHits, statementMisses) : null;
+        }
+
+        /**
+         * Crea un envoltorio de un solo uso para entregar la conexión.
+         */
+        Connection lease(){
+            return (Connection)Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Lease(this));
+        }
+    }
+
+    /**
+     * Intercepta las llamadas a la conexión prestada: <code>close()</code>
+     * devuelve la conexión al pool y una vez cerrada no se puede utilizar.
+     */
+    private class Lease implements InvocationHandler {
+
+        private PooledConnection pooled;
+
+        Lease(PooledConnection pooled){
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+                throws Throwable{
+            switch (method.getName()){
+                case "close":
+                    if (this.pooled != null){
+                        PooledConnection current = this.pooled;
+                        this.pooled = null;
+                        release(current);
+                    }
+                    return null;
+                case "isClosed":
+                    if (this.pooled == null)
+                        return true;
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + this.pooled + "]";
+            }
+            if (this.pooled == null)
+                throw new SQLException("La conexión ya ha sido devuelta al pool");
+            if (method.getName().equals("prepareStatement") 
+                    && this.pooled.statements != null 
+                    && StatementCache.isCacheable(args))
+                return this.pooled.statements.prepare(this.pooled.physical, 
+                        method, args);
+            try {
+                return method.invoke(this.pooled.physical, args);
+            } catch (InvocationTargetException e){
+                throw e.getCause();
+            }
+        }
+    }
+}
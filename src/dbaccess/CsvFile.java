@@ -0,0 +1,285 @@
+package dbaccess;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Archivo CSV (RFC 4180, UTF-8) que se va a cargar en una tabla. La primera
+ * línea tiene los nombres de las columnas de la tabla y el resto se lee en
+ * streaming: o como bytes, para pasárselos sin tocar a las APIs de carga de
+ * cada sistema gestor (ver Dialect.bulkLoad()), o fila a fila con
+ * <code>next()</code>. Los valores vacíos sin comillas son nulos, como los
+ * escribe Exporter.
+ * <p>
+ * Si el nombre termina en <em>.gz</em> se descomprime al leerlo. Mientras se
+ * lee se muestra en consola el progreso cada segundo.
+ * @author zelda
+ */
+class CsvFile implements AutoCloseable {
+
+    private static final long PROGRESS_NANOS = 1_000_000_000L;
+
+    private final long size;
+    private final Progress progress;
+    private final InputStream input;
+    private final String[] columns;
+    private final boolean crlf;
+    private Parser parser;
+
+    /**
+     * Abre el archivo y lee la cabecera.
+     * @param fileName Ruta del archivo.
+     * @throws IOException Si no se puede leer o no tiene cabecera.
+     */
+    CsvFile(String fileName) throws IOException{
+        Path file = Paths.get(fileName.trim());
+        this.size = Files.size(file);
+        this.progress = new Progress(Files.newInputStream(file));
+        InputStream in = new BufferedInputStream(this.progress, 1 << 16);
+        try {
+            if (fileName.trim().toLowerCase().endsWith(".gz"))
+                in = new BufferedInputStream(new GZIPInputStream(in, 1 << 16),
+                        1 << 16);
+            this.input = in;
+            String header = this.readLine();
+            if (header == null || header.trim().isEmpty())
+                throw new IOException("el archivo no tiene cabecera");
+            this.crlf = header.endsWith("\r");
+            String[] names = new Parser(new StringReader(header)).readRow();
+            for (int i = 0; i < names.length; i++){
+                if (names[i] == null || names[i].trim().isEmpty())
+                    throw new IOException("la columna " + (i + 1)
+                            + " de la cabecera no tiene nombre");
+                names[i] = names[i].trim();
+            }
+            this.columns = names;
+        } catch (IOException | RuntimeException e){
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return Nombres de las columnas, según la cabecera.
+     */
+    String[] getColumns(){
+        return this.columns.clone();
+    }
+
+    /**
+     * @return True si las líneas terminan en \r\n, false si en \n.
+     */
+    boolean isCrlf(){
+        return this.crlf;
+    }
+
+    /**
+     * @return Los bytes del archivo a partir de la cabecera. No se puede
+     * usar junto con next().
+     */
+    InputStream getInput(){
+        return this.input;
+    }
+
+    /**
+     * @return Bytes del archivo leídos hasta el momento (comprimidos si es un
+     * .gz).
+     */
+    long getBytesRead(){
+        return this.progress.read;
+    }
+
+    /**
+     * Lee la siguiente fila.
+     * @return Los valores de la fila, null para los vacíos sin comillas, o
+     * null si no quedan filas. Las líneas en blanco se saltan.
+     * @throws IOException
+     */
+    String[] next() throws IOException{
+        if (this.parser == null)
+            this.parser = new Parser(new InputStreamReader(this.input, 
+                    StandardCharsets.UTF_8));
+        String[] row;
+        do {
+            row = this.parser.readRow();
+        } while (row != null && row.length == 1 && row[0] == null);
+        return row;
+    }
+
+    /**
+     * Termina la línea de progreso, si se ha mostrado, para poder escribir 
+     * otros mensajes.
+     */
+    void endProgress(){
+        this.progress.finish();
+    }
+
+    @Override
+    public void close() throws IOException{
+        this.input.close();
+        this.progress.finish();
+    }
+
+    /**
+     * Lee la cabecera byte a byte para no consumir nada de las filas, sin
+     * el \n final y sin la marca de orden de bytes si la tiene.
+     */
+    private String readLine() throws IOException{
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        boolean quoted = false;
+        int b;
+        while ((b = this.input.read()) != -1 && (b != '\n' || quoted)){
+            if (b == '"')
+                quoted = !quoted;
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0)
+            return null;
+        String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+        return text.startsWith("\uFEFF") ? text.substring(1) : text;
+    }
+
+    /**
+     * Analizador de filas CSV sobre un flujo de caracteres.
+     */
+    private static class Parser {
+
+        private final Reader reader;
+        private final char[] buffer = new char[8192];
+        private int position, limit;
+        private int next = -2; // Siguiente carácter, -2 si no se ha leído.
+
+        Parser(Reader reader){
+            this.reader = reader;
+        }
+
+        /**
+         * Lee una fila: una línea o varias si algún valor entre comillas
+         * tiene saltos de línea.
+         * @return Los valores de la fila o null si no quedan más.
+         */
+        String[] readRow() throws IOException{
+            if (this.next == -2)
+                this.next = this.read();
+            if (this.next == -1)
+                return null;
+            List<String> values = new ArrayList<>();
+            StringBuilder value = new StringBuilder();
+            while (true){
+                boolean quoted = false;
+                value.setLength(0);
+                int c = this.next;
+                if (c == '"'){
+                    quoted = true;
+                    while (true){
+                        c = this.read();
+                        if (c == -1)
+                            throw new IOException("falta la comilla de cierre");
+                        if (c == '"'){
+                            c = this.read();
+                            if (c != '"')
+                                break;
+                        }
+                        value.append((char)c);
+                    }
+                }
+                while (c != ',' && c != '\n' && c != '\r' && c != -1){
+                    value.append((char)c);
+                    c = this.read();
+                }
+                values.add(quoted || value.length() > 0 ? value.toString() : null);
+                if (c == ','){
+                    this.next = this.read();
+                    continue;
+                }
+                if (c == '\r'){
+                    c = this.read();
+                    if (c == '\n')
+                        c = this.read();
+                } else if (c == '\n')
+                    c = this.read();
+                this.next = c;
+                return values.toArray(new String[0]);
+            }
+        }
+
+        private int read() throws IOException{
+            if (this.position == this.limit){
+                this.limit = Math.max(0, this.reader.read(this.buffer));
+                this.position = 0;
+                if (this.limit == 0)
+                    return -1;
+            }
+            return this.buffer[this.position++];
+        }
+    }
+
+    /**
+     * Cuenta los bytes leídos del archivo y muestra el progreso.
+     */
+    private class Progress extends FilterInputStream {
+
+        private final long start = System.nanoTime();
+        private long read;
+        private long shown = this.start;
+
+        Progress(InputStream in){
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException{
+            int b = super.read();
+            if (b != -1)
+                this.count(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException{
+            int n = super.read(b, off, len);
+            if (n > 0)
+                this.count(n);
+            return n;
+        }
+
+        private void count(long n){
+            this.read += n;
+            long now = System.nanoTime();
+            if (now - this.shown >= PROGRESS_NANOS){
+                this.shown = now;
+                this.show(now);
+            }
+        }
+
+        private void show(long now){
+            double seconds = (now - this.start) / 1e9;
+            System.out.print(String.format("\rLeídos %.1f de %.1f MB (%d%%), "
+                    + "%.1f MB/s   ", this.read / 1e6, size / 1e6,
+                    size > 0 ? this.read * 100 / size : 100,
+                    this.read / 1e6 / Math.max(seconds, 1e-9)));
+        }
+
+        /**
+         * Termina la línea de progreso si se ha mostrado.
+         */
+        void finish(){
+            if (this.shown != this.start)
+                System.out.println();
+            this.shown = this.start;
+        }
+    }
+}
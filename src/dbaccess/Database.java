@@ -1,15 +1,25 @@
 package dbaccess;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.sql.Connection;
-import java.sql.DriverManager;
-import com.mysql.cj.jdbc.MysqlDataSource;
-import com.microsoft.sqlserver.jdbc.SQLServerDataSource;
-import org.postgresql.ds.PGSimpleDataSource;
-import org.sqlite.SQLiteDataSource;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import utils.Configuration;
+import utils.Console;
 
 /**
  * Clase que contiene una serie de metodos para conectar y trabajar con bases de datos.
@@ -17,12 +27,29 @@ import java.sql.ResultSetMetaData;
  */
 public class Database {
     
+    /**
+     * Hora límite de las consultas del hilo, ver deadline().
+     */
+    private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<>();
+    
     private final String server;
     private int port;
     private final String db;
     private final String login;
     private final String password;
     private final String dbType;
+    private final Dialect dialect;
+    private Properties config;
+    private ConnectionPool pool;
+    private ResultCache cache;
+    private boolean metrics = true;
+    private AsyncExecutor async;
+    private SlowQueryLog slowLog;
+    private ColumnCatalog catalog;
+    private ReplicaSet replicas;
+    private int timeout;
+    private long sticky;
+    private volatile long lastWrite;
     
     public Database(String url, String port, String dbName, String login, 
             String pass, String dbType){
@@ -33,6 +60,7 @@ public class Database {
         this.login = login;
         this.password = pass;
         this.dbType = dbType.toLowerCase().trim();
+        this.dialect = Dialect.forType(this.dbType);
     }
     
     /**
@@ -42,132 +70,564 @@ public class Database {
         this.server = path;
         this.db = dbFile;
         this.dbType = dbType.toLowerCase().trim();
+        this.dialect = Dialect.forType(this.dbType);
         this.login = this.password = ""; // Inicializamos las variables.
     }
     
     /**
-     * Realiza una conexin a la base de datos en base a los parametros seleccionados.
+     * Crea una base de datos a partir de su archivo de configuración: las de
+     * archivo local (SQLite) tienen los parámetros <b>path</b> y <b>file</b>,
+     * las de servidor <b>url</b>, <b>port</b>, <b>db</b>, <b>login</b> y 
+     * <b>password</b>.
+     * @param dbType Tipo de base de datos ("MySQL", "SQLServer", "PostgreSQL"
+     * o "SQLite").
+     * @param config Colección con las propiedades de configuración.
+     * @return La base de datos ya configurada.
+     */
+    public static Database create(String dbType, Properties config){
+        Database database;
+        if (config.getProperty("file") != null)
+            database = new Database(
+                    config.getProperty("path", ""),
+                    config.getProperty("file"),
+                    dbType
+            );
+        else
+            database = new Database(
+                    config.getProperty("url", ""),
+                    config.getProperty("port", ""),
+                    config.getProperty("db", ""),
+                    config.getProperty("login", ""),
+                    config.getProperty("password", ""),
+                    dbType
+            );
+        database.configure(config);
+        return database;
+    }
+    
+    /**
+     * Aplica los parámetros opcionales del archivo de configuración, como los
+     * del pool de conexiones. Debe llamarse antes de la primera conexión, si
+     * el pool ya estaba creado se cierra y se volverá a crear.
+     * @param config Colección con las propiedades de configuración.
+     */
+    public void configure(Properties config){
+        this.config = config;
+        this.cache = Configuration.getBoolean(config, "cache.enabled", false) 
+                ? new ResultCache(config) : null;
+        this.metrics = Configuration.getBoolean(config, "metrics.enabled", true);
+        this.slowLog = SlowQueryLog.create(this.dbType, config);
+        String catalogFile = config.getProperty("catalog.file", "").trim();
+        this.catalog = Configuration.getBoolean(config, "catalog.enabled", true)
+                ? new ColumnCatalog(catalogFile.isEmpty() ? null 
+                        : Paths.get(catalogFile)) : null;
+        this.close();
+        this.replicas = ReplicaSet.create(this.dbType, config);
+        if (this.replicas == null && this.dialect != null)
+            this.replicas = ReplicaSet.readers(this.dbType, config, 
+                    this.getDriverProperties());
+        this.sticky = TimeUnit.MILLISECONDS.toNanos(Math.max(0, 
+                Configuration.getInt(config, "replica.sticky", 1000)));
+        this.timeout = Math.max(0, Configuration.getInt(config, "query.timeout", 
+                30));
+    }
+    
+    /**
+     * @return La caché de resultados, null si no está activada 
+     * (<b>cache.enabled</b>).
+     */
+    public ResultCache getResultCache(){
+        return this.cache;
+    }
+    
+    /**
+     * Obtiene una conexión del pool de la base de datos, que se crea la 
+     * primera vez que se necesita. Al cerrar la conexión devuelta se 
+     * devuelve al pool en lugar de cerrarse la conexión física.
+     * @return La conexión a la base de datos.
+     * @throws SQLException 
+     */
+    public Connection connect() throws SQLException{
+        return this.getPool().borrow();
+    }
+    
+    /**
+     * Obtiene una conexión para una consulta de lectura: de una de las 
+     * réplicas si las hay (ver ReplicaSet), o del primario si no hay ninguna
+     * disponible o se ha escrito hace menos de <b>replica.sticky</b> 
+     * milisegundos, para que se lean los cambios recién hechos. Los lectores
+     * de SQLite ven las escrituras confirmadas y se usan siempre.
+     * @return La conexión, se devuelve a su pool al cerrarla.
+     * @throws SQLException 
+     */
+    Connection connectRead() throws SQLException{
+        ReplicaSet replicas = this.replicas;
+        long written = this.lastWrite;
+        if (replicas == null || (!replicas.isLocal() && written != 0 
+                && System.nanoTime() - written < this.sticky))
+            return this.connect();
+        if (replicas.isLocal())
+            this.getPool(); // El primario crea los archivos -wal y -shm.
+        Connection conn = replicas.connect();
+        return conn != null ? conn : this.connect();
+    }
+    
+    /**
+     * @return Estado de cada réplica de lectura (número, si está disponible,
+     * tiempo medio de respuesta en ms y fallos seguidos), vacío si no hay.
+     */
+    public List<String[]> getReplicaStatus(){
+        ReplicaSet replicas = this.replicas;
+        return replicas != null ? replicas.getStatus() : new ArrayList<>();
+    }
+    
+    /**
+     * @return El pool de conexiones de la base de datos.
+     */
+    public synchronized ConnectionPool getPool(){
+        if (this.pool == null){
+            this.pool = new ConnectionPool(this, this.config);
+            this.pool.fill();
+        }
+        return this.pool;
+    }
+    
+    /**
+     * Cierra las conexiones abiertas por el pool de la base de datos.
+     */
+    public synchronized void close(){
+        if (this.async != null){
+            this.async.shutdown();
+            this.async = null;
+        }
+        // Las réplicas primero: en SQLite la última conexión que se cierra
+        // vuelca el WAL en la base de datos y borra sus ficheros, y las de
+        // solo lectura no pueden hacerlo.
+        if (this.replicas != null)
+            this.replicas.close();
+        if (this.pool != null){
+            this.pool.close();
+            this.pool = null;
+        }
+    }
+    
+    /**
+     * Prepara la base de datos para que las primeras consultas no paguen el
+     * coste de arrancar: carga el driver, abre las conexiones mínimas del
+     * pool (<b>pool.minSize</b>) y prepara en cada una las sentencias, que 
+     * quedan en la caché de sentencias de la conexión 
+     * (<b>pool.statementCacheSize</b>). Las sentencias SELECT se preparan 
+     * para streaming, como las usan select() y export(). No muestra ningún 
+     * mensaje, se puede llamar en segundo plano.
+     * @param statements Sentencias que se van a usar.
+     */
+    public void warmUp(String... statements){
+        ConnectionPool connections = this.getPool();
+        List<Connection> borrowed = new ArrayList<>();
+        try {
+            for (int i = Math.max(1, connections.getIdle()); i > 0; i--){
+                Connection conn = this.connect();
+                if (conn == null)
+                    break;
+                borrowed.add(conn);
+            }
+            for (Connection conn : borrowed)
+                for (String query : statements)
+                    try {
+                        PreparedStatement stmt = query.trim().regionMatches(
+                                true, 0, "SELECT", 0, 6) 
+                                ? this.prepareStreaming(conn, query)
+                                : conn.prepareStatement(query);
+                        stmt.close(); // Vuelve a la caché de la conexión.
+                    } catch (SQLException e){
+                        //e.printStackTrace();
+                    }
+        } catch (SQLException e){
+            //e.printStackTrace();
+        } finally {
+            for (Connection conn : borrowed)
+                try {
+                    conn.close();
+                } catch (SQLException e){
+                    //e.printStackTrace();
+                }
+        }
+    }
+    
+    /**
+     * Obtiene el ejecutor de las consultas en segundo plano, que se crea la
+     * primera vez que se necesita. Ejecuta como mucho <b>async.limit</b> 
+     * consultas a la vez, por defecto tantas como conexiones tiene el pool
+     * (<b>pool.maxSize</b>).
+     */
+    private synchronized AsyncExecutor getAsync(){
+        if (this.async == null)
+            this.async = new AsyncExecutor(this.dbType, Math.max(1, 
+                    Configuration.getInt(this.config, "async.limit", 
+                            Configuration.getInt(this.config, "pool.maxSize", 8))));
+        return this.async;
+    }
+    
+    /**
+     * Realiza una conexión a la base de datos en base a los parametros seleccionados.
      * https://www.journaldev.com/2509/java-datasource-jdbc-datasource-example
      * https://www.programcreek.com/java-api-examples/index.php?api=com.mysql.cj.jdbc.MysqlDataSource
      * https://docs.microsoft.com/es-es/sql/connect/jdbc/connection-url-sample?view=sql-server-ver15
      * https://www.postgresql.org/docs/7.3/jdbc-datasource.html
      * https://stackoverflow.com/questions/45091981/produce-a-datasource-object-for-postgres-jdbc-programmatically
      * https://github.com/xerial/sqlite-jdbc
-     * @return El objeto creado con la conexin a la base de datos.
+     * La conexión la construye el dialecto de cada tipo de base de datos.
+     * @return El objeto creado con la conexión física a la base de datos.
      * @throws SQLException 
      * 
      */
-    public Connection connect() throws SQLException{
-        //return DriverManager.getConnection(connection, user, pass);
-        switch (this.dbType){
-            case "mysql":
-                MysqlDataSource dsMySQL = new MysqlDataSource();
-                dsMySQL.setServerName(this.server);
-                if (this.port != 0)
-                    dsMySQL.setPortNumber(this.port);
-                dsMySQL.setDatabaseName(this.db);
-                dsMySQL.setUser(this.login);
-                dsMySQL.setPassword(this.password);
-                return dsMySQL.getConnection();
-            case "mssql":
-            case "sqlserver":
-                SQLServerDataSource dsSQLServer = new SQLServerDataSource();
-                dsSQLServer.setServerName(this.server);
-                if (this.port != 0)
-                    dsSQLServer.setPortNumber(this.port);
-                dsSQLServer.setDatabaseName(this.db);
-                dsSQLServer.setUser(this.login);
-                dsSQLServer.setPassword(this.password);
-                return dsSQLServer.getConnection();
-            case "postgre":
-            case "postgres":
-            case "postgresql":
-                PGSimpleDataSource dsPG = new PGSimpleDataSource();
-                dsPG.setServerNames(new String[]{this.server});
-                if (this.port != 0)
-                    dsPG.setPortNumbers(new int[]{this.port});
-                dsPG.setDatabaseName(this.db);
-                dsPG.setUser(this.login);
-                dsPG.setPassword(this.password);
-                return dsPG.getConnection();
-            case "sqlite":
-                /** setDataBaseName() no funciona!!!
-                 * https://stackoverflow.com/questions/41230234/using-datasource-to-connect-to-sqlite-with-xerial-sqlite-jdbc-driver
-                 * https://stackoverflow.com/questions/1525444/how-to-connect-sqlite-with-java
-                 */
-                SQLiteDataSource dsLite = new SQLiteDataSource();
-                dsLite.setUrl(dsLite.getUrl() + this.server + this.db);
-                return dsLite.getConnection();
-            default:
-                System.out.println(this.dbType.toUpperCase() + ": tipo no soportado.");
-                return null;
-        }
-    }  
-    
-    /**
-     * Realiza una consulta de seleccin a la base de datos, almacena y muestra 
+    Connection openConnection() throws SQLException{
+        return this.openConnection(new Properties());
+    }
+    
+    /**
+     * Abre una conexión física con propiedades del driver adicionales.
+     * @param extra Propiedades que se añaden a las de getDriverProperties().
+     * @return La conexión, que no pertenece al pool.
+     * @throws SQLException 
+     */
+    private Connection openConnection(Properties extra) throws SQLException{
+        if (this.dialect == null){
+            System.out.println(this.dbType.toUpperCase() + ": tipo no soportado.");
+            return null;
+        }
+        Properties driver = this.getDriverProperties();
+        driver.putAll(extra);
+        return this.dialect.connect(this.server, this.port, this.db, this.login, 
+                this.password, driver);
+    }
+    
+    /**
+     * Obtiene las propiedades que se pasan al driver al conectar: las 
+     * recomendadas por el dialecto junto con las del archivo de configuración
+     * que empiezan por <b>driver.</b>, que tienen preferencia.
+     * @return Propiedades del driver.
+     */
+    public Properties getDriverProperties(){
+        Properties driver = this.dialect.getDefaults(this.config);
+        if (this.config != null)
+            for (String key : this.config.stringPropertyNames())
+                if (key.startsWith("driver."))
+                    driver.setProperty(key.substring(7), 
+                            this.config.getProperty(key).trim());
+        return driver;
+    }
+    
+    /**
+     * @return El dialecto del tipo de base de datos, null si no está soportado.
+     */
+    public Dialect getDialect(){
+        return this.dialect;
+    }
+    
+    /**
+     * Se llama después de cada escritura: descarta los resultados guardados
+     * que dependen de la consulta y marca la hora para leer del primario
+     * durante <b>replica.sticky</b> milisegundos.
+     */
+    private void written(String query){
+        if (this.cache != null)
+            this.cache.invalidate(query);
+        this.lastWrite = System.nanoTime();
+    }
+    
+    /**
+     * Empieza a medir una consulta en las métricas de la aplicación si están
+     * activadas (<b>metrics.enabled</b>, activado por defecto) y en el 
+     * registro de consultas lentas si lo está (<b>slowlog.enabled</b>).
+     * @param query Texto SQL de la consulta.
+     * @param values Parámetros de la consulta, null si no se puede obtener su
+     * plan (cargas, lotes...).
+     * @return El cronómetro de la consulta.
+     */
+    QueryMetrics.Timing time(String query, Object[] values){
+        QueryMetrics.Timing timing = this.metrics ? QueryMetrics.getDefault()
+                .start(this.dbType, query) : QueryMetrics.Timing.NONE;
+        SlowQueryLog log = this.slowLog;
+        if (log == null)
+            return timing;
+        if (timing == QueryMetrics.Timing.NONE)
+            timing = QueryMetrics.Timing.unrecorded();
+        return timing.watch(log, this, query, values);
+    }
+    
+    /**
+     * Fija un plazo para todas las consultas que haga el hilo actual, en 
+     * cualquier base de datos, hasta cerrar el objeto devuelto. Cada sentencia
+     * tiene como tiempo máximo (Statement.setQueryTimeout()) lo que queda del 
+     * plazo, si es menor que el de la base de datos, y si el plazo ya ha 
+     * pasado no se ejecuta. Los plazos se pueden anidar, vale el más cercano.
+     * <pre>
+     * try (Database.Deadline deadline = Database.deadline(2000)){
+     *     database.select(query, "film_list", values);
+     * }
+     * </pre>
+     * @param millis Milisegundos desde ahora.
+     * @return El plazo, al cerrarlo se vuelve al anterior.
+     */
+    public static Deadline deadline(long millis){
+        Long previous = DEADLINE.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(
+                Math.max(0, millis));
+        if (previous == null || deadline - previous < 0)
+            DEADLINE.set(deadline);
+        return new Deadline(previous);
+    }
+    
+    /**
+     * Aplica a una sentencia el tiempo máximo de ejecución, el de la base de
+     * datos (<b>query.timeout</b> segundos, 0 sin límite) o lo que queda del 
+     * plazo del hilo si es menor, y la registra como la sentencia en curso 
+     * del hilo para poder cancelarla con Ctrl+C (ver QueryCanceller). Al
+     * terminar hay que llamar a QueryCanceller.finished().
+     * @param stmt La sentencia preparada.
+     * @return La misma sentencia.
+     * @throws SQLException Si el plazo ya ha pasado (SQLTimeoutException), 
+     * en ese caso se cierra la sentencia.
+     */
+    private <T extends Statement> T limit(T stmt) throws SQLException{
+        int seconds = this.timeout;
+        Long deadline = DEADLINE.get();
+        if (deadline != null){
+            long left = deadline - System.nanoTime();
+            if (left <= 0){
+                stmt.close();
+                throw new SQLTimeoutException("Se ha agotado el plazo de la "
+                        + "consulta");
+            }
+            // El driver solo admite segundos, se redondea hacia arriba.
+            int remaining = (int)Math.min(Integer.MAX_VALUE, 
+                    (left + 999999999L) / 1000000000L);
+            seconds = seconds > 0 ? Math.min(seconds, remaining) : remaining;
+        }
+        stmt.setQueryTimeout(seconds);
+        QueryCanceller.started(stmt);
+        return stmt;
+    }
+    
+    /**
+     * Obtiene el plan de ejecución de una consulta (ver Dialect.explain()).
+     * @param query La consulta.
+     * @param values Parámetros en orden que la consulta.
+     * @param analyze True para ejecutar la consulta y obtener los tiempos y
+     * filas reales, si el sistema gestor lo permite.
+     * @return El plan como texto.
+     * @throws SQLException Si no se ha podido obtener.
+     */
+    public String explain(String query, Object[] values, boolean analyze) 
+            throws SQLException{
+        if (this.dialect == null)
+            throw new SQLException(this.dbType + ": tipo no soportado");
+        try (Connection conn = this.connect()){
+            return this.dialect.explain(conn, query, values, analyze);
+        }
+    }
+    
+    /**
+     * Realiza una consulta de selección a la base de datos, almacena y muestra 
      * sus resultados.
      * https://www.arquitecturajava.com/jdbc-prepared-statement-y-su-manejo/
      * https://www.javatpoint.com/PreparedStatement-interface
      * https://docs.oracle.com/javase/8/docs/api/java/sql/CallableStatement.html
      * @param query La consulta a realizar.
      * @param tableName Nombre de la tabla.
-     * @param sizes Array con tamaos de necesarios para dibujar la tabla.
+     * @param sizes Array con tamaños de necesarios para dibujar la tabla.
      */
     public void select(String query, String tableName, int[] sizes){
+        QueryMetrics.Timing timing = this.time(query, new Object[0]);
         try ( // Usando el Try-With-Paramenters.
-                Connection conn = this.connect();
-                PreparedStatement stmt = conn.prepareStatement(query);
-                ResultSet result = stmt.executeQuery();
+                Connection conn = timing.acquired(this.connectRead());
+                PreparedStatement stmt = timing.prepared(this.limit(
+                        conn.prepareStatement(query)));
+                ResultSet result = timing.executed(stmt.executeQuery());
             ){
-            if (sizes[sizes.length - 1] > 0)
+            if (sizes[sizes.length - 1] > 0){
                 this.printTable(result, sizes, tableName);
-            else
+                timing.rendered();
+                timing.rows(sizes[sizes.length - 1]);
+            } else
                 System.out.println("La consulta ha devuelto 0 resultados.");
         } catch (SQLException e){
+            timing.failed(e);
             System.out.println("No se ha podido realizar la consulta a la base"
                     + " de datos");
             //e.printStackTrace();
+        } finally {
+            QueryCanceller.finished();
+            timing.stop();
         }
     }
     
     /**
-     * Realiza una consulta de seleccin a la base de datos utilizando parmetros
+     * Realiza una consulta de selección a la base de datos utilizando parámetros
      * como filtros, y muestra sus resultados.
      * @param query La consulta a realizar.
      * @param tableName Nombre de la tabla.
-     * @param sizes Array con tamaos de necesarios para dibujar la tabla.
-     * @param values Parmetros en orden que la consulta.
+     * @param sizes Array con tamaños de necesarios para dibujar la tabla.
+     * @param values Parámetros en orden que la consulta.
      */
     public void select(String query, String tableName, int[] sizes, Object[] values){
+        QueryMetrics.Timing timing = this.time(query, values);
         try (
-                Connection conn = this.connect();
-                PreparedStatement stmt = conn.prepareStatement(query);
+                Connection conn = timing.acquired(this.connectRead());
+                PreparedStatement stmt = timing.prepared(this.limit(
+                        conn.prepareStatement(query)));
             ){
-            for (int i = 0; i < values.length; i++){
-                stmt.setObject(i + 1, values[i]); // +1 porque los parmetros empiezan en 1.
-            }
-            try (ResultSet result = stmt.executeQuery();){
-                if (sizes[sizes.length - 1] > 0)
+            Param.bind(stmt, values);
+            try (ResultSet result = timing.executed(stmt.executeQuery());){
+                if (sizes[sizes.length - 1] > 0){
                     this.printTable(result, sizes, tableName);
-                else
+                    timing.rendered();
+                    timing.rows(sizes[sizes.length - 1]);
+                } else
                     System.out.println("La consulta ha devuelto 0 resultados.");
             }
+        } catch (SQLException e){
+            timing.failed(e);
+            System.out.println("No se ha podido realizar la consulta a la base"
+                    + " de datos");
+            //e.printStackTrace();
+        } finally {
+            QueryCanceller.finished();
+            timing.stop();
+        }
+    }
+    
+    /**
+     * Realiza una consulta de selección y muestra sus resultados en una sola
+     * pasada, sin necesidad de calcular antes los tamaños de las columnas con
+     * loadSizeByQuery().
+     * @param query La consulta a realizar.
+     * @param tableName Nombre de la tabla.
+     */
+    public void select(String query, String tableName){
+        this.select(query, tableName, new Object[0]);
+    }
+    
+    /**
+     * Realiza una consulta de selección utilizando parámetros como filtros y 
+     * muestra sus resultados en una sola pasada. Los tamaños de las columnas 
+     * se calculan a partir de las primeras filas recibidas (ver 
+     * printTable(ResultSet, String)).
+     * @param query La consulta a realizar.
+     * @param tableName Nombre de la tabla.
+     * @param values Parámetros en orden que la consulta.
+     */
+    public void select(String query, String tableName, Object[] values){
+        ResultCache cache = this.cache;
+        QueryMetrics.Timing timing = this.time(query, values);
+        if (cache != null){
+            QueryResult cached = cache.get(query, values);
+            if (cached != null){
+                timing.cached(cached.getRowCount());
+                this.printTable(cached, tableName);
+                timing.rendered();
+                timing.stop();
+                return;
+            }
+        }
+        try (
+                Connection conn = timing.acquired(this.connectRead());
+                PreparedStatement stmt = timing.prepared(this.limit(
+                        this.prepareStreaming(conn, query)));
+            ){
+            Param.bind(stmt, values);
+            try (ResultSet result = timing.executed(stmt.executeQuery());){
+                // Solo se guardan los resultados que caben en cache.maxRows.
+                QueryResult complete = this.printTable(result, tableName, 
+                        this.lookahead(), cache == null ? 0 : Configuration
+                                .getInt(this.config, "cache.maxRows", 10000), 
+                        timing);
+                if (cache != null && complete != null)
+                    cache.put(query, values, complete);
+            }
+        } catch (SQLException e){
+            timing.failed(e);
+            System.out.println("No se ha podido realizar la consulta a la base"
+                    + " de datos");
+            //e.printStackTrace();
+        } finally {
+            QueryCanceller.finished();
+            timing.stop();
+        }
+    }
+    
+    /**
+     * Realiza una consulta de selección convirtiendo cada fila en un objeto
+     * (ver list()) y muestra los objetos en una tabla.
+     * @param <T> Clase de los objetos.
+     * @param query La consulta a realizar.
+     * @param tableName Nombre de la tabla.
+     * @param values Parámetros en orden que la consulta.
+     * @param mapper Convierte cada fila en un objeto.
+     * @param labels Nombres de las columnas de la tabla.
+     * @param cells Texto de las celdas de cada objeto, en el orden de labels.
+     * @return Los objetos leídos, vacío si no se ha podido realizar la 
+     * consulta.
+     */
+    public <T> List<T> select(String query, String tableName, Object[] values,
+            RowMapper<T> mapper, String[] labels, 
+            Function<? super T, String[]> cells){
+        try {
+            List<T> rows = this.list(query, values, mapper);
+            List<String[]> text = new ArrayList<>(rows.size());
+            for (T row : rows)
+                text.add(cells.apply(row));
+            this.printTable(new QueryResult(labels, text), tableName);
+            return rows;
         } catch (SQLException e){
             System.out.println("No se ha podido realizar la consulta a la base"
                     + " de datos");
             //e.printStackTrace();
+            return new ArrayList<>();
         }
     }
+    
+    /**
+     * Prepara una consulta de selección para leer sus resultados en streaming,
+     * por bloques de <b>select.fetchSize</b> filas (500 por defecto), de forma
+     * que la memoria usada no dependa del número de filas devueltas. Se 
+     * desactiva con <b>select.streaming=false</b>.
+     * <p>
+     * El ResultSet es siempre de solo avance y solo lectura, el resto de lo
+     * necesario lo configura el dialecto (ver Dialect.configureStreaming() y
+     * las propiedades del driver de cada dialecto).
+     * @param conn Conexión sobre la que se prepara la consulta.
+     * @param query La consulta.
+     * @return La sentencia preparada.
+     * @throws SQLException 
+     */
+    PreparedStatement prepareStreaming(Connection conn, String query) 
+            throws SQLException{
+        PreparedStatement stmt = conn.prepareStatement(query, 
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        if (this.streaming())
+            this.dialect.configureStreaming(conn, stmt, Math.max(1, 
+                    Configuration.getInt(this.config, "select.fetchSize", 500)));
+        return stmt;
+    }
+    
+    /**
+     * @return True si las consultas de selección se leen en streaming 
+     * (<b>select.streaming</b>, activado por defecto).
+     */
+    private boolean streaming(){
+        return Configuration.getBoolean(this.config, "select.streaming", true);
+    }
            
     /**
-     * Recorre los resultados de la consulta midiendo los tamaos de cada columna 
+     * Recorre los resultados de la consulta midiendo los tamaños de cada columna 
      * y el total de la tabla necesarios para dibujar la tabla.
      * OBSOLETA (DEPRECATED) Usar loadSizesByQuery() en su lugar.
      * @param result El resultado de la consulta realizada.
      * @return <ul>
-     *              <li>True - Si ha conseguidos y registrado los tamaos</li>
-     *              <li>False - Si no ha podido obtener los tamaos</li>
+     *              <li>True - Si ha conseguidos y registrado los tamaños</li>
+     *              <li>False - Si no ha podido obtener los tamaños</li>
      *         </ul>
      * @throws SQLException 
      */
@@ -207,31 +667,35 @@ public class Database {
     }
     
     /**
-     * Realiza una consulta que devuelve la longitud mxima de los datos 
-     * contenidos en cada columna y el nmero de filas.
-     * @param query Consulta, para que el clculo sea correcto la  consulta debe
-     * basarse en la misma que queramos mostrar a continuacin, adems los alias 
+     * Realiza una consulta que devuelve la longitud máxima de los datos 
+     * contenidos en cada columna y el número de filas. Recorre toda la tabla,
+     * printTable(ResultSet, String) obtiene los tamaños sin esta consulta
+     * (ver getColumnWidths()).
+     * @param query Consulta, para que el cálculo sea correcto la  consulta debe
+     * basarse en la misma que queramos mostrar a continuación, además los alias 
      * de cada columna deben coincidir con el nombre de la columna en la tabla.
      * <pre>
      * EJEMPLO:
      *      SELECT <em>name</em>, <em>phone</em> FROM <em>customer</em>
      *      SELECT MAX(LENGTH(<em>name</em>)), MAX(LENGTH(<em>phone</em>)), COUNT(*) FROM <em>customer</em>
      * </pre>
-     * @return Array con los valores de los tamaos, incluido el total y el 
-     * nmero de filas.
+     * @return Array con los valores de los tamaños, incluido el total y el 
+     * número de filas.
      */
     public int[] loadSizeByQuery(String query) {
+        QueryMetrics.Timing timing = this.time(query, new Object[0]);
         try (
-                Connection conn = this.connect();
-                PreparedStatement stmt = conn.prepareStatement(query);
-                ResultSet result =  stmt.executeQuery();
+                Connection conn = timing.acquired(this.connectRead());
+                PreparedStatement stmt = timing.prepared(this.limit(
+                        conn.prepareStatement(query)));
+                ResultSet result = timing.executed(stmt.executeQuery());
             ){   
             ResultSetMetaData mData = result.getMetaData();
             int[] sizes = new int[mData.getColumnCount() + 1];
             result.next();
             for (int i = 1; i < sizes.length; i++)
                 sizes[i] = result.getInt(i);
-            // Contamos la cabecera. La ultima posicin es el nmero de tuplas.
+            // Contamos la cabecera. La ultima posición es el número de tuplas.
             int length = 0;
             for (int i = 1; i < sizes.length - 1; i++){
                 length = mData.getColumnLabel(i).length();
@@ -240,39 +704,47 @@ public class Database {
             }
             for (int i = 1; i < sizes.length - 1; i++)
                 sizes[0] += sizes[i];
+            timing.fetched();
+            timing.rows(1);
             return sizes;
         } catch (SQLException e){
+            timing.failed(e);
             System.out.println("No se ha podido cargar las longitudes de los "
                     + "datos consultados");
             //e.printStackTrace();
             return null;
+        } finally {
+            QueryCanceller.finished();
+            timing.stop();
         }
     }
     
     /**
-     * Realiza una consulta que devuelve la longitud mxima de los datos 
-     * contenidos en cada columna y el nmero de filas.
-     * @param query Consulta, para que el clculo sea correcto la  consulta debe
-     * basarse en la misma que queramos mostrar a continuacin, adems los alias 
+     * Realiza una consulta que devuelve la longitud máxima de los datos 
+     * contenidos en cada columna y el número de filas. Recorre toda la tabla,
+     * printTable(ResultSet, String) obtiene los tamaños sin esta consulta
+     * (ver getColumnWidths()).
+     * @param query Consulta, para que el cálculo sea correcto la  consulta debe
+     * basarse en la misma que queramos mostrar a continuación, además los alias 
      * de cada columna deben coincidir con el nombre de la columna en la tabla.
      * <pre>
      * EJEMPLO:
      *      SELECT <em>name</em>, <em>phone</em> FROM <em>customer</em>
      *      SELECT MAX(LENGTH(<em>name</em>)), MAX(LENGTH(<em>phone</em>)), COUNT(*) FROM <em>customer</em>
      * </pre>
-     * @param values Parmetros en orden que la consulta.
-     * @return Array con los valores de los tamaos, incluido el total y el 
-     * nmero de filas.
+     * @param values Parámetros en orden que la consulta.
+     * @return Array con los valores de los tamaños, incluido el total y el 
+     * número de filas.
      */
     public int[] loadSizeByQuery(String query, Object[] values) {
+        QueryMetrics.Timing timing = this.time(query, values);
         try (
-                Connection conn = this.connect();
-                PreparedStatement stmt = conn.prepareStatement(query);
+                Connection conn = timing.acquired(this.connectRead());
+                PreparedStatement stmt = timing.prepared(this.limit(
+                        conn.prepareStatement(query)));
             ){
-            for (int i = 0; i < values.length; i++){
-                stmt.setObject(i + 1, values[i]);
-            }
-            try (ResultSet result =  stmt.executeQuery()){
+            Param.bind(stmt, values);
+            try (ResultSet result = timing.executed(stmt.executeQuery())){
                 ResultSetMetaData mData = result.getMetaData();
                 int[] sizes = new int[mData.getColumnCount() + 1];
                 result.next();
@@ -286,13 +758,19 @@ public class Database {
                 }
                 for (int i = 1; i < sizes.length - 1; i++)
                     sizes[0] += sizes[i];
+                timing.fetched();
+                timing.rows(1);
                 return sizes;
             }
         } catch (SQLException e){
+            timing.failed(e);
             System.out.println("No se ha podido cargar las longitudes de los "
                     + "datos consultados");
             //e.printStackTrace();
             return null;
+        } finally {
+            QueryCanceller.finished();
+            timing.stop();
         }
     }
     
@@ -300,126 +778,851 @@ public class Database {
      * Dibuja una tabla en consola mostrando los resultados de la consulta.
      * @param result El resultado de la consulta.
      * @param tableName Nombre de la tabla o vista.
-     * @param sizes Los tamaos de cada una de las columnas.
+     * @param sizes Los tamaños de cada una de las columnas.
      * @throws SQLException 
      */
     public void printTable(ResultSet result, int[] sizes, String tableName) throws SQLException{
-        int nColumns = sizes.length - 2;
-        int maxSize = sizes[0] + (nColumns * 2) + (nColumns - 1);
-        String interline = "+";
-        for (int i = 1; i <= nColumns; i++) 
-            interline += new String(new char[sizes[i]]).replace('\0', '=') 
-                    + "==" + "+"; 
-        this.printTitle(tableName, maxSize);
-        this.printHead(sizes, result.getMetaData(), interline);
-        this.printTuples(result, sizes, maxSize, interline);
+        TableRenderer renderer = this.renderer(sizes);
+        renderer.title(tableName);
+        this.printHead(renderer, result.getMetaData());
+        this.printTuples(result, renderer, sizes[sizes.length - 1]);
     }
     
     /**
-     * Dibuja la cabecera con el ttulo de la tabla.
+     * Dibuja la cabecera con el título de la tabla.
      * @param tableName Nombre de la tabla o vista.
      * @param totalSize Define la longitud total de la tabla.
      */
     public void printTitle(String tableName, int totalSize){
-        int titleLength = tableName.length();
-        /* (this.nFields * 2) -> 2 espacios adicionales a cada lado para cada dato
-         * (this.nFields - 1) -> el espacio para cada columna separadora. */
-        System.out.println("+" + new String(new char[totalSize]).replace('\0', '=') 
-                + "+");
-        System.out.printf("|%" + (totalSize - titleLength) / 2 +
-                          "s%" + titleLength +
-                          "s%" + ((totalSize - titleLength) + 1) / 2 + "s|" +
-                          System.lineSeparator(), 
-                          "", tableName.toUpperCase(), "");
-        System.out.println("+" + new String(new char[totalSize]).replace('\0', '=') 
-                + "+");
+        // Una sola columna de totalSize - 2 ocupa exactamente totalSize.
+        TableRenderer renderer = new TableRenderer(new int[]{totalSize - 2}, 
+                this.wrapOverflow());
+        renderer.title(tableName);
+        renderer.flush();
     }
     
     /**
      * Dibuja la cabecera de la tabla con los nombres de las columnas.
-     * @param sizes Los tamaos de cada una de las columnas.
-     * @param data Datos de la consulta como los nombres de las columnas o su nmero.
-     * @param interline Cadena de caracteres con los bordes entre filas.
+     * @param sizes Los tamaños de cada una de las columnas.
+     * @param data Datos de la consulta como los nombres de las columnas o su número.
+     * @param interline Cadena de caracteres con los bordes entre filas, se 
+     * mantiene por compatibilidad, el borde se calcula a partir de sizes.
      * @throws SQLException 
      */
     public void printHead(int[] sizes, ResultSetMetaData data, String interline) 
             throws SQLException{
-        int length;
-        System.out.print("|");
-        for (int i = 1; i <= sizes.length - 2; i++){
-            length = data.getColumnLabel(i).length();
-            System.out.printf("%" + (sizes[i] - length + 2) / 2 +
-                                  "s%-" + length +
-                                  "s%" + (sizes[i] - length + 3)  / 2 + "s|",
-                                  "", data.getColumnLabel(i) , "");
-        }
-        System.out.println("\n" + interline);
+        TableRenderer renderer = this.renderer(sizes);
+        this.printHead(renderer, data);
+        renderer.flush();
     }
     
     /**
      * Dibuja por consola las filas con los registros almacenados de la consulta.
      * @param result El resultado de la consulta.
-     * @param sizes Los tamaos de cada una de las columnas.
-     * @param totalSize Define la longitud total de las filas.
-     * @param interline Cadena de caracteres con los bordes entre filas.
+     * @param sizes Los tamaños de cada una de las columnas.
+     * @param totalSize Define la longitud total de las filas, se mantiene por
+     * compatibilidad, la longitud se calcula a partir de sizes.
+     * @param interline Cadena de caracteres con los bordes entre filas, se 
+     * mantiene por compatibilidad, el borde se calcula a partir de sizes.
      * @throws SQLException 
      */
     public void printTuples(ResultSet result, int[] sizes, int totalSize,String 
             interline) throws SQLException{
-        int length;
-        String value;
+        this.printTuples(result, this.renderer(sizes), sizes[sizes.length - 1]);
+    }
+    
+    /**
+     * Dibuja la fila con los nombres de las columnas.
+     */
+    private void printHead(TableRenderer renderer, ResultSetMetaData data) 
+            throws SQLException{
+        String[] labels = new String[data.getColumnCount()];
+        for (int i = 0; i < labels.length; i++)
+            labels[i] = data.getColumnLabel(i + 1);
+        renderer.head(labels);
+    }
+    
+    /**
+     * Dibuja las filas del resultado y el borde final de la tabla.
+     * @param nRows Número de filas esperado, tras la última no se dibuja el
+     * separador.
+     */
+    private void printTuples(ResultSet result, TableRenderer renderer, int nRows) 
+            throws SQLException{
+        String[] row = new String[result.getMetaData().getColumnCount()];
         int counter = 0; 
         while (result.next()){
-            System.out.print("|");
-            for (int i = 1; i <= sizes.length - 2; i++){
-                value = result.getString(i);
-                if (value != null)    
-                    length = value.length();
+            for (int i = 0; i < row.length; i++)
+                row[i] = result.getString(i + 1);
+            renderer.cells(row);
+            // Si no es es lá última línea...
+            counter++; 
+            if (counter != nRows)
+                renderer.separator();
+        }
+        renderer.end();
+    }
+    
+    /**
+     * Crea el renderizador de una tabla a partir del array de tamaños usado 
+     * por loadSizes() y loadSizeByQuery().
+     */
+    private TableRenderer renderer(int[] sizes){
+        return new TableRenderer(Arrays.copyOfRange(sizes, 1, sizes.length - 1),
+                this.wrapOverflow());
+    }
+    
+    /**
+     * @return True si los valores más anchos que su columna se parten en 
+     * varias líneas, false si se truncan (<b>select.overflow</b>).
+     */
+    private boolean wrapOverflow(){
+        return !"truncate".equalsIgnoreCase(this.config != null 
+                ? this.config.getProperty("select.overflow", "wrap").trim() 
+                : "wrap");
+    }
+    
+    /**
+     * Dibuja una tabla en consola mostrando los resultados de la consulta sin
+     * conocer de antemano sus tamaños. Se leen por adelantado como mucho 
+     * <b>select.lookahead</b> filas (100 por defecto) para calcular el ancho 
+     * de cada columna y después se siguen mostrando las filas según llegan.
+     * Los valores que resulten más anchos que su columna se cortan en varias
+     * líneas o se truncan según el valor de <b>select.overflow</b> 
+     * (<em>wrap</em> o <em>truncate</em>). No necesita un ResultSet 
+     * desplazable.
+     * @param result El resultado de la consulta.
+     * @param tableName Nombre de la tabla o vista.
+     * @throws SQLException 
+     */
+    public void printTable(ResultSet result, String tableName) throws SQLException{
+        this.printTable(result, tableName, this.lookahead(), 0, 
+                QueryMetrics.Timing.NONE);
+    }
+    
+    /**
+     * Dibuja una tabla en consola con los resultados de una consulta ya 
+     * leídos en memoria.
+     * @param result El resultado de la consulta.
+     * @param tableName Nombre de la tabla o vista.
+     */
+    public void printTable(QueryResult result, String tableName){
+        if (result.getRowCount() == 0){
+            System.out.println("La consulta ha devuelto 0 resultados.");
+            return;
+        }
+        TableRenderer renderer = new TableRenderer(result.getWidths(), 
+                this.wrapOverflow());
+        renderer.title(tableName);
+        renderer.head(result.getLabels());
+        String[] row = new String[result.getColumnCount()];
+        for (int i = 0; i < result.getRowCount(); i++){
+            result.copyRow(i, row);
+            renderer.row(row);
+        }
+        renderer.end();
+    }
+    
+    /**
+     * Dibuja una tabla leyendo por adelantado como mucho lookahead filas para
+     * calcular el ancho de las columnas.
+     * @param collect Número máximo de filas que se guardan en memoria mientras
+     * se dibujan, para la caché de resultados, aparte de las de la lectura 
+     * anticipada. 0 para no guardar ninguna.
+     * @param timing Cronómetro en el que se mide la lectura y el dibujado.
+     * @return El resultado en memoria si tiene como mucho collect filas, null
+     * si tenía más.
+     */
+    private QueryResult printTable(ResultSet result, String tableName, 
+            int lookahead, int collect, QueryMetrics.Timing timing) 
+            throws SQLException{
+        QueryResult.Builder builder = new QueryResult.Builder(result.getMetaData());
+        // Si caben más filas de las que se leen por adelantado, se guardan
+        // también en otro resultado hasta que pasan de collect.
+        QueryResult.Builder complete = collect > lookahead 
+                ? new QueryResult.Builder(result.getMetaData()) : null;
+        boolean more;
+        while ((more = result.next()) && builder.size() < lookahead){
+            builder.add(result);
+            if (complete != null)
+                complete.add(result);
+        }
+        QueryResult buffer = builder.build();
+        timing.fetched();
+        if (buffer.getRowCount() == 0){
+            System.out.println("La consulta ha devuelto 0 resultados.");
+            return buffer;
+        }
+        int nColumns = buffer.getColumnCount();
+        int[] widths = buffer.getWidths();
+        if (more){
+            // Las filas que faltan pueden ser más anchas que las leídas, se
+            // usa el ancho máximo de la columna si es razonable.
+            int maxWidth = Configuration.getInt(this.config, "select.maxWidth", 60);
+            int[] declared = this.getColumnWidths(result);
+            for (int i = 0; i < Math.min(nColumns, declared.length); i++)
+                if (declared[i] > widths[i] && declared[i] <= maxWidth)
+                    widths[i] = declared[i];
+        }
+        TableRenderer renderer = new TableRenderer(widths, this.wrapOverflow());
+        renderer.title(tableName);
+        renderer.head(buffer.getLabels());
+        String[] row = new String[nColumns];
+        for (int i = 0; i < buffer.getRowCount(); i++){
+            buffer.copyRow(i, row);
+            renderer.row(row);
+        }
+        long rows = buffer.getRowCount();
+        if (!more){
+            renderer.end();
+            timing.rendered();
+            timing.rows(rows);
+            timing.bytes(renderer.getWritten());
+            return buffer.getRowCount() <= collect ? buffer : null;
+        }
+        timing.rendered();
+        // La fila que ha detenido la lectura anticipada ya está en el cursor.
+        while (more){
+            for (int i = 0; i < nColumns; i++)
+                row[i] = result.getString(i + 1);
+            if (complete != null){
+                if (complete.size() < collect)
+                    complete.add(result);
                 else
-                    length = 4;
-                System.out.printf("%" + (sizes[i] - length + 2) / 2 +
-                                  "s%-" + length +
-                                  "s%" + (sizes[i] - length + 3)  / 2 + "s|",
-                                  "", value, "");
+                    complete = null; // No cabe en la caché.
             }
-            // Si no es es l ltima lnea...
-            counter++; 
-            if (counter != sizes[sizes.length - 1])
-                System.out.println("\n" + interline);
+            timing.fetched();
+            renderer.row(row);
+            timing.rendered();
+            rows++;
+            more = result.next();
+        }
+        renderer.end();
+        timing.rendered();
+        timing.rows(rows);
+        timing.bytes(renderer.getWritten());
+        return complete != null ? complete.build() : null;
+    }
+    
+    /**
+     * Calcula el ancho máximo que pueden tener los valores de cada columna de
+     * un resultado sin leer sus filas: con la definición de las columnas en 
+     * el catálogo de la base de datos (ver ColumnCatalog), que se lee una vez
+     * por tabla y sesión (<b>catalog.enabled</b>) y se puede guardar entre
+     * ejecuciones (<b>catalog.file</b>), o con el tamaño de presentación que
+     * da el driver.
+     * @param result El resultado de la consulta.
+     * @return El ancho de cada columna, -1 si no está acotado (TEXT, BLOB...)
+     * o no se ha podido obtener.
+     */
+    public int[] getColumnWidths(ResultSet result){
+        int[] widths = null;
+        try {
+            ResultSetMetaData data = result.getMetaData();
+            ColumnCatalog columns = this.catalog;
+            widths = new int[data.getColumnCount()];
+            Arrays.fill(widths, ColumnCatalog.UNKNOWN);
+            Statement stmt = result.getStatement();
+            if (columns != null && stmt != null)
+                widths = columns.widths(stmt.getConnection(), data);
+            else
+                for (int i = 0; i < widths.length; i++)
+                    widths[i] = ColumnCatalog.displayWidth(data, i + 1);
+        } catch (SQLException e){
+            //e.printStackTrace();
+        }
+        return widths != null ? widths : new int[0];
+    }
+    
+    /**
+     * @return Filas que se leen por adelantado para calcular el ancho de las
+     * columnas (<b>select.lookahead</b>).
+     */
+    private int lookahead(){
+        return Math.max(1, Configuration.getInt(this.config, 
+                "select.lookahead", 100));
+    }
+    
+    /**
+     * Exporta los resultados de una consulta de selección a un archivo CSV o
+     * JSON Lines (ver Exporter), leyéndolos en streaming (ver 
+     * prepareStreaming()) y escribiéndolos según llegan a través de un buffer
+     * de <b>export.bufferSize</b> bytes (1 MB por defecto), de forma que la 
+     * memoria usada no depende del número de filas. Al terminar muestra las 
+     * filas exportadas por segundo.
+     * @param query La consulta a realizar.
+     * @param values Parámetros en orden que la consulta.
+     * @param fileName Ruta del archivo: <em>.csv</em> o <em>.jsonl</em>, 
+     * terminada en <em>.gz</em> para comprimirlo.
+     * @return Número de filas exportadas, -1 si no se ha podido exportar.
+     */
+    public long export(String query, Object[] values, String fileName){
+        long start = System.nanoTime();
+        QueryMetrics.Timing timing = this.time(query, values);
+        try (
+                Connection conn = timing.acquired(this.connect());
+                PreparedStatement stmt = timing.prepared(this.limit(
+                        this.prepareStreaming(conn, query)));
+            ){
+            Param.bind(stmt, values);
+            try (ResultSet result = timing.executed(stmt.executeQuery());){
+                Exporter exporter = new Exporter(fileName, Math.max(4096, 
+                        Configuration.getInt(this.config, "export.bufferSize", 
+                                1 << 20)));
+                try {
+                    exporter.head(result.getMetaData());
+                    while (result.next())
+                        exporter.row(result);
+                } finally {
+                    exporter.close();
+                }
+                timing.fetched();
+                timing.rows(exporter.getRows());
+                timing.bytes(exporter.getWritten());
+                double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+                System.out.println(String.format("Se han exportado %d filas a "
+                        + "%s (%s) en %.2f s, %.0f filas/s.", exporter.getRows(), 
+                        fileName, exporter.getFormat(), seconds, 
+                        exporter.getRows() / seconds));
+                return exporter.getRows();
+            }
+        } catch (SQLException | IOException e){
+            timing.failed(e);
+            System.out.println("No se ha podido exportar la consulta: " 
+                    + e.getMessage());
+            //e.printStackTrace();
+            return -1;
+        } finally {
+            QueryCanceller.finished();
+            timing.stop();
+        }
+    }
+    
+    /**
+     * Carga las filas de un archivo CSV en una tabla con la API de carga 
+     * masiva de cada sistema gestor (ver Dialect.bulkLoad()): COPY en 
+     * PostgreSQL, LOAD DATA LOCAL INFILE en MySQL, SQLServerBulkCopy en SQL 
+     * Server y una sola transacción de lotes de <b>batch.size</b> filas en 
+     * SQLite. El archivo se lee en streaming mostrando el progreso, y al
+     * terminar se muestran las filas cargadas por segundo. Si falla no se
+     * carga ninguna fila. Si el dialecto necesita propiedades propias para la
+     * carga (ver Dialect.getBulkProperties()) se usa una conexión aparte, 
+     * fuera del pool, que se cierra al terminar.
+     * @param table Nombre de la tabla.
+     * @param fileName Ruta del archivo CSV (ver CsvFile), con los nombres de
+     * las columnas de la tabla en la primera línea.
+     * @return Número de filas cargadas, -1 si no se ha podido cargar.
+     */
+    public long load(String table, String fileName){
+        long start = System.nanoTime();
+        String query = "INSERT INTO " + table + " FROM CSV";
+        QueryMetrics.Timing timing = this.time(query, null);
+        try (
+                CsvFile csv = new CsvFile(fileName);
+                Connection conn = timing.acquired(this.connectBulk());
+            ){
+            long rows;
+            conn.setAutoCommit(false);
+            try {
+                rows = this.dialect.bulkLoad(conn, table, csv, Math.max(1, 
+                        Configuration.getInt(this.config, "batch.size", 1000)));
+                conn.commit();
+            } catch (SQLException | IOException | RuntimeException e){
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+            timing.executed(null);
+            timing.affected(rows);
+            timing.bytes(csv.getBytesRead());
+            this.written(query);
+            csv.endProgress();
+            double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+            System.out.println(String.format("Se han cargado %d filas en %s en "
+                    + "%.2f s, %.0f filas/s (%.1f MB/s).", rows, table, seconds, 
+                    rows / seconds, csv.getBytesRead() / 1e6 / seconds));
+            return rows;
+        } catch (SQLException | IOException e){
+            timing.failed(e);
+            System.out.println("No se ha podido cargar el archivo: " 
+                    + e.getMessage());
+            //e.printStackTrace();
+            return -1;
+        } finally {
+            timing.stop();
+        }
+    }
+    
+    /**
+     * @return Conexión para la carga masiva: del pool, o una propia si el 
+     * dialecto necesita propiedades del driver solo para la carga.
+     * @throws SQLException 
+     */
+    private Connection connectBulk() throws SQLException{
+        if (this.dialect == null)
+            throw new SQLException(this.dbType + ": tipo no soportado");
+        Properties bulk = this.dialect.getBulkProperties(this.config);
+        return bulk.isEmpty() ? this.connect() : this.openConnection(bulk);
+    }
+    
+    /**
+     * Crea un paginador para recorrer una tabla o una consulta por páginas de
+     * <b>select.pageSize</b> filas (20 por defecto), buscando cada página por
+     * su clave en lugar de con OFFSET (ver Pager).
+     * @param source Nombre de una tabla o vista, o una consulta SELECT.
+     * @param key Columna única por la que se ordenan las filas, escrita como
+     * en el SQL de la base de datos.
+     * @param ascending True para recorrer de menor a mayor clave.
+     * @return El paginador, sin ninguna página leída.
+     */
+    public Pager pager(String source, String key, boolean ascending){
+        return new Pager(this, source, key, ascending, Math.max(1, 
+                Configuration.getInt(this.config, "select.pageSize", 20)));
+    }
+    
+    /**
+     * Muestra una tabla o una consulta por páginas, preguntando al usuario 
+     * tras cada una si quiere ver la siguiente, la anterior, la primera o la
+     * última (ver pager()).
+     * @param source Nombre de una tabla o vista, o una consulta SELECT.
+     * @param key Columna única por la que se ordenan las filas.
+     * @param ascending True para recorrer de menor a mayor clave.
+     * @param tableName Título de la tabla.
+     */
+    public void browse(String source, String key, boolean ascending, 
+            String tableName){
+        Pager pager = this.pager(source, key, ascending);
+        try {
+            QueryResult page = pager.first();
+            int number = 1; // 0 si se ha llegado desde el final.
+            while (true){
+                this.printTable(page, tableName);
+                if (!pager.hasNext() && !pager.hasPrevious())
+                    return;
+                if (number > 0)
+                    System.out.println("Página " + number);
+                else if (!pager.hasNext())
+                    System.out.println("Última página");
+                String answer = Console.readLine(Console.eof 
+                        + (pager.hasNext() ? "[S]iguiente, " : "")
+                        + (pager.hasPrevious() ? "[A]nterior, " : "")
+                        + "[P]rimera, [U]ltima u otra tecla para salir: ")
+                        .trim().toLowerCase();
+                System.out.println();
+                if (answer.isEmpty() && pager.hasNext())
+                    answer = "s"; // ENTER avanza.
+                if (answer.startsWith("s") && pager.hasNext()){
+                    page = pager.next();
+                    number = number > 0 ? number + 1 : 0;
+                } else if (answer.startsWith("a") && pager.hasPrevious()){
+                    page = pager.previous();
+                    number = number > 0 ? number - 1 : 0;
+                } else if (answer.startsWith("p")){
+                    page = pager.first();
+                    number = 1;
+                } else if (answer.startsWith("u")){
+                    page = pager.last();
+                    number = 0;
+                } else
+                    return;
+            }
+        } catch (SQLException e){
+            System.out.println("No se ha podido realizar la consulta a la base"
+                    + " de datos");
+            //e.printStackTrace();
+        } catch (NoSuchElementException e){
+            // Se han acabado las respuestas de un script (ver Runner).
+        }
+    }
+    
+    /**
+     * Realiza una consulta de selección y devuelve sus resultados en memoria,
+     * sin mostrarlos.
+     * @param query La consulta a realizar.
+     * @param values Parámetros en orden que la consulta.
+     * @return El resultado de la consulta.
+     * @throws SQLException Si no se ha podido realizar la consulta.
+     */
+    public QueryResult fetch(String query, Object[] values) throws SQLException{
+        return this.fetch(query, values, null);
+    }
+    
+    /**
+     * Realiza una consulta de selección y devuelve sus resultados en memoria.
+     * @param running Si no es null se le asigna la sentencia mientras se 
+     * ejecuta, para poder cancelarla desde otro hilo.
+     */
+    private QueryResult fetch(String query, Object[] values, 
+            AtomicReference<Statement> running) throws SQLException{
+        ResultCache cache = this.cache;
+        QueryMetrics.Timing timing = this.time(query, values);
+        if (cache != null){
+            QueryResult cached = cache.get(query, values);
+            if (cached != null){
+                timing.cached(cached.getRowCount());
+                timing.stop();
+                return cached;
+            }
+        }
+        try (
+                Connection conn = timing.acquired(this.connectRead());
+                PreparedStatement stmt = timing.prepared(this.limit(
+                        this.prepareStreaming(conn, query)));
+            ){
+            Param.bind(stmt, values);
+            if (running != null)
+                running.set(stmt);
+            try (ResultSet result = timing.executed(stmt.executeQuery());){
+                QueryResult read = QueryResult.read(result);
+                timing.fetched();
+                timing.rows(read.getRowCount());
+                if (cache != null && read.getRowCount() <= Configuration.getInt(
+                        this.config, "cache.maxRows", 10000))
+                    cache.put(query, values, read);
+                return read;
+            } finally {
+                if (running != null)
+                    running.set(null);
+            }
+        } catch (SQLException e){
+            timing.failed(e);
+            throw e;
+        } finally {
+            QueryCanceller.finished();
+            timing.stop();
+        }
+    }
+    
+    /**
+     * Realiza una consulta de selección y convierte cada fila en un objeto,
+     * sin pasar por QueryResult ni por la caché de resultados.
+     * @param <T> Clase de los objetos.
+     * @param query La consulta a realizar.
+     * @param values Parámetros en orden que la consulta.
+     * @param mapper Convierte cada fila en un objeto.
+     * @return Un objeto por fila, en orden.
+     * @throws SQLException Si no se ha podido realizar la consulta.
+     */
+    public <T> List<T> list(String query, Object[] values, RowMapper<T> mapper)
+            throws SQLException{
+        QueryMetrics.Timing timing = this.time(query, values);
+        try (
+                Connection conn = timing.acquired(this.connectRead());
+                PreparedStatement stmt = timing.prepared(this.limit(
+                        this.prepareStreaming(conn, query)));
+            ){
+            Param.bind(stmt, values);
+            try (ResultSet result = timing.executed(stmt.executeQuery());){
+                List<T> rows = new ArrayList<>();
+                while (result.next())
+                    rows.add(mapper.map(result));
+                timing.fetched();
+                timing.rows(rows.size());
+                return rows;
+            }
+        } catch (SQLException e){
+            timing.failed(e);
+            throw e;
+        } finally {
+            QueryCanceller.finished();
+            timing.stop();
+        }
+    }
+    
+    /**
+     * Realiza una consulta de inserción, actualización o eliminación sin 
+     * mostrar ningún mensaje.
+     * @param query La consulta.
+     * @param values Parámetros en orden que la consulta.
+     * @return Número de líneas afectadas.
+     * @throws SQLException Si no se ha podido realizar la consulta.
+     */
+    public int update(String query, Object[] values) throws SQLException{
+        return this.update(query, values, null);
+    }
+    
+    /**
+     * Realiza una consulta de inserción, actualización o eliminación.
+     * @param running Si no es null se le asigna la sentencia mientras se 
+     * ejecuta, para poder cancelarla desde otro hilo.
+     */
+    private int update(String query, Object[] values, 
+            AtomicReference<Statement> running) throws SQLException{
+        QueryMetrics.Timing timing = this.time(query, values);
+        try (
+                Connection conn = timing.acquired(this.connect());
+                PreparedStatement stmt = timing.prepared(this.limit(
+                        conn.prepareStatement(query)));
+            ){
+            Param.bind(stmt, values);
+            if (running != null)
+                running.set(stmt);
+            try {
+                int rows = timing.executed(stmt.executeUpdate());
+                timing.affected(rows);
+                this.written(query);
+                return rows;
+            } finally {
+                if (running != null)
+                    running.set(null);
+            }
+        } catch (SQLException e){
+            timing.failed(e);
+            throw e;
+        } finally {
+            QueryCanceller.finished();
+            timing.stop();
+        }
+    }
+    
+    /**
+     * Realiza una consulta de inserción sin mostrar ningún mensaje y 
+     * devuelve la clave generada para la fila, como un id autoincremental.
+     * @param query La consulta.
+     * @param values Parámetros en orden que la consulta.
+     * @return La primera clave generada, -1 si no se ha generado ninguna.
+     * @throws SQLException Si no se ha podido realizar la consulta.
+     */
+    public long insert(String query, Object[] values) throws SQLException{
+        QueryMetrics.Timing timing = this.time(query, values);
+        try (
+                Connection conn = timing.acquired(this.connect());
+                PreparedStatement stmt = timing.prepared(this.limit(conn.prepareStatement(
+                        query, Statement.RETURN_GENERATED_KEYS)));
+            ){
+            Param.bind(stmt, values);
+            timing.affected(timing.executed(stmt.executeUpdate()));
+            this.written(query);
+            try (ResultSet keys = stmt.getGeneratedKeys()){
+                return keys != null && keys.next() ? keys.getLong(1) : -1;
+            }
+        } catch (SQLException e){
+            timing.failed(e);
+            throw e;
+        } finally {
+            QueryCanceller.finished();
+            timing.stop();
+        }
+    }
+    
+    /**
+     * Comprueba que el servidor responde ejecutando la consulta de validación
+     * del dialecto.
+     * @return Nombre y versión del sistema gestor.
+     * @throws SQLException Si no se ha podido conectar o ejecutar la consulta.
+     */
+    public String probe() throws SQLException{
+        return this.probe(null);
+    }
+    
+    /**
+     * Comprueba que el servidor responde.
+     * @param running Si no es null se le asigna la sentencia mientras se 
+     * ejecuta, para poder cancelarla desde otro hilo.
+     */
+    private String probe(AtomicReference<Statement> running) throws SQLException{
+        if (this.dialect == null)
+            throw new SQLException(this.dbType + ": tipo no soportado");
+        String query = this.dialect.getValidationQuery();
+        QueryMetrics.Timing timing = this.time(query, null);
+        try (
+                Connection conn = timing.acquired(this.connect());
+                PreparedStatement stmt = timing.prepared(this.limit(
+                        conn.prepareStatement(query)));
+            ){
+            if (running != null)
+                running.set(stmt);
+            try (ResultSet result = timing.executed(stmt.executeQuery());){
+                result.next();
+                timing.fetched();
+                timing.rows(1);
+                return conn.getMetaData().getDatabaseProductName() + " " 
+                        + conn.getMetaData().getDatabaseProductVersion();
+            } finally {
+                if (running != null)
+                    running.set(null);
+            }
+        } catch (SQLException e){
+            timing.failed(e);
+            throw e;
+        } finally {
+            QueryCanceller.finished();
+            timing.stop();
         }
-        System.out.println("\n+" + new String(new char[totalSize]).replace('\0', '=') 
-                + "+");
+    }
+    
+    /**
+     * Comprueba en segundo plano que el servidor responde (ver probe()).
+     * @return Nombre y versión futuros del sistema gestor.
+     */
+    public CompletableFuture<String> probeAsync(){
+        return this.getAsync().submit(this::probe);
+    }
+    
+    /**
+     * Realiza una consulta de selección en segundo plano, sin bloquear el 
+     * hilo que la llama. Permite lanzar muchas consultas independientes a la
+     * vez: se ejecutan en hilos virtuales si la máquina virtual los tiene y 
+     * como mucho <b>async.limit</b> a la vez por base de datos.
+     * @param query La consulta a realizar.
+     * @param values Parámetros en orden que la consulta.
+     * @return El resultado futuro de la consulta, que termina con la 
+     * SQLException si falla. Al cancelarlo se cancela la consulta en el 
+     * servidor.
+     */
+    public CompletableFuture<QueryResult> selectAsync(String query, Object[] values){
+        Object[] params = values.clone();
+        return this.getAsync().submit(running -> this.fetch(query, params, running));
+    }
+    
+    /**
+     * Realiza una consulta de inserción, actualización o eliminación en 
+     * segundo plano (ver selectAsync()).
+     * @param query La consulta.
+     * @param values Parámetros en orden que la consulta.
+     * @return El número futuro de líneas afectadas, que termina con la 
+     * SQLException si falla. Al cancelarlo se cancela la consulta en el 
+     * servidor.
+     */
+    public CompletableFuture<Integer> queryAsync(String query, Object[] values){
+        Object[] params = values.clone();
+        return this.getAsync().submit(running -> this.update(query, params, running));
     }
     
     /** 
-     * Realiza un consulta de insercin, actualizacin o eliminacin en una tabla 
+     * Realiza un consulta de inserción, actualización o eliminación en una tabla 
      * de la base de datos.
      * https://stackoverflow.com/questions/21872040/jdbc-inserting-date-values-into-mysql
      * @param query La consulta.
-     * @param values Parmetros en orden que la consulta.
+     * @param values Parámetros en orden que la consulta.
      */
     public void query(String query, Object[] values){
         if (values == null)
             return; // caso en el que no confirma un Delete.
+        QueryMetrics.Timing timing = this.time(query, values);
         try (
-                Connection conn = this.connect();
-                PreparedStatement stmt = conn.prepareStatement(query);
+                Connection conn = timing.acquired(this.connect());
+                PreparedStatement stmt = timing.prepared(this.limit(
+                        conn.prepareStatement(query)));
             ){
             // stmt.getParameterMetaData().getParameterCount()
-            for (int i = 0; i < values.length; i++){
-                stmt.setObject(i + 1, values[i]);
-            }
-            int rows = stmt.executeUpdate();
+            Param.bind(stmt, values);
+            int rows = timing.executed(stmt.executeUpdate());
+            timing.affected(rows);
+            this.written(query);
             if (rows > 0)
-                System.out.println("La operacin se ha realizado con xito, " 
-                                  + rows + " lneas afectadas.");
+                System.out.println("La operación se ha realizado con éxito, " 
+                                  + rows + " líneas afectadas.");
             else
                 System.out.println("No se han producido cambios, " + rows + " "
                                   + "lineas afectadas.");
         } catch (SQLException e){
-            System.out.println("No se ha podido realizar la operacin en la "
+            timing.failed(e);
+            System.out.println("No se ha podido realizar la operación en la "
                     + "base de datos");
             //e.printStackTrace();
+        } finally {
+            QueryCanceller.finished();
+            timing.stop();
+        }
+    }
+    
+    /**
+     * Realiza una misma consulta de inserción, actualización o eliminación 
+     * para varias filas, enviándolas al servidor por lotes en lugar de una 
+     * por una. Cada lote de <b>batch.size</b> filas (1000 por defecto) se 
+     * ejecuta en una sola transacción, si un lote falla se deshace y no se 
+     * continúa con los siguientes.
+     * @param query La consulta.
+     * @param rows Parámetros de cada fila en orden que la consulta, con el 
+     * mismo formato que devuelven los métodos de Query. Las filas null (por 
+     * ejemplo un Delete no confirmado) se omiten.
+     * @return Líneas afectadas por cada fila, en el mismo orden. Puede ser
+     * Statement.SUCCESS_NO_INFO si el driver ha reescrito el lote o 
+     * Statement.EXECUTE_FAILED para las filas que no se han podido guardar.
+     */
+    public int[] queryBatch(String query, List<Object[]> rows){
+        int[] counts = new int[rows.size()];
+        int chunk = Math.max(1, Configuration.getInt(this.config, "batch.size", 1000));
+        int done = 0;
+        QueryMetrics.Timing timing = this.time(query, null);
+        try (
+                Connection conn = timing.acquired(this.connect());
+                PreparedStatement stmt = timing.prepared(this.limit(
+                        conn.prepareStatement(query)));
+            ){
+            conn.setAutoCommit(false);
+            int[] index = new int[Math.min(chunk, rows.size())];
+            try {
+                while (done < rows.size()){
+                    int end = Math.min(rows.size(), done + chunk);
+                    int n = 0;
+                    for (int row = done; row < end; row++){
+                        Object[] values = rows.get(row);
+                        if (values == null)
+                            continue;
+                        Param.bind(stmt, values);
+                        stmt.addBatch();
+                        index[n++] = row;
+                    }
+                    if (n > 0){
+                        int[] result = timing.executed(stmt.executeBatch());
+                        for (int i = 0; i < n && i < result.length; i++)
+                            counts[index[i]] = result[i];
+                    }
+                    conn.commit();
+                    timing.executed(null); // El commit cuenta como ejecución.
+                    this.written(query);
+                    done = end;
+                }
+            } catch (SQLException e){
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+            int affected = 0;
+            for (int count : counts)
+                if (count > 0)
+                    affected += count;
+            timing.affected(affected);
+            System.out.println("Se han procesado " + rows.size() + " filas por "
+                    + "lotes, " + affected + " líneas afectadas.");
+        } catch (SQLException e){
+            timing.failed(e);
+            Arrays.fill(counts, done, counts.length, Statement.EXECUTE_FAILED);
+            System.out.println("No se ha podido realizar la operación en la "
+                    + "base de datos, se han guardado " + done + " de " 
+                    + rows.size() + " filas.");
+            //e.printStackTrace();
+        } finally {
+            QueryCanceller.finished();
+            timing.stop();
+        }
+        return counts;
+    }
+    
+    /**
+     * Plazo de las consultas de un hilo (ver deadline()).
+     */
+    public static final class Deadline implements AutoCloseable {
+        
+        private final Long previous;
+        
+        private Deadline(Long previous){
+            this.previous = previous;
+        }
+        
+        /**
+         * Vuelve al plazo anterior, o a ninguno.
+         */
+        @Override
+        public void close(){
+            if (this.previous == null)
+                DEADLINE.remove();
+            else
+                DEADLINE.set(this.previous);
         }
     }
 }
\ No newline at end of file
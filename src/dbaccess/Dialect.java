@@ -0,0 +1,225 @@
+package dbaccess;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * Define lo que cambia entre los distintos sistemas gestores de bases de 
+ * datos: cómo se construye la conexión física, qué propiedades del driver 
+ * conviene activar para obtener un buen rendimiento y cómo se adapta una 
+ * consulta a su SQL propio.
+ * <p>
+ * Las propiedades por defecto de cada driver se pueden cambiar o ampliar 
+ * desde el archivo de configuración con el prefijo <b>driver.</b>, por 
+ * ejemplo <code>driver.prepareThreshold=3</code>.
+ * @author zelda
+ */
+public interface Dialect {
+    
+    /**
+     * @return Nombre del sistema gestor de bases de datos.
+     */
+    String getName();
+    
+    /**
+     * Propiedades del driver recomendadas para este sistema gestor.
+     * @param config Configuración de la base de datos, para tener en cuenta 
+     * opciones como <b>batch.rewrite</b> o <b>select.streaming</b>.
+     * @return Propiedades del driver con sus valores.
+     */
+    Properties getDefaults(Properties config);
+    
+    /**
+     * Abre una conexión física con la base de datos.
+     * @param server Dirección del servidor o ruta del archivo.
+     * @param port Puerto del servidor, 0 para usar el puerto por defecto.
+     * @param db Nombre de la base de datos o del archivo.
+     * @param login Nombre de usuario.
+     * @param password Contraseña del usuario.
+     * @param driver Propiedades del driver que se aplican a la conexión.
+     * @return La conexión física.
+     * @throws SQLException 
+     */
+    Connection connect(String server, int port, String db, String login, 
+            String password, Properties driver) throws SQLException;
+    
+    /**
+     * Prepara una sentencia para leer sus resultados por bloques de filas en
+     * lugar de recibirlos todos de una vez.
+     * @param conn Conexión sobre la que se ha preparado la sentencia.
+     * @param stmt La sentencia.
+     * @param fetchSize Filas que se reciben en cada bloque.
+     * @throws SQLException 
+     */
+    default void configureStreaming(Connection conn, PreparedStatement stmt, 
+            int fetchSize) throws SQLException{
+        stmt.setFetchSize(fetchSize);
+    }
+    
+    /**
+     * Consulta más sencilla posible, para comprobar que el servidor responde.
+     * @return La consulta.
+     */
+    default String getValidationQuery(){
+        return "SELECT 1";
+    }
+    
+    /**
+     * Limita el número de filas que devuelve una consulta.
+     * @param query Consulta de selección terminada en ORDER BY, sin punto y
+     * coma.
+     * @param rows Número máximo de filas.
+     * @return La consulta con el límite.
+     */
+    default String limit(String query, int rows){
+        return query + " LIMIT " + rows;
+    }
+    
+    /**
+     * Pone un identificador (tabla o columna) entre los delimitadores del
+     * sistema gestor, respetando las mayúsculas. Si tiene esquema se 
+     * delimita cada parte.
+     * @param identifier El identificador, por ejemplo Customer o dbo.Componente.
+     * @return El identificador delimitado.
+     */
+    default String quote(String identifier){
+        StringBuilder quoted = new StringBuilder();
+        for (String part : identifier.split("\\.")){
+            if (quoted.length() > 0)
+                quoted.append('.');
+            quoted.append('"').append(part.trim().replace("\"", "\"\""))
+                    .append('"');
+        }
+        return quoted.toString();
+    }
+    
+    /**
+     * Propiedades del driver que solo necesita la conexión de la carga 
+     * masiva (ver bulkLoad()) y no se deben usar en las del pool.
+     * @param config Colección con las propiedades de configuración.
+     * @return Las propiedades, vacías si no hace falta ninguna.
+     */
+    default Properties getBulkProperties(Properties config){
+        return new Properties();
+    }
+    
+    /**
+     * Carga las filas de un archivo CSV en una tabla con la forma más rápida
+     * que tenga el sistema gestor. Por defecto se insertan con una sentencia
+     * preparada por lotes de batchSize filas, pasando los valores como texto,
+     * dentro de la transacción de la conexión.
+     * @param conn Conexión, sin autocommit. El commit lo hace quien llama.
+     * @param table Nombre de la tabla.
+     * @param csv El archivo, con las columnas de la tabla en la cabecera.
+     * @param batchSize Filas de cada lote.
+     * @return Número de filas cargadas.
+     * @throws SQLException
+     * @throws IOException Si no se puede leer el archivo.
+     */
+    default long bulkLoad(Connection conn, String table, CsvFile csv, 
+            int batchSize) throws SQLException, IOException{
+        String[] columns = csv.getColumns();
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(
+                this.quote(table)).append(" (");
+        for (int i = 0; i < columns.length; i++)
+            sql.append(i > 0 ? ", " : "").append(this.quote(columns[i]));
+        sql.append(") VALUES (");
+        for (int i = 0; i < columns.length; i++)
+            sql.append(i > 0 ? ", ?" : "?");
+        sql.append(')');
+        long rows = 0;
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())){
+            String[] row;
+            int pending = 0;
+            while ((row = csv.next()) != null){
+                if (row.length != columns.length)
+                    throw new SQLException("La fila " + (rows + 1) + " tiene " 
+                            + row.length + " valores y la cabecera " 
+                            + columns.length);
+                for (int i = 0; i < row.length; i++)
+                    stmt.setString(i + 1, row[i]);
+                stmt.addBatch();
+                rows++;
+                if (++pending == batchSize){
+                    stmt.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0)
+                stmt.executeBatch();
+        }
+        return rows;
+    }
+    
+    /**
+     * Obtiene el plan de ejecución de una consulta con la herramienta del
+     * sistema gestor. Por defecto se ejecuta <code>EXPLAIN consulta</code> y
+     * se devuelve cada fila del resultado en una línea.
+     * @param conn Conexión en la que se obtiene el plan.
+     * @param query La consulta.
+     * @param values Parámetros en orden que la consulta.
+     * @param analyze True para ejecutar la consulta y obtener los tiempos y
+     * filas reales, si el sistema gestor lo permite.
+     * @return El plan como texto.
+     * @throws SQLException
+     */
+    default String explain(Connection conn, String query, Object[] values, 
+            boolean analyze) throws SQLException{
+        return plan(conn, "EXPLAIN " + query, values);
+    }
+    
+    /**
+     * Ejecuta una consulta que devuelve un plan y lo pasa a texto: una línea
+     * por fila, con los valores separados por tabuladores.
+     * @param conn Conexión en la que se ejecuta.
+     * @param query La consulta EXPLAIN.
+     * @param values Parámetros en orden que la consulta.
+     * @return El plan como texto.
+     * @throws SQLException
+     */
+    static String plan(Connection conn, String query, Object[] values) 
+            throws SQLException{
+        StringBuilder plan = new StringBuilder();
+        try (PreparedStatement stmt = conn.prepareStatement(query)){
+            Param.bind(stmt, values);
+            try (ResultSet result = stmt.executeQuery()){
+                int nColumns = result.getMetaData().getColumnCount();
+                while (result.next()){
+                    if (plan.length() > 0)
+                        plan.append(System.lineSeparator());
+                    for (int i = 1; i <= nColumns; i++)
+                        plan.append(i > 1 ? "\t" : "").append(result.getString(i));
+                }
+            }
+        }
+        return plan.toString();
+    }
+    
+    /**
+     * Obtiene el dialecto de un tipo de base de datos.
+     * @param dbType Tipo de base de datos ("MySQL", "SQLServer", "PostgreSQL"
+     * o "SQLite").
+     * @return El dialecto o null si el tipo no está soportado.
+     */
+    static Dialect forType(String dbType){
+        switch (dbType.toLowerCase().trim()){
+            case "mysql":
+                return new MySQLDialect();
+            case "mssql":
+            case "sqlserver":
+                return new SQLServerDialect();
+            case "postgre":
+            case "postgres":
+            case "postgresql":
+                return new PostgreSQLDialect();
+            case "sqlite":
+                return new SQLiteDialect();
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package dbaccess;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Escribe las filas de una consulta en un archivo CSV o JSON Lines según se
+ * van leyendo del ResultSet, sin guardarlas en memoria. Los caracteres se
+ * codifican en UTF-8 directamente en un buffer de tamaño fijo que se vuelca
+ * en el archivo a través de un FileChannel cada vez que se llena, de modo que
+ * la memoria usada es la misma para cien filas que para millones.
+ * <p>
+ * El formato se elige por la extensión del archivo: <em>.csv</em> o
+ * <em>.jsonl</em> (también <em>.ndjson</em> y <em>.json</em>), seguida de
+ * <em>.gz</em> para comprimirlo con gzip.
+ * @author zelda
+ */
+class Exporter implements AutoCloseable {
+
+    /**
+     * Formatos de exportación.
+     */
+    enum Format { CSV, JSONL }
+
+    private static final int TEXT = 0, NUMBER = 1, BOOLEAN = 2;
+
+    private final Path file;
+    private final Format format;
+    private final FileChannel channel;
+    private final OutputStream gzip;
+    private final ByteBuffer bytes;
+    private final CharBuffer chars = CharBuffer.allocate(8192);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private String[] keys;
+    private int[] kinds;
+    private long rows;
+    private long written;
+
+    /**
+     * Crea el archivo, o lo vacía si ya existe.
+     * @param fileName Ruta del archivo, su extensión indica el formato.
+     * @param bufferSize Tamaño en bytes del buffer de escritura.
+     * @throws IOException Si la extensión no es de un formato soportado o no
+     * se puede crear el archivo.
+     */
+    Exporter(String fileName, int bufferSize) throws IOException{
+        String name = fileName.toLowerCase().trim();
+        boolean compress = name.endsWith(".gz");
+        if (compress)
+            name = name.substring(0, name.length() - 3);
+        if (name.endsWith(".csv"))
+            this.format = Format.CSV;
+        else if (name.endsWith(".jsonl") || name.endsWith(".ndjson")
+                || name.endsWith(".json"))
+            this.format = Format.JSONL;
+        else
+            throw new IOException("formato no soportado, usa .csv o .jsonl "
+                    + "(con .gz para comprimir)");
+        this.file = Paths.get(fileName.trim());
+        this.channel = FileChannel.open(this.file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        if (compress){
+            // El compresor necesita un array, así que el buffer no es directo.
+            this.bytes = ByteBuffer.allocate(bufferSize);
+            this.gzip = new GZIPOutputStream(Channels.newOutputStream(
+                    this.channel), bufferSize);
+        } else {
+            this.bytes = ByteBuffer.allocateDirect(bufferSize);
+            this.gzip = null;
+        }
+    }
+
+    /**
+     * @return Formato del archivo.
+     */
+    Format getFormat(){
+        return this.format;
+    }
+
+    /**
+     * @return Filas escritas.
+     */
+    long getRows(){
+        return this.rows;
+    }
+
+    /**
+     * @return Bytes escritos antes de comprimir.
+     */
+    long getWritten(){
+        return this.written;
+    }
+
+    /**
+     * Escribe la cabecera con los nombres de las columnas (en CSV) y prepara
+     * la escritura de las filas según el tipo de cada columna.
+     * @param data Información de las columnas del resultado.
+     * @throws SQLException
+     * @throws IOException
+     */
+    void head(ResultSetMetaData data) throws SQLException, IOException{
+        int nColumns = data.getColumnCount();
+        this.keys = new String[nColumns];
+        this.kinds = new int[nColumns];
+        for (int i = 0; i < nColumns; i++){
+            String label = data.getColumnLabel(i + 1);
+            this.kinds[i] = kind(data, i + 1);
+            if (this.format == Format.CSV){
+                if (i > 0)
+                    this.append(',');
+                this.csv(label);
+            } else {
+                StringBuilder key = new StringBuilder(i == 0 ? "{" : ",");
+                json(key, label);
+                this.keys[i] = key.append(':').toString();
+            }
+        }
+        if (this.format == Format.CSV)
+            this.append("\r\n");
+    }
+
+    /**
+     * Escribe la fila actual del resultado.
+     * @param result El resultado, situado en la fila.
+     * @throws SQLException
+     * @throws IOException
+     */
+    void row(ResultSet result) throws SQLException, IOException{
+        if (this.format == Format.CSV){
+            for (int i = 0; i < this.kinds.length; i++){
+                if (i > 0)
+                    this.append(',');
+                this.csv(result.getString(i + 1));
+            }
+            this.append("\r\n");
+        } else {
+            for (int i = 0; i < this.kinds.length; i++){
+                this.append(this.keys[i]);
+                this.jsonValue(result, i);
+            }
+            this.append(this.kinds.length == 0 ? "{}\n" : "}\n");
+        }
+        this.rows++;
+    }
+
+    /**
+     * Vuelca lo que queda en el buffer y cierra el archivo.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException{
+        try {
+            this.chars.flip();
+            this.encode(true);
+            while (this.encoder.flush(this.bytes).isOverflow())
+                this.drain();
+            this.drain();
+            if (this.gzip != null)
+                this.gzip.close(); // Cierra también el canal.
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Escribe un valor CSV, entre comillas solo si contiene separadores,
+     * comillas o saltos de línea. Los nulos se escriben vacíos.
+     */
+    private void csv(String value) throws IOException{
+        if (value == null)
+            return;
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++){
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote){
+            this.append(value);
+            return;
+        }
+        this.append('"');
+        for (int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            if (c == '"')
+                this.append('"');
+            this.append(c);
+        }
+        this.append('"');
+    }
+
+    /**
+     * Escribe un valor JSON: los números y booleanos sin comillas y el
+     * resto como texto.
+     */
+    private void jsonValue(ResultSet result, int column)
+            throws SQLException, IOException{
+        if (this.kinds[column] == BOOLEAN){
+            boolean value = result.getBoolean(column + 1);
+            this.append(result.wasNull() ? "null" : String.valueOf(value));
+            return;
+        }
+        String value = result.getString(column + 1);
+        if (value == null)
+            this.append("null");
+        else if (this.kinds[column] == NUMBER && isJsonNumber(value))
+            this.append(value);
+        else {
+            this.append('"');
+            for (int i = 0; i < value.length(); i++){
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\'){
+                    this.append('\\');
+                    this.append(c);
+                } else if (c < 0x20)
+                    this.append(escape(c));
+                else
+                    this.append(c);
+            }
+            this.append('"');
+        }
+    }
+
+    private void append(String text) throws IOException{
+        int offset = 0;
+        while (offset < text.length()){
+            if (!this.chars.hasRemaining())
+                this.encodeChars();
+            int n = Math.min(this.chars.remaining(), text.length() - offset);
+            this.chars.put(text, offset, offset + n);
+            offset += n;
+        }
+    }
+
+    private void append(char c) throws IOException{
+        if (!this.chars.hasRemaining())
+            this.encodeChars();
+        this.chars.put(c);
+    }
+
+    /**
+     * Codifica los caracteres pendientes en el buffer de bytes. Un par
+     * sustituto partido queda pendiente para la siguiente vez.
+     */
+    private void encodeChars() throws IOException{
+        this.chars.flip();
+        this.encode(false);
+        this.chars.compact();
+    }
+
+    private void encode(boolean endOfInput) throws IOException{
+        while (true){
+            CoderResult result = this.encoder.encode(this.chars, this.bytes,
+                    endOfInput);
+            if (result.isOverflow())
+                this.drain();
+            else if (result.isUnderflow())
+                return;
+            else
+                result.throwException();
+        }
+    }
+
+    /**
+     * Escribe el contenido del buffer de bytes en el archivo.
+     */
+    private void drain() throws IOException{
+        this.bytes.flip();
+        this.written += this.bytes.remaining();
+        if (this.gzip != null)
+            this.gzip.write(this.bytes.array(), this.bytes.arrayOffset(),
+                    this.bytes.remaining());
+        else
+            while (this.bytes.hasRemaining())
+                this.channel.write(this.bytes);
+        this.bytes.clear();
+    }
+
+    private static int kind(ResultSetMetaData data, int column)
+            throws SQLException{
+        switch (data.getColumnType(column)){
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return NUMBER;
+            case Types.BOOLEAN:
+                return BOOLEAN;
+            case Types.BIT:
+                return data.getPrecision(column) <= 1 ? BOOLEAN : TEXT;
+            default:
+                return TEXT;
+        }
+    }
+
+    /**
+     * @return True si el texto de un número es también un número JSON válido
+     * (no lo son NaN, Infinity ni los que empiezan por + o por punto).
+     */
+    private static boolean isJsonNumber(String value){
+        if (value.isEmpty())
+            return false;
+        char first = value.charAt(0);
+        if (first != '-' && (first < '0' || first > '9'))
+            return false;
+        for (int i = 1; i < value.length(); i++){
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && c != '.' && c != 'e' && c != 'E'
+                    && c != '-' && c != '+')
+                return false;
+        }
+        return true;
+    }
+
+    private static void json(StringBuilder out, String text){
+        out.append('"');
+        for (int i = 0; i < text.length(); i++){
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\')
+                out.append('\\').append(c);
+            else if (c < 0x20)
+                out.append(escape(c));
+            else
+                out.append(c);
+        }
+        out.append('"');
+    }
+
+    private static String escape(char c){
+        switch (c){
+            case '\n':
+                return "\\n";
+            case '\r':
+                return "\\r";
+            case '\t':
+                return "\\t";
+            case '\b':
+                return "\\b";
+            case '\f':
+                return "\\f";
+            default:
+                return String.format("\\u%04x", (int)c);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package dbaccess;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import utils.Configuration;
+
+/**
+ * Ejecuta una misma consulta o una comprobación de estado en todas las bases
+ * de datos configuradas a la vez, en lugar de visitarlas una tras otra.
+ * Los resultados se recogen según van llegando y se muestran juntos en una
+ * sola tabla, con una columna que indica de qué base de datos viene cada
+ * fila, seguida de un resumen con el estado y el tiempo de cada una.
+ * <p>
+ * Cada base de datos tiene un tiempo máximo de respuesta de
+ * <b>fanout.timeout</b> segundos (10 por defecto) en su archivo de
+ * configuración: si no ha terminado se cancela su consulta y se muestran los
+ * resultados del resto.
+ * @author zelda
+ */
+public class FanOut {
+
+    /**
+     * Ancho máximo de una columna, los valores más largos se parten en
+     * varias líneas.
+     */
+    private static final int MAX_WIDTH = 60;
+
+    private final Map<String, Database> sources = new LinkedHashMap<>();
+    private final Map<String, Long> timeouts = new LinkedHashMap<>();
+
+    /**
+     * Carga todas las bases de datos de una carpeta de configuración. El
+     * nombre de cada archivo <em>.cfg</em> es el tipo de la base de datos
+     * (MySQL.cfg, SQLServer.cfg...), los de tipos no soportados se ignoran.
+     * @param folder Carpeta con los archivos de configuración.
+     */
+    public FanOut(String folder){
+        File[] files = new File(folder).listFiles(
+                (dir, name) -> name.toLowerCase().endsWith(".cfg"));
+        if (files == null)
+            return;
+        Arrays.sort(files);
+        for (File file : files){
+            String name = file.getName().substring(0, file.getName().length() - 4);
+            if (Dialect.forType(name) == null)
+                continue;
+            Properties config = Configuration.getConfig(file.getPath());
+            if (config == null)
+                continue;
+            this.sources.put(name, Database.create(name, config));
+            this.timeouts.put(name, TimeUnit.SECONDS.toNanos(Math.max(1,
+                    Configuration.getInt(config, "fanout.timeout", 10))));
+        }
+    }
+
+    /**
+     * @return Nombres de las bases de datos cargadas.
+     */
+    public List<String> getSources(){
+        return new ArrayList<>(this.sources.keySet());
+    }
+
+    /**
+     * Comprueba a la vez que todas las bases de datos responden y muestra
+     * el sistema gestor y el tiempo de respuesta de cada una.
+     */
+    public void probe(){
+        List<Outcome<String>> outcomes = this.gather(Database::probeAsync);
+        List<String[]> rows = new ArrayList<>();
+        for (Outcome<String> outcome : outcomes)
+            rows.add(new String[]{outcome.source, outcome.status(),
+                outcome.value != null ? outcome.value : "", 
+                String.valueOf(outcome.millis)});
+        print("Estado de las bases de datos", new String[]{"Origen", "Estado",
+            "Sistema gestor", "ms"}, rows);
+    }
+
+    /**
+     * Realiza una consulta de selección en todas las bases de datos a la vez
+     * y muestra todas las filas en una sola tabla. Si las columnas no
+     * coinciden se muestran todas, vacías en las bases de datos que no las
+     * tienen.
+     * @param query La consulta a realizar.
+     * @param values Parámetros en orden que la consulta.
+     * @param tableName Título de la tabla.
+     */
+    public void select(String query, Object[] values, String tableName){
+        List<Outcome<QueryResult>> outcomes = this.gather(
+                database -> database.selectAsync(query, values));
+        List<String> labels = new ArrayList<>();
+        labels.add("Origen");
+        for (Outcome<QueryResult> outcome : outcomes)
+            if (outcome.value != null)
+                for (String label : outcome.value.getLabels())
+                    if (!containsIgnoreCase(labels, label))
+                        labels.add(label);
+        List<String[]> rows = new ArrayList<>();
+        List<String[]> summary = new ArrayList<>();
+        for (Outcome<QueryResult> outcome : outcomes){
+            QueryResult result = outcome.value;
+            int count = result != null ? result.getRowCount() : 0;
+            summary.add(new String[]{outcome.source, outcome.status(),
+                String.valueOf(count), String.valueOf(outcome.millis)});
+            if (result == null)
+                continue;
+            int[] columns = new int[result.getColumnCount()];
+            for (int i = 0; i < columns.length; i++)
+                columns[i] = indexOfIgnoreCase(labels, result.getLabel(i));
+            for (int row = 0; row < count; row++){
+                String[] merged = new String[labels.size()];
+                merged[0] = outcome.source;
+                for (int i = 0; i < columns.length; i++)
+                    merged[columns[i]] = result.getString(row, i);
+                rows.add(merged);
+            }
+        }
+        if (rows.isEmpty())
+            System.out.println("La consulta ha devuelto 0 resultados.");
+        else
+            print(tableName, labels.toArray(new String[0]), rows);
+        System.out.println();
+        print("Resumen", new String[]{"Origen", "Estado", "Filas", "ms"}, summary);
+    }
+
+    /**
+     * Cierra las conexiones de todas las bases de datos.
+     */
+    public void close(){
+        for (Database database : this.sources.values())
+            database.close();
+    }
+
+    /**
+     * Lanza la tarea en todas las bases de datos y espera los resultados,
+     * mostrando cada uno según llega. Las que superan su tiempo máximo se
+     * cancelan.
+     * @return El resultado de cada base de datos, en el orden en que se
+     * cargaron.
+     */
+    private <T> List<Outcome<T>> gather(
+            Function<Database, CompletableFuture<T>> task){
+        BlockingQueue<Outcome<T>> done = new LinkedBlockingQueue<>();
+        List<Outcome<T>> outcomes = new ArrayList<>();
+        long start = System.nanoTime();
+        for (Map.Entry<String, Database> entry : this.sources.entrySet()){
+            Outcome<T> outcome = new Outcome<>(entry.getKey(),
+                    start + this.timeouts.get(entry.getKey()));
+            outcomes.add(outcome);
+            CompletableFuture<T> future;
+            try {
+                future = task.apply(entry.getValue());
+            } catch (RuntimeException e){
+                future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+            }
+            outcome.future = future;
+            future.whenComplete((value, error) -> {
+                outcome.millis = TimeUnit.NANOSECONDS.toMillis(
+                        System.nanoTime() - start);
+                outcome.value = value;
+                outcome.error = error;
+                done.add(outcome);
+            });
+        }
+        int pending = outcomes.size();
+        boolean interrupted = false;
+        while (pending > 0){
+            long deadline = Long.MAX_VALUE;
+            for (Outcome<T> outcome : outcomes)
+                if (!outcome.future.isDone())
+                    deadline = Math.min(deadline, outcome.deadline);
+            Outcome<T> next = null;
+            try {
+                next = deadline == Long.MAX_VALUE ? done.take() : done.poll(
+                        Math.max(0, deadline - System.nanoTime()), 
+                        TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e){
+                interrupted = true; // Se cancelan todas las pendientes.
+            }
+            if (next != null){
+                pending--;
+                System.out.println(next.source + ": " + next.status() + " ("
+                        + next.millis + " ms)");
+                continue;
+            }
+            long now = System.nanoTime();
+            for (Outcome<T> outcome : outcomes)
+                if (!outcome.future.isDone() && (outcome.deadline <= now
+                        || interrupted))
+                    outcome.future.cancel(true);
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        System.out.println();
+        return outcomes;
+    }
+
+    private static void print(String title, String[] labels, List<String[]> rows){
+        int[] widths = new QueryResult(labels, rows).getWidths();
+        int total = widths.length * 3 - 1; // Márgenes y separadores.
+        for (int i = 0; i < widths.length; i++){
+            widths[i] = Math.min(widths[i], MAX_WIDTH);
+            total += widths[i];
+        }
+        // La última columna se ensancha si el título no cabe en la tabla.
+        if (title.length() > total)
+            widths[widths.length - 1] += title.length() - total;
+        TableRenderer renderer = new TableRenderer(widths, true);
+        renderer.title(title);
+        renderer.head(labels);
+        for (String[] row : rows)
+            renderer.row(row);
+        renderer.end();
+    }
+
+    private static boolean containsIgnoreCase(List<String> labels, String label){
+        return indexOfIgnoreCase(labels, label) >= 0;
+    }
+
+    private static int indexOfIgnoreCase(List<String> labels, String label){
+        for (int i = 0; i < labels.size(); i++)
+            if (labels.get(i).equalsIgnoreCase(label))
+                return i;
+        return -1;
+    }
+
+    /**
+     * Resultado de una base de datos.
+     */
+    private static class Outcome<T> {
+
+        private final String source;
+        private final long deadline;
+        private CompletableFuture<T> future;
+        private volatile T value;
+        private volatile Throwable error;
+        private volatile long millis;
+
+        Outcome(String source, long deadline){
+            this.source = source;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return Texto con el estado: OK, el error o si se ha agotado el
+         * tiempo de espera.
+         */
+        String status(){
+            Throwable cause = this.error;
+            if (cause == null)
+                return "OK";
+            if (cause instanceof CompletionException && cause.getCause() != null)
+                cause = cause.getCause();
+            if (cause instanceof CancellationException)
+                return "Tiempo agotado";
+            if (cause instanceof SQLException)
+                return "Error: " + cause.getMessage();
+            return "Error: " + cause;
+        }
+    }
+}
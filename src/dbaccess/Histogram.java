@@ -0,0 +1,142 @@
+package dbaccess;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma de tiempos en nanosegundos con cubetas logarítmicas: cada
+ * potencia de dos se divide en 8 cubetas, por lo que los percentiles tienen
+ * un error relativo menor del 12,5% con un tamaño fijo de memoria. Registrar
+ * un valor solo incrementa contadores atómicos, sin bloqueos ni reservas de
+ * memoria, por lo que se puede llamar en cada consulta.
+ * @author zelda
+ */
+class Histogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS + SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Registra un valor.
+     * @param nanos Tiempo en nanosegundos, los negativos cuentan como 0.
+     */
+    void record(long nanos){
+        long value = Math.max(0, nanos);
+        this.counts.incrementAndGet(bucket(value));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(value);
+        long current;
+        while (value > (current = this.max.get())
+                && !this.max.compareAndSet(current, value)){
+            // Otro hilo ha cambiado el máximo, se vuelve a comprobar.
+        }
+    }
+
+    /**
+     * @return Número de valores registrados.
+     */
+    long getCount(){
+        return this.count.get();
+    }
+
+    /**
+     * @return Suma de los valores registrados en nanosegundos.
+     */
+    long getSum(){
+        return this.sum.get();
+    }
+
+    /**
+     * @return Valor máximo registrado en nanosegundos.
+     */
+    long getMax(){
+        return this.max.get();
+    }
+
+    /**
+     * @return Media de los valores registrados en nanosegundos.
+     */
+    double getMean(){
+        long n = this.count.get();
+        return n == 0 ? 0 : (double)this.sum.get() / n;
+    }
+
+    /**
+     * Calcula un percentil aproximado.
+     * @param percentile Percentil entre 0 y 100.
+     * @return Valor del percentil en nanosegundos, el punto medio de su
+     * cubeta sin superar el máximo registrado.
+     */
+    long getPercentile(double percentile){
+        long n = this.count.get();
+        if (n == 0)
+            return 0;
+        long rank = Math.max(1, (long)Math.ceil(n * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++){
+            seen += this.counts.get(i);
+            if (seen >= rank)
+                return Math.min(this.max.get(),
+                        lowest(i) + (lowest(i + 1) - 1 - lowest(i)) / 2);
+        }
+        return this.max.get();
+    }
+
+    /**
+     * Suma los valores de otro histograma a este.
+     * @param other El otro histograma.
+     */
+    void merge(Histogram other){
+        for (int i = 0; i < BUCKETS; i++)
+            this.counts.addAndGet(i, other.counts.get(i));
+        this.count.addAndGet(other.count.get());
+        this.sum.addAndGet(other.sum.get());
+        long value = other.max.get(), current;
+        while (value > (current = this.max.get())
+                && !this.max.compareAndSet(current, value)){
+            // Otro hilo ha cambiado el máximo, se vuelve a comprobar.
+        }
+    }
+
+    /**
+     * Pone a cero el histograma.
+     */
+    void reset(){
+        for (int i = 0; i < BUCKETS; i++)
+            this.counts.set(i, 0);
+        this.count.set(0);
+        this.sum.set(0);
+        this.max.set(0);
+    }
+
+    /**
+     * Los valores menores de 8 tienen cubeta propia, el resto se agrupan por
+     * su bit más alto y los 3 bits siguientes.
+     */
+    private static int bucket(long value){
+        if (value < SUB_BUCKETS)
+            return (int)value;
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int)(value >>> (magnitude - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return Valor más pequeño que cae en una cubeta.
+     */
+    private static long lowest(int bucket){
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int magnitude = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        if (magnitude > 62)
+            return Long.MAX_VALUE;
+        long sub = bucket % SUB_BUCKETS;
+        return (1L << magnitude) + (sub << (magnitude - SUB_BITS));
+    }
+}
@@ -0,0 +1,487 @@
+package dbaccess;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import utils.Configuration;
+
+/**
+ * Generador de carga: realiza desde varios hilos a la vez una mezcla de
+ * inserciones, actualizaciones, búsquedas y eliminaciones con las sentencias
+ * de los menús y valores sintéticos (ver Query.getWorkload()), y al terminar
+ * muestra por operación las realizadas, los errores, el rendimiento y los
+ * percentiles p50, p95, p99 y p99.9 del tiempo de respuesta.
+ * <p>
+ * Hay dos modos:
+ * <ul>
+ *     <li><b>Hilos</b> (<em>load.rate=0</em>): cada hilo lanza la siguiente
+ *     operación en cuanto termina la anterior, para medir el rendimiento
+ *     máximo con ese número de conexiones.</li>
+ *     <li><b>Ritmo fijo</b> (<em>load.rate</em> operaciones por segundo):
+ *     las operaciones tienen una hora de inicio prevista y el tiempo de
+ *     respuesta se mide desde ella, no desde que un hilo queda libre. Así,
+ *     si el servidor se detiene, las operaciones que debían haber empezado
+ *     mientras tanto cuentan la espera (omisión coordinada) en lugar de no
+ *     enviarse. También se muestra el tiempo de servicio, medido desde el
+ *     inicio real.</li>
+ * </ul>
+ * Las actualizaciones, búsquedas y eliminaciones se hacen solo sobre filas
+ * insertadas por el generador, y las que quedan se eliminan al terminar.
+ * Las operaciones de los primeros <b>load.warmup</b> segundos no se cuentan.
+ * @author zelda
+ */
+public class LoadGenerator {
+
+    /**
+     * Operaciones de la mezcla, en el orden de los informes.
+     */
+    public static final String[] OPERATIONS = {"insert", "update", "search",
+        "delete"};
+    private static final int INSERT = 0, UPDATE = 1, SEARCH = 2, DELETE = 3;
+    private static final double[] PERCENTILES = {50, 95, 99, 99.9};
+
+    private final Database database;
+    private final Workload workload;
+    private final int[] mix = new int[OPERATIONS.length];
+    private int workers;
+    private double rate;
+    private long duration;
+    private long warmup;
+    private final Histogram[] response = new Histogram[OPERATIONS.length];
+    private final Histogram[] service = new Histogram[OPERATIONS.length];
+    private final AtomicLong[] errors = new AtomicLong[OPERATIONS.length];
+    private final AtomicLong sequence = new AtomicLong();
+    private final List<long[]> rows = new ArrayList<>();
+    private volatile String lastError;
+
+    /**
+     * Crea el generador con la configuración de la base de datos:
+     * <b>load.workers</b>, <b>load.rate</b>, <b>load.duration</b>,
+     * <b>load.warmup</b> y <b>load.mix</b>.
+     * @param database La base de datos.
+     * @param workload Sentencias y valores sintéticos de su menú.
+     * @param config Configuración de la base de datos.
+     */
+    public LoadGenerator(Database database, Workload workload, Properties config){
+        this.database = database;
+        this.workload = workload;
+        for (int i = 0; i < OPERATIONS.length; i++){
+            this.response[i] = new Histogram();
+            this.service[i] = new Histogram();
+            this.errors[i] = new AtomicLong();
+        }
+        this.setWorkers(Configuration.getInt(config, "load.workers", 8));
+        this.setRate(Configuration.getInt(config, "load.rate", 0));
+        this.setDuration(Configuration.getInt(config, "load.duration", 30));
+        this.setWarmup(Configuration.getInt(config, "load.warmup", 5));
+        this.setMix(config.getProperty("load.mix",
+                "insert:20,update:20,search:50,delete:10"));
+    }
+
+    /**
+     * Genera carga contra una base de datos con los argumentos de la línea
+     * de comandos, que sustituyen a los valores de su configuración.
+     * <pre>
+     * java -jar dbaccess.jar load --db SQLite --workers 16 --duration 60
+     * java -jar dbaccess.jar load --db SQLite --rate 500 --mix search:90,update:10
+     * </pre>
+     * @param args <b>--db</b>, <b>--workers</b>, <b>--rate</b>,
+     * <b>--duration</b>, <b>--warmup</b> y <b>--mix</b>.
+     * @return 0 si no ha fallado ninguna operación, 1 si alguna ha fallado, 2
+     * si los argumentos no son válidos.
+     */
+    public static int run(String[] args){
+        Properties options = new Properties();
+        for (int i = 0; i + 1 < args.length; i += 2){
+            if (!args[i].startsWith("--")){
+                System.err.println("Argumento no válido: " + args[i]);
+                return 2;
+            }
+            options.setProperty(args[i].substring(2), args[i + 1]);
+        }
+        String type = Runner.type(options.getProperty("db", ""));
+        Properties config = type != null ? Configuration.getConfig("config/"
+                + type + ".cfg") : null;
+        if (args.length % 2 != 0 || config == null){
+            System.err.println("Uso: load --db tipo [--workers n] [--rate op/s] "
+                    + "[--duration s] [--warmup s] [--mix insert:20,update:20,"
+                    + "search:50,delete:10]");
+            return 2;
+        }
+        Database database = Database.create(type, config);
+        try {
+            LoadGenerator load = new LoadGenerator(database, Runner.menu(type,
+                    database).getWorkload(), config);
+            if (options.containsKey("workers"))
+                load.setWorkers(Integer.parseInt(options.getProperty("workers")));
+            if (options.containsKey("rate"))
+                load.setRate(Double.parseDouble(options.getProperty("rate")));
+            if (options.containsKey("duration"))
+                load.setDuration(Integer.parseInt(options.getProperty("duration")));
+            if (options.containsKey("warmup"))
+                load.setWarmup(Integer.parseInt(options.getProperty("warmup")));
+            if (options.containsKey("mix"))
+                load.setMix(options.getProperty("mix"));
+            load.run();
+            for (AtomicLong count : load.errors)
+                if (count.get() > 0)
+                    return 1;
+            return 0;
+        } catch (IllegalArgumentException e){
+            System.err.println(e.getMessage());
+            return 2;
+        } catch (SQLException e){
+            System.err.println("No se ha podido preparar la carga: "
+                    + e.getMessage());
+            return 1;
+        } finally {
+            database.close();
+        }
+    }
+
+    /**
+     * @param workers Hilos que realizan operaciones a la vez.
+     */
+    public void setWorkers(int workers){
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * @param rate Operaciones por segundo, 0 para que cada hilo lance la
+     * siguiente en cuanto termina la anterior.
+     */
+    public void setRate(double rate){
+        this.rate = Math.max(0, rate);
+    }
+
+    /**
+     * @param seconds Segundos de medición, sin contar el calentamiento.
+     */
+    public void setDuration(int seconds){
+        this.duration = TimeUnit.SECONDS.toNanos(Math.max(1, seconds));
+    }
+
+    /**
+     * @param seconds Segundos iniciales cuyas operaciones no se cuentan.
+     */
+    public void setWarmup(int seconds){
+        this.warmup = TimeUnit.SECONDS.toNanos(Math.max(0, seconds));
+    }
+
+    /**
+     * @param mix Peso de cada operación, por ejemplo
+     * <em>insert:20,update:20,search:50,delete:10</em>. Las que no aparecen
+     * no se realizan.
+     * @throws IllegalArgumentException Si la mezcla no es válida.
+     */
+    public void setMix(String mix){
+        int[] weights = new int[OPERATIONS.length];
+        for (String part : mix.split(",")){
+            String[] pair = part.split(":");
+            int index = pair.length == 2 ? indexOf(pair[0].trim()) : -1;
+            if (index < 0)
+                throw new IllegalArgumentException("Mezcla no válida: " + part);
+            try {
+                weights[index] = Math.max(0, Integer.parseInt(pair[1].trim()));
+            } catch (NumberFormatException e){
+                throw new IllegalArgumentException("Mezcla no válida: " + part);
+            }
+        }
+        int total = 0;
+        for (int weight : weights)
+            total += weight;
+        if (total == 0)
+            throw new IllegalArgumentException("La mezcla no tiene operaciones");
+        System.arraycopy(weights, 0, this.mix, 0, weights.length);
+    }
+
+    /**
+     * Genera la carga durante el calentamiento y la duración indicados,
+     * elimina las filas insertadas y muestra el informe.
+     * @throws SQLException Si no se ha podido preparar la carga.
+     */
+    public void run() throws SQLException{
+        this.workload.prepare(this.database);
+        long begin = System.nanoTime();
+        long measure = begin + this.warmup;
+        long end = measure + this.duration;
+        long period = this.rate > 0 ? (long)(1e9 / this.rate) : 0;
+        AtomicLong tickets = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < this.workers; i++){
+            Thread thread = new Thread(() -> {
+                while (true){
+                    long intended;
+                    if (period > 0){
+                        intended = begin + tickets.getAndIncrement() * period;
+                        if (intended >= end)
+                            return;
+                        long wait;
+                        while ((wait = intended - System.nanoTime()) > 0)
+                            LockSupport.parkNanos(wait);
+                    } else if ((intended = System.nanoTime()) >= end)
+                        return;
+                    this.execute(intended, measure);
+                }
+            }, "load-" + (i + 1));
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+            try {
+                thread.join();
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                break;
+            }
+        this.cleanUp();
+        this.report();
+    }
+
+    /**
+     * Realiza una operación de la mezcla y registra sus tiempos si ha
+     * empezado después del calentamiento.
+     * @param intended Hora prevista de inicio.
+     * @param measure Hora a partir de la que se cuentan las operaciones.
+     */
+    private void execute(long intended, long measure){
+        int operation = this.pick();
+        long[] row = null;
+        if (operation != INSERT){
+            row = this.row(operation == DELETE);
+            if (row == null)
+                operation = INSERT; // Todavía no hay filas del generador.
+        }
+        long start = System.nanoTime();
+        boolean failed = false;
+        try {
+            switch (operation){
+                case INSERT:
+                    long number = this.sequence.incrementAndGet();
+                    long id = this.database.insert(this.workload.insert,
+                            this.workload.insertValues(number));
+                    synchronized (this.rows){
+                        this.rows.add(new long[]{number, id});
+                    }
+                    break;
+                case UPDATE:
+                    this.database.update(this.workload.update,
+                            this.workload.updateValues(row[0], row[1]));
+                    break;
+                case SEARCH:
+                    this.database.list(this.workload.search,
+                            this.workload.searchValues(row[0], row[1]),
+                            this.workload.mapper);
+                    break;
+                default:
+                    this.database.update(this.workload.delete,
+                            this.workload.deleteValues(row[0], row[1]));
+            }
+        } catch (SQLException | RuntimeException e){
+            failed = true;
+            this.lastError = OPERATIONS[operation] + ": " + e.getMessage();
+            if (operation == DELETE)
+                synchronized (this.rows){
+                    this.rows.add(row); // Se vuelve a intentar al terminar.
+                }
+        }
+        long done = System.nanoTime();
+        if (intended < measure)
+            return;
+        if (failed)
+            this.errors[operation].incrementAndGet();
+        this.response[operation].record(done - intended);
+        this.service[operation].record(done - start);
+    }
+
+    /**
+     * @return Operación elegida al azar según los pesos de la mezcla.
+     */
+    private int pick(){
+        int total = 0;
+        for (int weight : this.mix)
+            total += weight;
+        int value = ThreadLocalRandom.current().nextInt(total);
+        for (int i = 0; i < this.mix.length; i++){
+            value -= this.mix[i];
+            if (value < 0)
+                return i;
+        }
+        return INSERT;
+    }
+
+    /**
+     * Elige al azar una de las filas insertadas por el generador.
+     * @param remove True para quitarla de la lista (se va a eliminar).
+     * @return Número y clave generada de la fila, null si no hay ninguna.
+     */
+    private long[] row(boolean remove){
+        synchronized (this.rows){
+            int size = this.rows.size();
+            if (size == 0)
+                return null;
+            int index = ThreadLocalRandom.current().nextInt(size);
+            long[] row = this.rows.get(index);
+            if (remove){
+                this.rows.set(index, this.rows.get(size - 1));
+                this.rows.remove(size - 1);
+            }
+            return row;
+        }
+    }
+
+    /**
+     * Elimina las filas insertadas que quedan, sin contarlas en el informe.
+     */
+    private void cleanUp(){
+        int left = 0;
+        synchronized (this.rows){
+            for (long[] row : this.rows)
+                try {
+                    this.database.update(this.workload.delete,
+                            this.workload.deleteValues(row[0], row[1]));
+                } catch (SQLException e){
+                    left++;
+                }
+            this.rows.clear();
+        }
+        if (left > 0)
+            System.out.println("No se han podido eliminar " + left
+                    + " filas insertadas por el generador.");
+    }
+
+    /**
+     * Muestra el rendimiento y los percentiles de cada operación.
+     */
+    private void report(){
+        double seconds = this.duration / 1e9;
+        System.out.println(String.format("%d hilos, %s, %.0f s medidos",
+                this.workers, this.rate > 0 ? String.format("%.0f op/s previstas",
+                this.rate) : "sin límite de ritmo", seconds));
+        if (this.rate == 0)
+            System.out.println("Sin ritmo fijo no hay omisión coordinada que "
+                    + "corregir: los tiempos son de servicio.");
+        this.table(this.rate > 0 ? "Tiempo de respuesta desde la hora prevista"
+                + " (ms)" : "Tiempo de respuesta (ms)", this.response, seconds);
+        if (this.rate > 0){
+            System.out.println();
+            this.table("Tiempo de servicio (ms)", this.service, seconds);
+        }
+        if (this.lastError != null)
+            System.out.println("Último error: " + this.lastError);
+        ConnectionPool pool = this.database.getPool();
+        if (pool != null)
+            System.out.println("Conexiones del pool: " + pool.getTotal()
+                    + ", libres: " + pool.getIdle());
+    }
+
+    private void table(String title, Histogram[] times, double seconds){
+        String[] labels = {"Operación", "Hechas", "Errores", "op/s", "p50",
+            "p95", "p99", "p99.9", "Máx"};
+        List<String[]> rows = new ArrayList<>();
+        long count = 0, failed = 0;
+        for (int i = 0; i < OPERATIONS.length; i++){
+            count += times[i].getCount();
+            failed += this.errors[i].get();
+            if (times[i].getCount() > 0)
+                rows.add(this.line(OPERATIONS[i], times[i], this.errors[i].get(),
+                        seconds));
+        }
+        Histogram all = new Histogram();
+        for (Histogram histogram : times)
+            all.merge(histogram);
+        rows.add(this.line("Total", all, failed, seconds));
+        int[] widths = new QueryResult(labels, rows).getWidths();
+        TableRenderer renderer = new TableRenderer(widths, false);
+        renderer.title(title);
+        renderer.head(labels);
+        for (String[] row : rows)
+            renderer.row(row);
+        renderer.end();
+        if (count == 0)
+            System.out.println("No se ha realizado ninguna operación.");
+    }
+
+    private String[] line(String name, Histogram times, long failed,
+            double seconds){
+        String[] line = new String[9];
+        line[0] = name;
+        line[1] = String.valueOf(times.getCount());
+        line[2] = String.valueOf(failed);
+        line[3] = String.format("%.1f", times.getCount() / seconds);
+        for (int i = 0; i < PERCENTILES.length; i++)
+            line[4 + i] = millis(times.getPercentile(PERCENTILES[i]));
+        line[8] = millis(times.getMax());
+        return line;
+    }
+
+    private static String millis(long nanos){
+        return String.format("%.2f", nanos / 1e6);
+    }
+
+    private static int indexOf(String operation){
+        for (int i = 0; i < OPERATIONS.length; i++)
+            if (OPERATIONS[i].equalsIgnoreCase(operation))
+                return i;
+        return -1;
+    }
+
+    /**
+     * Sentencias de inserción, actualización, búsqueda y eliminación de un
+     * menú y los valores sintéticos de cada una. Cada fila insertada tiene un
+     * número único en la ejecución y, si la tabla genera la clave, la clave
+     * generada (-1 si no).
+     */
+    public abstract static class Workload {
+
+        private final String insert;
+        private final String update;
+        private final String search;
+        private final String delete;
+        private final RowMapper<?> mapper;
+        /**
+         * Texto único de esta ejecución, para distinguir las filas del
+         * generador de las demás y de las de otras ejecuciones.
+         */
+        protected final String tag = Long.toString(System.currentTimeMillis(), 36);
+
+        /**
+         * @param insert Sentencia INSERT.
+         * @param update Sentencia UPDATE.
+         * @param search Sentencia SELECT de búsqueda.
+         * @param delete Sentencia DELETE.
+         * @param mapper Lee las filas de la búsqueda, como en el menú.
+         */
+        protected Workload(String insert, String update, String search,
+                String delete, RowMapper<?> mapper){
+            this.insert = insert;
+            this.update = update;
+            this.search = search;
+            this.delete = delete;
+            this.mapper = mapper;
+        }
+
+        /**
+         * Se llama una vez antes de empezar, fuera de las mediciones, por
+         * ejemplo para buscar un rango de claves libre.
+         * @param database La base de datos.
+         * @throws SQLException
+         */
+        protected void prepare(Database database) throws SQLException{
+        }
+
+        protected abstract Param[] insertValues(long row);
+
+        protected abstract Param[] updateValues(long row, long id);
+
+        protected abstract Param[] searchValues(long row, long id);
+
+        protected abstract Param[] deleteValues(long row, long id);
+    }
+}
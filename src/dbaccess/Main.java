@@ -1,29 +1,49 @@
 package dbaccess;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.InputMismatchException;
+import java.util.List;
 import utils.Console;
 
 /**
- * Clase principal del proyecto, donse se inicia el mismo en el mtodo main.
+ * Clase principal del proyecto, donse se inicia el mismo en el método main.
  * @author zelda
  */
 public class Main {
+    
+    /**
+     * Ancho máximo de la columna con el texto SQL en las estadísticas.
+     */
+    private static final int SQL_WIDTH = 50;
 
     /**
-     * Men principal del ejercicio.
+     * Menú principal del ejercicio. Con argumentos se realizan las operaciones
+     * indicadas sin mostrar los menús (ver Runner) o, si el primero es 
+     * <em>load</em>, se genera carga contra una base de datos (ver 
+     * LoadGenerator).
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("load"))
+            System.exit(LoadGenerator.run(Arrays.copyOfRange(args, 1, 
+                    args.length)));
+        if (args.length > 0)
+            System.exit(Runner.run(args));
         byte option = 0;
         String[] mainMenu = { 
-            "MySQL: Lista de pelculas",
-            "SQL Server: Empresa informtica",
-            "PostgreSQL: Gestin de clientes",
-            "SQLite: Gestin de empleados"
+            "MySQL: Lista de películas",
+            "SQL Server: Empresa informática",
+            "PostgreSQL: Gestión de clientes",
+            "SQLite: Gestión de empleados",
+            "Todas las bases de datos a la vez",
+            "Estadísticas de las consultas"
         };
+        Warmup.start("config"); // Solo las que tienen warmup.enabled.
+        QueryCanceller.install(); // Ctrl+C cancela la consulta en curso.
         do {
             Console.showMenu("CONEXIONES A BASES DE DATOS", mainMenu);
             try {
-                option = (byte)Console.readNumber(Console.eof + "Escoge una opcin: ", "byte");
+                option = (byte)Console.readNumber(Console.eof + "Escoge una opción: ", "byte");
                 System.out.println();
                 switch(option) {
                     case 1:
@@ -38,12 +58,123 @@ public class Main {
                     case 4:
                         new SQLite();
                         break;
+                    case 5:
+                        fanOut();
+                        break;
+                    case 6:
+                        showStatistics();
+                        Console.toContinue();
+                        break;
                 }
             } catch (InputMismatchException e) {
-                System.out.println(Console.eof + "Opcin no vlida, intente lo de nuevo..." + Console.eof);
+                System.out.println(Console.eof + "Opción no válida, intente lo de nuevo..." + Console.eof);
                 option = 1;
             }
         } while (Console.inRange((int)option, 1, mainMenu.length));
-        System.out.println("Gracias por utilizar nuestra aplicacin Que tengas un buen da! ");
+        Warmup.close();
+        System.out.println("Gracias por utilizar nuestra aplicación ¡Que tengas un buen día! ");
     } 
+    
+    /**
+     * Menú para comprobar el estado o realizar una misma consulta en todas 
+     * las bases de datos configuradas a la vez.
+     */
+    private static void fanOut(){
+        FanOut all = new FanOut("config");
+        byte option = 0;
+        String[] menu = { 
+            "Comprobar el estado de todas",
+            "Realizar una consulta en todas"
+        };
+        do {
+            Console.showMenu("TODAS LAS BASES DE DATOS", menu);
+            System.out.println("Bases de datos: " + String.join(", ", all.getSources()));
+            try {
+                option = (byte)Console.readNumber(Console.eof + "Escoge una opción: ", "byte");
+                System.out.println();
+                switch(option) {
+                    case 1:
+                        all.probe();
+                        Console.toContinue();
+                        break;
+                    case 2:
+                        String query = Console.readLine("Consulta (SELECT): ");
+                        System.out.println();
+                        all.select(query, new Object[0], "Todas las bases de datos");
+                        Console.toContinue();
+                        break;
+                }
+            } catch (InputMismatchException e) {
+                System.out.println(Console.eof + "Opción no válida, intente lo de nuevo..." + Console.eof);
+                option = 1;
+            }
+        } while (Console.inRange((int)option, 1, menu.length));
+        all.close();
+    }
+    
+    /**
+     * Muestra las métricas de las consultas realizadas desde que se inició la
+     * aplicación, de la que más tiempo ha consumido a la que menos. También
+     * se pueden consultar por JMX (dbaccess:type=QueryMetrics).
+     */
+    private static void showStatistics(){
+        List<StatementStatistics> statements = QueryMetrics.getDefault()
+                .getStatements();
+        if (statements.isEmpty()){
+            System.out.println("Todavía no se ha realizado ninguna consulta." 
+                    + Console.eof);
+            return;
+        }
+        List<String[]> times = new ArrayList<>();
+        List<String[]> phases = new ArrayList<>();
+        for (StatementStatistics stats : statements){
+            times.add(new String[]{
+                stats.getDatabase(), stats.getSql(), 
+                String.valueOf(stats.getExecutions()), 
+                String.valueOf(stats.getCacheHits()), 
+                String.valueOf(stats.getErrors()), millis(stats.getMeanMillis()), 
+                millis(stats.getP50Millis()), millis(stats.getP95Millis()), 
+                millis(stats.getP99Millis()), millis(stats.getMaxMillis())
+            });
+            phases.add(new String[]{
+                stats.getDatabase(), stats.getSql(), 
+                millis(stats.getAcquireMillis()), millis(stats.getPrepareMillis()), 
+                millis(stats.getExecuteMillis()), millis(stats.getFetchMillis()), 
+                millis(stats.getRenderMillis()), String.valueOf(stats.getRows()), 
+                String.valueOf(stats.getRowsAffected()), 
+                String.valueOf(stats.getBytes())
+            });
+        }
+        printStatistics("Tiempo por consulta (ms)", new String[]{"BD", "Consulta", 
+            "Veces", "Caché", "Errores", "Media", "p50", "p95", "p99", "Máx"}, times);
+        System.out.println();
+        printStatistics("Tiempo medio por fase (ms)", new String[]{"BD", 
+            "Consulta", "Conexión", "Preparar", "Ejecutar", "Leer", "Dibujar", 
+            "Filas", "Afectadas", "Caracteres"}, phases);
+        for (StatementStatistics stats : statements)
+            if (stats.getLastError() != null)
+                System.out.println(Console.eof + "Último error de [" 
+                        + stats.getDatabase() + "] " + stats.getSql() + ": " 
+                        + stats.getLastError());
+        System.out.println();
+    }
+    
+    /**
+     * Dibuja una tabla de estadísticas, truncando el texto SQL.
+     */
+    private static void printStatistics(String title, String[] labels, 
+            List<String[]> rows){
+        int[] widths = new QueryResult(labels, rows).getWidths();
+        widths[1] = Math.min(widths[1], SQL_WIDTH);
+        TableRenderer renderer = new TableRenderer(widths, false);
+        renderer.title(title);
+        renderer.head(labels);
+        for (String[] row : rows)
+            renderer.row(row);
+        renderer.end();
+    }
+    
+    private static String millis(double value){
+        return String.format("%.2f", value);
+    }
 }
\ No newline at end of file
@@ -1,29 +1,59 @@
 package dbaccess;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.InputMismatchException;
 import utils.Console;
 import utils.Configuration;
 import java.util.Properties;
 
 /**
- * Clase que trabaja con una base de datos MySQL que contiene informacin relativa 
- * a pelculas.
+ * Clase que trabaja con una base de datos MySQL que contiene información relativa 
+ * a películas.
  * @author zelda
  */
 public class MySQL implements Query {
     
+    private static final String INSERT = "INSERT INTO film(title, description, "
+            + "release_year, language_id, length) VALUES(?,?,?,?,?);";
+    private static final String UPDATE = "UPDATE film SET description = ? "
+            + "WHERE title = ?;";
+    private static final String DELETE = "DELETE FROM film WHERE title = ?;";
+    private static final String SEARCH = "SELECT film_id, title, description "
+            + "FROM film_text Where title = ?;";
+    private static final String EXPORT = "SELECT FID, title, description, "
+            + "category, price, length, rating FROM film_list;";
+    /**
+     * Sentencias del menú que se pueden preparar por adelantado (ver Warmup).
+     */
+    static final String[] STATEMENTS = {INSERT, UPDATE, DELETE, SEARCH, EXPORT};
+
     Database mysql;
     
     public MySQL(){
         this.load();
         this.menu();
+        Warmup.release(this.mysql);
+    }
+    
+    /**
+     * Trabaja con una base de datos ya abierta sin mostrar el menú, para 
+     * realizar sus opciones con run() (ver Runner).
+     * @param database La base de datos.
+     */
+    MySQL(Database database){
+        this.mysql = database;
     }
     
     /**
-     * Carga los datos de configuracin de la base de datos desde un archivo externo.
+     * Carga los datos de configuración de la base de datos desde un archivo externo,
+     * o usa la base de datos ya calentada al iniciar la aplicación (ver Warmup).
      */
     public void load(){
-        Properties config = Configuration.loadConfig("config/MySQL.cfg");
+        this.mysql = Warmup.get("MySQL");
+        if (this.mysql != null)
+            return;
+        Properties config = Configuration.getConfig("config/MySQL.cfg");
         this.mysql = new Database( 
                config.getProperty("url"),
                config.getProperty("port"),
@@ -32,129 +62,152 @@ public class MySQL implements Query {
                config.getProperty("password"),
                "MySQL"
         );
+        this.mysql.configure(config);
     }
     
     /**
      * Muestra el menu con los diferentes acciones que podemos hacer sobre la 
-     * lista de pelculas.
+     * lista de películas.
      */
     public void menu(){
         byte option = 0;
-        int[] sizes;
-        Object[] values;
         String[] mainMenu = { 
-            "Aadir una pelcula",
-            "Modificar una pelcula",
-            "Eliminar una pelcula ",
-            "Buscar una pelcula",
-            "Mostrar ltimas pelculas",
-            "Mostrar vista resumen de pelculas"
+            "Añadir una película",
+            "Modificar una película",
+            "Eliminar una película ",
+            "Buscar una película",
+            "Mostrar últimas películas",
+            "Mostrar vista resumen de películas",
+            "Exportar la vista resumen a un archivo",
+            "Importar películas desde un archivo CSV"
         };
         do {
-            Console.showMenu("MySQL: Lista de pelculas", mainMenu);
+            Console.showMenu("MySQL: Lista de películas", mainMenu);
             try {
-                option = (byte)Console.readNumber(Console.eof + "Escoge una opcin: ", "byte");
+                option = (byte)Console.readNumber(Console.eof + "Escoge una opción: ", "byte");
                 System.out.println();
-                switch(option) {
-                    case 1:
-                        this.mysql.query("INSERT INTO film(title, description, "
-                                + "release_year, language_id, length) VALUES(?,?"
-                                + ",?,?,?);", this.entryValues());
-                        Console.toContinue();
-                        break;
-                    case 2:
-                        this.mysql.query("UPDATE film SET description = ? WHERE"
-                                + " title = ?;", this.updateValues());
-                        Console.toContinue();
-                        break;
-                    case 3:
-                        this.mysql.query("DELETE FROM film WHERE title = ?;", 
-                                this.deleteValues());
-                        Console.toContinue();
-                        break;
-                    case 4:
-                        values = this.searchValues();
-                        sizes = this.mysql.loadSizeByQuery("SELECT "
-                                + "MAX(LENGTH(film_id)) as film_id, "
-                                + "MAX(LENGTH(title)) as title, "
-                                + "MAX(LENGTH(description)) as description, "
-                                + "COUNT(film_id) "
-                                + "FROM film_text Where title = ?;", values);
-                        this.mysql.select("SELECT "
-                                + "film_id, "
-                                + "title, "
-                                + "description "
-                                + "FROM film_text Where title = ?;", "film_text",
-                                sizes, values);
-                        Console.toContinue();
-                        break;
-                    case 5:
-                        sizes = this.mysql.loadSizeByQuery("SELECT "
-                                + "MAX(LENGTH(film_id)) as film_id, "
-                                + "MAX(LENGTH(title)) as title, "
-                                + "MAX(LENGTH(description)) as description, "
-                                + "COUNT(film_id) FROM (SELECT "
-                                + "film_id, "
-                                + "title, "
-                                + "description FROM film_text "
-                                + "ORDER BY film_id DESC LIMIT 10) as TD");
-                        this.mysql.select("SELECT "
-                                + "film_id, "
-                                + "title, "
-                                + "description "
-                                + "FROM film_text "
-                                + "ORDER BY film_id DESC LIMIT 10;", "film_text", 
-                                sizes);
-                        Console.toContinue();
-                        break;
-                    case 6:
-                        sizes = this.mysql.loadSizeByQuery("SELECT "
-                                + "MAX(LENGTH(FID)) as FID, "
-                                + "MAX(LENGTH(title)) as title, "
-                                + "MAX(LENGTH(description)) as description, "
-                                + "MAX(LENGTH(category)) as category, "
-                                + "MAX(LENGTH(price)) as price, "
-                                + "MAX(LENGTH(length)) as length, "
-                                + "MAX(LENGTH(rating)) as rating, "
-                                + "COUNT(FID) FROM film_list");
-                        this.mysql.select("SELECT "
-                                + "FID, "
-                                + "title, "
-                                + "description, "
-                                + "category, "
-                                + "price, "
-                                + "length, "
-                                + "rating FROM film_list;", "film_list", sizes);
-                        Console.toContinue();
-                        break;
-                }
+                this.run(option);
             } catch (InputMismatchException e) {
-                System.out.println(Console.eof + "Opcin no vlida, intente lo de nuevo..." + Console.eof);
+                System.out.println(Console.eof + "Opción no válida, intente lo de nuevo..." + Console.eof);
                 option = 1;
             }
         } while (Console.inRange((int)option, 1, mainMenu.length));
     }
     
     /**
-     * Solicita al usuario valores de una pelcula para aadirla a la base de datos.
+     * Realiza una de las opciones del menú.
+     * @param option Número de la opción.
+     */
+    @Override
+    public void run(int option){
+        switch(option) {
+            case 1:
+                this.mysql.query(INSERT, this.entryValues());
+                Console.toContinue();
+                break;
+            case 2:
+                this.mysql.query(UPDATE, this.updateValues());
+                Console.toContinue();
+                break;
+            case 3:
+                this.mysql.query(DELETE, this.deleteValues());
+                Console.toContinue();
+                break;
+            case 4:
+                this.mysql.select(SEARCH, "film_text", this.searchValues(), 
+                        Film.MAPPER, Film.LABELS, Film::cells);
+                Console.toContinue();
+                break;
+            case 5:
+                this.mysql.browse("SELECT "
+                        + "film_id, "
+                        + "title, "
+                        + "description "
+                        + "FROM film_text", "film_id", false, "film_text");
+                Console.toContinue();
+                break;
+            case 6:
+                this.mysql.browse("SELECT "
+                        + "FID, "
+                        + "title, "
+                        + "description, "
+                        + "category, "
+                        + "price, "
+                        + "length, "
+                        + "rating FROM film_list", "FID", true, "film_list");
+                Console.toContinue();
+                break;
+            case 7:
+                this.mysql.export(EXPORT, new Param[0], this.exportFile());
+                Console.toContinue();
+                break;
+            case 8:
+                this.mysql.load("film", this.importFile());
+                Console.toContinue();
+                break;
+        }
+    }
+    
+    @Override
+    public String[] getOperations(){
+        return new String[]{"insert", "update", "delete", "search", "list", "summary",
+            "export", "import"};
+    }
+    
+    @Override
+    public LoadGenerator.Workload getWorkload(){
+        return new LoadGenerator.Workload(INSERT, UPDATE, SEARCH, DELETE, 
+                Film.MAPPER){
+            @Override
+            protected Param[] insertValues(long row){
+                return new Param[]{Param.of(this.title(row)), Param.of(
+                        "Película de prueba del generador de carga"), 
+                    Param.of(2006), Param.of(1), Param.of(60 + (int)(row % 120))};
+            }
+            
+            @Override
+            protected Param[] updateValues(long row, long id){
+                return new Param[]{Param.of("Descripción actualizada " + row), 
+                    Param.of(this.title(row))};
+            }
+            
+            @Override
+            protected Param[] searchValues(long row, long id){
+                return new Param[]{Param.of(this.title(row))};
+            }
+            
+            @Override
+            protected Param[] deleteValues(long row, long id){
+                return new Param[]{Param.of(this.title(row))};
+            }
+            
+            private String title(long row){
+                return "LOAD " + this.tag.toUpperCase() + " " + row;
+            }
+        };
+    }
+    
+    /**
+     * Solicita al usuario valores de una película para añadirla a la base de datos.
      * @return Array con los valores introducidos por el usuario. Devuelve NULL 
-     * si el usuario no confirma la eliminacin de la pelcula.
+     * si el usuario no confirma la eliminación de la película.
      */
     @Override
-    public Object[] entryValues(){
-        Object[] values = new Object[5];
-        values[0] = Console.validString("Escribe el ttulo de la pelcula: ", 128);
-        values[1] = Console.readLine("Escribe una descipcin de la pelcula: ")
-                .trim();
-        values[2] = Console.validInt("Escribe el ao de estreno: ");
-        values[3] = getLanguage();
-        values[4] = Console.validInt("Por ltimo, escribe la duracin del metraje"
-                + " (en minutos): ");
+    public Param[] entryValues(){
+        Param[] values = new Param[5];
+        values[0] = Param.of(Console.validString("Escribe el título de la "
+                + "película: ", 128));
+        values[1] = Param.of(Console.readLine("Escribe una descipción de la "
+                + "película: ").trim());
+        values[2] = Param.of(Console.validInt("Escribe el año de estreno: "));
+        values[3] = Param.of(getLanguage());
+        values[4] = Param.of(Console.validInt("Por último, escribe la duración "
+                + "del metraje (en minutos): "));
         return values;
     }
     
     /**
-     * Solicita al usuario un idioma y valida que est entre los disponibles.
+     * Solicita al usuario un idioma y valida que esté entre los disponibles.
      * @return Valor entero asociado al idioma introducido.
      */
     public static int getLanguage(){
@@ -164,8 +217,8 @@ public class MySQL implements Query {
             if (value != 0)
                 return value;
             else
-                System.out.println("Idioma no soportado, escoge otro (ingls, "
-                        + "italiano, chino, japones, francs o alemn).");
+                System.out.println("Idioma no soportado, escoge otro (inglés, "
+                        + "italiano, chino, japones, francés o alemán).");
         } while(true);
     }
     
@@ -177,22 +230,22 @@ public class MySQL implements Query {
     public static int getLanguageID(String language){
         switch(language.toLowerCase().trim()){
             case "ingles":
-            case "ingls":
+            case "inglés":
                 return 1;
             case "italiano":
                 return 2;
             case "japones":
-            case "japons":
+            case "japonés":
                 return 3;
             case "chino":
             case "mandarin":
-            case "mandarn":
+            case "mandarín":
                 return 4;
             case "frances":
-            case "francs":
+            case "francés":
                 return 5;
             case "aleman":
-            case "alemn":
+            case "alemán":
                 return 6;
             default:
                 return 0;
@@ -200,43 +253,75 @@ public class MySQL implements Query {
     }
     
     /**
-     * Solicita al usuario el titulo de una pelcula para realizar una bsqueda.
-     * @return El ttulo facilitado por el usuario.
+     * Solicita al usuario el titulo de una película para realizar una búsqueda.
+     * @return El título facilitado por el usuario.
      */
     @Override
-    public Object[] searchValues(){
-        Object[] values = new Object[1];
-        values[0] = Console.readLine("Escribe el ttulo de la pelcula que desea"
-                                    + " buscar: ").trim();
+    public Param[] searchValues(){
+        Param[] values = new Param[1];
+        values[0] = Param.of(Console.readLine("Escribe el título de la película"
+                                    + " que desea buscar: ").trim());
         return values;
     }
     
     /**
-     * Solicita al usuario valores para la modificacin de una pelcula.
+     * Solicita al usuario valores para la modificación de una película.
      * @return Array con los valores introducidos por el usuario.
      */
     @Override
-    public Object[] updateValues(){
-        Object[] values = new Object[2];
-        values[1] = Console.readLine("Escribe el ttulo de la pelcula a "
-                                    + "modificar: ").trim();
-        values[0] = Console.readLine("Escribe una nueva descipcin para la "
-                                    + "pelcula: ").trim();
+    public Param[] updateValues(){
+        Param[] values = new Param[2];
+        values[1] = Param.of(Console.readLine("Escribe el título de la película"
+                                    + " a modificar: ").trim());
+        values[0] = Param.of(Console.readLine("Escribe una nueva descipción "
+                                    + "para la película: ").trim());
         return values;
     }
     
     /**
-     * Solicita al usuario el titulo de la pelcula  a eliminar.
+     * Solicita al usuario el titulo de la película  a eliminar.
      * @return Array con los valores introducidos por el usuario.
      */
     @Override
-    public Object[] deleteValues(){
-        Object[] values = new Object[1];
-        values[0] = Console.readLine("Escribe el ttulo de la pelcula a "
-                                    + "eliminar: ").trim();
-        if(Console.makeSure("Los datos almacenados se perdern Est seguro?"))
+    public Param[] deleteValues(){
+        Param[] values = new Param[1];
+        values[0] = Param.of(Console.readLine("Escribe el título de la película"
+                                    + " a eliminar: ").trim());
+        if(Console.makeSure("Los datos almacenados se perderán ¿Está seguro?"))
             return values;
         else
             return null;
     }
+    
+    /**
+     * Película de la búsqueda (film_text).
+     */
+    static final class Film {
+        
+        static final String[] LABELS = {"film_id", "title", "description"};
+        static final RowMapper<Film> MAPPER = Film::read;
+        
+        final int id;
+        final String title;
+        final String description;
+        
+        Film(int id, String title, String description){
+            this.id = id;
+            this.title = title;
+            this.description = description;
+        }
+        
+        /**
+         * Lee las columnas de SEARCH por su posición.
+         */
+        static Film read(ResultSet result) throws SQLException{
+            return new Film(result.getInt(1), result.getString(2), 
+                    result.getString(3));
+        }
+        
+        String[] cells(){
+            return new String[]{Integer.toString(this.id), this.title, 
+                this.description};
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,142 @@
+package dbaccess;
+
+import com.mysql.cj.conf.PropertyKey;
+import com.mysql.cj.jdbc.JdbcConnection;
+import com.mysql.cj.jdbc.JdbcStatement;
+import com.mysql.cj.jdbc.MysqlDataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import utils.Configuration;
+
+/**
+ * Dialecto de MySQL (Connector/J).
+ * https://dev.mysql.com/doc/connector-j/8.0/en/connector-j-reference-configuration-properties.html
+ * @author zelda
+ */
+public class MySQLDialect implements Dialect {
+    
+    @Override
+    public String getName(){
+        return "MySQL";
+    }
+    
+    /**
+     * <ul>
+     *     <li>useServerPrepStmts, cachePrepStmts - Sentencias preparadas en el
+     *     servidor y guardadas en el driver.</li>
+     *     <li>useLocalSessionState - Evita consultar al servidor el estado de
+     *     autocommit o del nivel de aislamiento.</li>
+     *     <li>rewriteBatchedStatements - Reescribe los lotes de INSERT como un
+     *     único INSERT de varias filas.</li>
+     *     <li>useCursorFetch - Cursor en el servidor para leer por bloques.</li>
+     *     <li>allowLoadLocalInfile=false - Con LOAD DATA LOCAL el servidor 
+     *     puede pedir al cliente cualquier archivo, así que las conexiones del
+     *     pool no lo permiten (ver getBulkProperties()).</li>
+     * </ul>
+     */
+    @Override
+    public Properties getDefaults(Properties config){
+        Properties driver = new Properties();
+        driver.setProperty("useServerPrepStmts", "true");
+        driver.setProperty("cachePrepStmts", "true");
+        driver.setProperty("prepStmtCacheSize", "250");
+        driver.setProperty("prepStmtCacheSqlLimit", "2048");
+        driver.setProperty("useLocalSessionState", "true");
+        driver.setProperty("cacheServerConfiguration", "true");
+        driver.setProperty("elideSetAutoCommits", "true");
+        driver.setProperty("rewriteBatchedStatements", String.valueOf(
+                Configuration.getBoolean(config, "batch.rewrite", true)));
+        driver.setProperty("useCursorFetch", String.valueOf(
+                Configuration.getBoolean(config, "select.streaming", true)));
+        driver.setProperty("allowLoadLocalInfile", "false");
+        return driver;
+    }
+    
+    /**
+     * allowLoadLocalInfile solo en la conexión de la carga masiva, y solo si
+     * se ha activado expresamente con <b>bulk.localInfile</b>=true.
+     */
+    @Override
+    public Properties getBulkProperties(Properties config){
+        Properties driver = new Properties();
+        if (Configuration.getBoolean(config, "bulk.localInfile", false))
+            driver.setProperty("allowLoadLocalInfile", "true");
+        return driver;
+    }
+    
+    @Override
+    public Connection connect(String server, int port, String db, String login,
+            String password, Properties driver) throws SQLException{
+        MysqlDataSource dsMySQL = new MysqlDataSource();
+        dsMySQL.initializeProperties(driver);
+        dsMySQL.setServerName(server);
+        if (port != 0)
+            dsMySQL.setPortNumber(port);
+        dsMySQL.setDatabaseName(db);
+        dsMySQL.setUser(login);
+        dsMySQL.setPassword(password);
+        return dsMySQL.getConnection();
+    }
+    
+    @Override
+    public String quote(String identifier){
+        StringBuilder quoted = new StringBuilder();
+        for (String part : identifier.split("\\.")){
+            if (quoted.length() > 0)
+                quoted.append('.');
+            quoted.append('`').append(part.trim().replace("`", "``")).append('`');
+        }
+        return quoted.toString();
+    }
+    
+    /**
+     * Con analyze las consultas de selección se explican con EXPLAIN ANALYZE
+     * (MySQL 8.0.18 o posterior), que las ejecuta y da los tiempos reales de
+     * cada paso.
+     * https://dev.mysql.com/doc/refman/8.0/en/explain.html#explain-analyze
+     */
+    @Override
+    public String explain(Connection conn, String query, Object[] values, 
+            boolean analyze) throws SQLException{
+        boolean select = query.trim().regionMatches(true, 0, "SELECT", 0, 6);
+        return Dialect.plan(conn, (analyze && select ? "EXPLAIN ANALYZE " 
+                : "EXPLAIN ") + query, values);
+    }
+    
+    /**
+     * Carga el archivo con LOAD DATA LOCAL INFILE leyendo de un InputStream
+     * en lugar de un archivo, de modo que el driver envía los bytes del CSV
+     * tal cual. Los valores se leen en variables para convertir los vacíos
+     * en nulos (también los vacíos entre comillas, MySQL no los distingue).
+     * Si la conexión no permite LOAD DATA LOCAL (<b>bulk.localInfile</b>) se
+     * insertan por lotes como en el resto de sistemas gestores.
+     * https://dev.mysql.com/doc/refman/8.0/en/load-data.html
+     */
+    @Override
+    public long bulkLoad(Connection conn, String table, CsvFile csv, 
+            int batchSize) throws SQLException, IOException{
+        if (!conn.unwrap(JdbcConnection.class).getPropertySet()
+                .getBooleanProperty(PropertyKey.allowLoadLocalInfile).getValue())
+            return Dialect.super.bulkLoad(conn, table, csv, batchSize);
+        String[] columns = csv.getColumns();
+        StringBuilder sql = new StringBuilder("LOAD DATA LOCAL INFILE 'csv' "
+                + "INTO TABLE ").append(this.quote(table)).append(
+                " CHARACTER SET utf8mb4 FIELDS TERMINATED BY ',' OPTIONALLY "
+                + "ENCLOSED BY '\"' ESCAPED BY '' LINES TERMINATED BY ")
+                .append(csv.isCrlf() ? "'\\r\\n'" : "'\\n'").append(" (");
+        for (int i = 0; i < columns.length; i++)
+            sql.append(i > 0 ? ", @v" : "@v").append(i);
+        sql.append(") SET ");
+        for (int i = 0; i < columns.length; i++)
+            sql.append(i > 0 ? ", " : "").append(this.quote(columns[i]))
+                    .append(" = NULLIF(@v").append(i).append(", '')");
+        try (Statement stmt = conn.createStatement()){
+            stmt.unwrap(JdbcStatement.class).setLocalInfileInputStream(
+                    csv.getInput());
+            return stmt.executeLargeUpdate(sql.toString());
+        }
+    }
+}
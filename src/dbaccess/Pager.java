@@ -0,0 +1,220 @@
+package dbaccess;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+/**
+ * Recorre una tabla o una consulta por páginas usando la clave de la última
+ * fila vista (keyset o "seek") en lugar de OFFSET: la página siguiente es
+ * <code>WHERE clave &gt; ? ORDER BY clave</code> con el límite de filas del
+ * dialecto (LIMIT, o OFFSET 0 ROWS FETCH NEXT en SQL Server). Con un índice
+ * sobre la clave cada página cuesta lo mismo sea la primera o la número mil,
+ * mientras que con OFFSET el servidor tiene que leer y descartar todas las
+ * filas anteriores.
+ * <p>
+ * La clave debe ser una columna única del resultado (el identificador de la
+ * tabla), escrita tal como se usaría en el SQL de la base de datos.
+ * @author zelda
+ */
+public class Pager {
+
+    private final Database database;
+    private final Dialect dialect;
+    private final String source;
+    private final String key;
+    private final boolean ascending;
+    private final int pageSize;
+    private QueryResult page;
+    private int keyColumn = -1;
+    private boolean hasNext;
+    private boolean hasPrevious;
+
+    /**
+     * @param database Base de datos en la que se hacen las consultas.
+     * @param source Nombre de una tabla o vista, o una consulta SELECT.
+     * @param key Columna única por la que se ordenan las filas.
+     * @param ascending True para recorrer de menor a mayor clave.
+     * @param pageSize Filas por página.
+     */
+    Pager(Database database, String source, String key, boolean ascending,
+            int pageSize){
+        this.database = database;
+        this.dialect = database.getDialect();
+        String trimmed = source.trim();
+        if (trimmed.endsWith(";"))
+            trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
+        // Una consulta se usa como tabla derivada, que el optimizador integra.
+        this.source = trimmed.regionMatches(true, 0, "SELECT", 0, 6)
+                ? "(" + trimmed + ") page" : trimmed;
+        this.key = key;
+        this.ascending = ascending;
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    /**
+     * @return La página actual, null si todavía no se ha leído ninguna.
+     */
+    public QueryResult getPage(){
+        return this.page;
+    }
+
+    /**
+     * @return True si hay filas después de la página actual.
+     */
+    public boolean hasNext(){
+        return this.hasNext;
+    }
+
+    /**
+     * @return True si hay filas antes de la página actual.
+     */
+    public boolean hasPrevious(){
+        return this.hasPrevious;
+    }
+
+    /**
+     * Lee la primera página.
+     * @return La página, vacía si no hay filas.
+     * @throws SQLException
+     */
+    public QueryResult first() throws SQLException{
+        return this.seek(null, true);
+    }
+
+    /**
+     * Lee la última página.
+     * @return La página, vacía si no hay filas.
+     * @throws SQLException
+     */
+    public QueryResult last() throws SQLException{
+        return this.seek(null, false);
+    }
+
+    /**
+     * Lee la página siguiente a la actual, o la primera si no se ha leído
+     * ninguna.
+     * @return La página, que sigue siendo la actual si no hay más filas.
+     * @throws SQLException
+     */
+    public QueryResult next() throws SQLException{
+        if (this.page == null)
+            return this.first();
+        if (!this.hasNext || this.page.getRowCount() == 0)
+            return this.page;
+        return this.seek(this.keyValue(this.page.getRowCount() - 1), true);
+    }
+
+    /**
+     * Lee la página anterior a la actual, o la última si no se ha leído
+     * ninguna.
+     * @return La página, que sigue siendo la actual si no hay filas antes.
+     * @throws SQLException
+     */
+    public QueryResult previous() throws SQLException{
+        if (this.page == null)
+            return this.last();
+        if (!this.hasPrevious || this.page.getRowCount() == 0)
+            return this.page;
+        return this.seek(this.keyValue(0), false);
+    }
+
+    /**
+     * Lee las filas que siguen a una clave en un sentido. Se pide una fila
+     * más de las de la página para saber si hay más.
+     * @param after Clave desde la que se lee, sin incluirla, null para
+     * empezar desde un extremo.
+     * @param forward True para avanzar, false para retroceder.
+     */
+    private QueryResult seek(Object after, boolean forward) throws SQLException{
+        boolean up = forward == this.ascending;
+        StringBuilder sql = new StringBuilder("SELECT * FROM ")
+                .append(this.source);
+        if (after != null)
+            sql.append(" WHERE ").append(this.key).append(up ? " > ?" : " < ?");
+        sql.append(" ORDER BY ").append(this.key).append(up ? " ASC" : " DESC");
+        QueryResult read = this.database.fetch(this.dialect.limit(
+                sql.toString(), this.pageSize + 1), after != null
+                ? new Object[]{after} : new Object[0]);
+        boolean more = read.getRowCount() > this.pageSize;
+        if (more)
+            read = read.first(this.pageSize);
+        if (this.keyColumn < 0)
+            this.keyColumn = findColumn(read, this.key);
+        if (!forward)
+            read = read.sort(this.keyColumn, this.ascending);
+        if (forward){
+            this.hasNext = more;
+            this.hasPrevious = after != null;
+        } else {
+            this.hasPrevious = more;
+            this.hasNext = after != null;
+        }
+        this.page = read;
+        return read;
+    }
+
+    /**
+     * Obtiene la clave de una fila de la página con el tipo de su columna,
+     * para que la comparación se haga sobre el índice y no sobre texto.
+     */
+    private Object keyValue(int row){
+        QueryResult current = this.page;
+        if (current.isNull(row, this.keyColumn))
+            return null;
+        String text = current.getString(row, this.keyColumn);
+        switch (current.getColumnType(this.keyColumn)){
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return current.getLong(row, this.keyColumn);
+            case Types.BIGINT:
+                try {
+                    return Long.valueOf(text);
+                } catch (NumberFormatException e){
+                    return new BigDecimal(text); // BIGINT UNSIGNED de MySQL.
+                }
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return new BigDecimal(text);
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return current.getDouble(row, this.keyColumn);
+            case Types.DATE:
+                try {
+                    return Date.valueOf(text);
+                } catch (IllegalArgumentException e){
+                    return text;
+                }
+            case Types.TIMESTAMP:
+                try {
+                    return Timestamp.valueOf(text);
+                } catch (IllegalArgumentException e){
+                    return text;
+                }
+            default:
+                return text;
+        }
+    }
+
+    /**
+     * Busca la columna de la clave en el resultado, sin tener en cuenta las
+     * comillas, el prefijo de la tabla ni las mayúsculas.
+     */
+    private static int findColumn(QueryResult result, String key)
+            throws SQLException{
+        String name = key.trim();
+        int dot = name.lastIndexOf('.');
+        if (dot >= 0)
+            name = name.substring(dot + 1);
+        name = name.replaceAll("[\"`\\[\\]]", "");
+        for (int i = 0; i < result.getColumnCount(); i++)
+            if (result.getLabel(i).equalsIgnoreCase(name))
+                return i;
+        throw new SQLException("La columna " + key
+                + " no está en el resultado");
+    }
+}
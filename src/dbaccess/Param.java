@@ -0,0 +1,215 @@
+package dbaccess;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Parámetro de una consulta con su tipo JDBC (java.sql.Types), que se asigna
+ * con el método del tipo (setInt(), setLong(), setString(), setDate()...) en
+ * lugar de setObject(). Así el driver envía el tipo de la columna y el
+ * servidor no tiene que convertirla: un texto enviado como nvarchar a una
+ * columna varchar de SQL Server, o una fecha enviada como texto, impiden
+ * usar el índice de la columna.
+ * <p>
+ * Los métodos de Database siguen aceptando valores sin tipo en sus
+ * Object[], que se asignan según su clase (ver of(Object)).
+ * @author zelda
+ */
+public final class Param {
+
+    private final int type;
+    private final Object value;
+
+    private Param(int type, Object value){
+        this.type = type;
+        this.value = value;
+    }
+
+    /**
+     * @return Parámetro INTEGER.
+     */
+    public static Param of(int value){
+        return new Param(Types.INTEGER, value);
+    }
+
+    /**
+     * @return Parámetro BIGINT.
+     */
+    public static Param of(long value){
+        return new Param(Types.BIGINT, value);
+    }
+
+    /**
+     * @return Parámetro DOUBLE.
+     */
+    public static Param of(double value){
+        return new Param(Types.DOUBLE, value);
+    }
+
+    /**
+     * @return Parámetro DECIMAL.
+     */
+    public static Param of(BigDecimal value){
+        return new Param(Types.DECIMAL, value);
+    }
+
+    /**
+     * @return Parámetro VARCHAR.
+     */
+    public static Param of(String value){
+        return new Param(Types.VARCHAR, value);
+    }
+
+    /**
+     * @return Parámetro NVARCHAR, para columnas Unicode de SQL Server
+     * (nvarchar), ya que los textos se envían como varchar (ver
+     * SQLServerDialect).
+     */
+    public static Param unicode(String value){
+        return new Param(Types.NVARCHAR, value);
+    }
+
+    /**
+     * @return Parámetro DATE.
+     */
+    public static Param of(LocalDate value){
+        return new Param(Types.DATE, value);
+    }
+
+    /**
+     * @return Parámetro TIMESTAMP.
+     */
+    public static Param of(LocalDateTime value){
+        return new Param(Types.TIMESTAMP, value);
+    }
+
+    /**
+     * @param type Tipo JDBC de la columna.
+     * @return Parámetro NULL del tipo indicado.
+     */
+    public static Param nullOf(int type){
+        return new Param(type, null);
+    }
+
+    /**
+     * Obtiene el parámetro de un valor sin tipo según su clase. Las clases
+     * que no tienen un tipo propio, y null, se asignan con setObject().
+     * @param value El valor.
+     * @return El parámetro.
+     */
+    public static Param of(Object value){
+        if (value instanceof Param)
+            return (Param)value;
+        if (value instanceof Integer || value instanceof Short
+                || value instanceof Byte)
+            return of(((Number)value).intValue());
+        if (value instanceof Long)
+            return of((long)value);
+        if (value instanceof Double || value instanceof Float)
+            return of(((Number)value).doubleValue());
+        if (value instanceof BigDecimal)
+            return of((BigDecimal)value);
+        if (value instanceof String)
+            return of((String)value);
+        if (value instanceof LocalDate)
+            return of((LocalDate)value);
+        if (value instanceof LocalDateTime)
+            return of((LocalDateTime)value);
+        return new Param(Types.JAVA_OBJECT, value);
+    }
+
+    /**
+     * Asigna los parámetros de una sentencia en orden.
+     * @param stmt La sentencia.
+     * @param values Parámetros, con tipo (Param) o sin él.
+     * @throws SQLException
+     */
+    static void bind(PreparedStatement stmt, Object[] values)
+            throws SQLException{
+        for (int i = 0; i < values.length; i++)
+            of(values[i]).bind(stmt, i + 1); // Los parámetros empiezan en 1.
+    }
+
+    /**
+     * Asigna el parámetro con el método de su tipo.
+     * @param stmt La sentencia.
+     * @param index Posición del parámetro, empezando en 1.
+     * @throws SQLException
+     */
+    void bind(PreparedStatement stmt, int index) throws SQLException{
+        if (this.type == Types.JAVA_OBJECT){
+            stmt.setObject(index, this.value);
+            return;
+        }
+        if (this.value == null){
+            stmt.setNull(index, this.type);
+            return;
+        }
+        switch (this.type){
+            case Types.INTEGER:
+                stmt.setInt(index, (Integer)this.value);
+                break;
+            case Types.BIGINT:
+                stmt.setLong(index, (Long)this.value);
+                break;
+            case Types.DOUBLE:
+                stmt.setDouble(index, (Double)this.value);
+                break;
+            case Types.DECIMAL:
+                stmt.setBigDecimal(index, (BigDecimal)this.value);
+                break;
+            case Types.NVARCHAR:
+                stmt.setNString(index, (String)this.value);
+                break;
+            case Types.DATE:
+                stmt.setDate(index, Date.valueOf((LocalDate)this.value));
+                break;
+            case Types.TIMESTAMP:
+                stmt.setTimestamp(index, Timestamp.valueOf(
+                        (LocalDateTime)this.value));
+                break;
+            default:
+                stmt.setString(index, (String)this.value);
+        }
+    }
+
+    /**
+     * @return Tipo JDBC del parámetro (java.sql.Types), JAVA_OBJECT si no
+     * tiene.
+     */
+    public int getType(){
+        return this.type;
+    }
+
+    /**
+     * @return Valor del parámetro.
+     */
+    public Object getValue(){
+        return this.value;
+    }
+
+    @Override
+    public boolean equals(Object other){
+        if (!(other instanceof Param))
+            return false;
+        Param param = (Param)other;
+        return this.type == param.type && Objects.equals(this.value, param.value);
+    }
+
+    @Override
+    public int hashCode(){
+        return 31 * this.type + Objects.hashCode(this.value);
+    }
+
+    @Override
+    public String toString(){
+        return String.valueOf(this.value);
+    }
+}
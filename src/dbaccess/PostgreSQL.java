@@ -1,30 +1,65 @@
 
 package dbaccess;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.InputMismatchException;
 import utils.Console;
 import utils.Configuration;
 import java.util.Properties;
 
 /**
- * Clase que trabaja con una base de datos PostgreSQL que contiene informacin 
+ * Clase que trabaja con una base de datos PostgreSQL que contiene información 
  * sobre clientes de una tienda de productos multimedia.
  * @author zelda
  */
 public class PostgreSQL implements Query {
     
+    private static final String INSERT = "INSERT INTO \"Customer\"(\"CustomerId\", "
+            + "\"FirstName\", \"LastName\", \"Address\", \"City\", \"Country\", "
+            + "\"Phone\", \"Email\") VALUES (?,?,?,?,?,?,?,?)";
+    private static final String UPDATE = "UPDATE \"Customer\" SET \"Phone\" = ?,"
+            + "\"Email\" = ? WHERE \"FirstName\" = ? AND \"LastName\" = ?;";
+    private static final String DELETE = "DELETE FROM \"Customer\" WHERE "
+            + "\"CustomerId\" = ?;";
+    private static final String SEARCH = "SELECT \"CustomerId\", \"FirstName\", "
+            + "\"LastName\", \"Address\", \"City\", \"Country\", \"Phone\", "
+            + "\"Email\" FROM \"Customer\" WHERE \"FirstName\" = ? AND "
+            + "\"LastName\" = ?;";
+    private static final String EXPORT = "SELECT \"CustomerId\", \"FirstName\", "
+            + "\"LastName\", \"Address\", \"City\", \"Country\", \"Phone\", "
+            + "\"Email\" FROM \"Customer\";";
+    /**
+     * Sentencias del menú que se pueden preparar por adelantado (ver Warmup).
+     */
+    static final String[] STATEMENTS = {INSERT, UPDATE, DELETE, SEARCH, EXPORT};
+
     Database postgre;
     
     public PostgreSQL(){
         this.load();
         this.menu();
+        Warmup.release(this.postgre);
+    }
+    
+    /**
+     * Trabaja con una base de datos ya abierta sin mostrar el menú, para 
+     * realizar sus opciones con run() (ver Runner).
+     * @param database La base de datos.
+     */
+    PostgreSQL(Database database){
+        this.postgre = database;
     }
     
     /**
-     * Carga los datos de configuracin de la base de datos desde un archivo externo.
+     * Carga los datos de configuración de la base de datos desde un archivo externo,
+     * o usa la base de datos ya calentada al iniciar la aplicación (ver Warmup).
      */
     public void load(){
-        Properties config = Configuration.loadConfig("config/PostgreSQL.cfg");
+        this.postgre = Warmup.get("PostgreSQL");
+        if (this.postgre != null)
+            return;
+        Properties config = Configuration.getConfig("config/PostgreSQL.cfg");
         this.postgre = new Database( 
                config.getProperty("url"),
                config.getProperty("port"),
@@ -33,6 +68,7 @@ public class PostgreSQL implements Query {
                config.getProperty("password"),
                "PostgreSQL"
         );
+        this.postgre.configure(config);
     }
     
     /**
@@ -41,150 +77,182 @@ public class PostgreSQL implements Query {
      */
     public void menu(){
         byte option = 0;
-        int[] sizes;
-        Object[] values;
         String[] mainMenu = { 
-            "Aadir un cliente a la base de datos",
+            "Añadir un cliente a la base de datos",
             "Actualizar los contactos de un cliente",
             "Eliminar un cliente ",
             "Buscar un cliente",
             "Mostrar un listado de clientes",
-            "Mostrar las tablas de la base de datos"
+            "Mostrar las tablas de la base de datos",
+            "Exportar el listado de clientes a un archivo",
+            "Importar clientes desde un archivo CSV"
         };
         do {
-            Console.showMenu("PostgreSQL: Gestin de clientes", mainMenu);
+            Console.showMenu("PostgreSQL: Gestión de clientes", mainMenu);
             try {
-                option = (byte)Console.readNumber(Console.eof + "Escoge una opcin: ", "byte");
+                option = (byte)Console.readNumber(Console.eof + "Escoge una opción: ", "byte");
                 System.out.println();
-                switch(option) {
-                    case 1:
-                        this.postgre.query("INSERT INTO \"Customer\"("
-                                + "\"CustomerId\", "
-                                + "\"FirstName\", "
-                                + "\"LastName\", "
-                                + "\"Address\", "
-                                + "\"City\", "
-                                + "\"Country\", "
-                                + "\"Phone\", "
-                                + "\"Email\") "
-                                + "VALUES (?,?,?,?,?,?,?,?)", this.entryValues());
-                        Console.toContinue();
-                        break;
-                    case 2:
-                        this.postgre.query("UPDATE \"Customer\" "
-                                + "SET \"Phone\" = ?,\"Email\" = ? "
-                                + "WHERE \"FirstName\" = ? AND \"LastName\" = ?;",
-                                this.updateValues());
-                        Console.toContinue();
-                        break;
-                    case 3:
-                        this.postgre.query("DELETE FROM \"Customer\" WHERE "
-                                + "\"CustomerId\" = ?;", this.deleteValues());
-                        Console.toContinue();
-                        break;
-                    case 4:
-                        values = this.searchValues();
-                        sizes = this.postgre.loadSizeByQuery("SELECT "
-                                + "MAX(LENGTH(\"CustomerId\"::varchar(5))) as CustomerId, "
-                                + "MAX(LENGTH(\"FirstName\")) as FirstName, "
-                                + "MAX(LENGTH(\"LastName\")) as LastName, "
-                                + "MAX(LENGTH(\"Address\")) as Address, "
-                                + "MAX(LENGTH(\"City\")) as City, "
-                                + "MAX(LENGTH(\"Country\")) as Country, "
-                                + "MAX(LENGTH(\"Phone\")) as Phone, "
-                                + "MAX(LENGTH(\"Email\")) as Email, "
-                                + "COUNT(\"CustomerId\") FROM \"Customer\" "
-                                + "WHERE \"FirstName\" = ? AND \"LastName\" = ?;",
-                                values);
-                        this.postgre.select("SELECT "
-                                + "\"CustomerId\", "
-                                + "\"FirstName\", "
-                                + "\"LastName\", "
-                                + "\"Address\", "
-                                + "\"City\", "
-                                + "\"Country\", "
-                                + "\"Phone\", "
-                                + "\"Email\" FROM \"Customer\" WHERE "
-                                + "\"FirstName\" = ? AND \"LastName\" = ?;", 
-                                "Customer", sizes, values);
-                        Console.toContinue();
-                        break;
-                    case 5:
-                        /* PostgreSQL es case sensitive, para que cojas las 
-                         * mayusculas hay que escribir los nombre entre comillas.
-                         * https://www.postgresql.org/message-id/b7b967e00712070339j5fa60fd1uc873de03e3bd145e%40mail.gmail.com
-                         */
-                        sizes = this.postgre.loadSizeByQuery("SELECT "
-                                + "MAX(LENGTH(\"CustomerId\"::varchar(5))) as CustomerID, "
-                                + "MAX(LENGTH(\"FirstName\")) as FirstName, "
-                                + "MAX(LENGTH(\"LastName\")) as LastName, "
-                                + "MAX(LENGTH(\"Address\")) as Address, "
-                                + "MAX(LENGTH(\"City\")) as City, "
-                                + "MAX(LENGTH(\"Country\")) as Country, "
-                                + "MAX(LENGTH(\"Phone\")) as Phone, "
-                                + "MAX(LENGTH(\"Email\"))as Email, "
-                                + "COUNT(\"CustomerId\") FROM \"Customer\";");
-                        this.postgre.select("SELECT \"CustomerId\", "
-                                + "\"FirstName\", "
-                                + "\"LastName\", "
-                                + "\"Address\", "
-                                + "\"City\", "
-                                + "\"Country\", "
-                                + "\"Phone\", "
-                                + "\"Email\" "
-                                + "FROM \"Customer\";", "Customer", sizes);
-                        Console.toContinue();
-                        break;
-                    case 6:
-                        sizes = this.postgre.loadSizeByQuery("SELECT "
-                                + "MAX(LENGTH(schemaname)) as schemaname, "
-                                + "MAX(LENGTH(tablename)) as tablename, "
-                                + "MAX(LENGTH(tableowner)) as tableowner, "
-                                + "COUNT(*) FROM pg_catalog.pg_tables "
-                                + "WHERE schemaname != 'pg_catalog' "
-                                + "AND schemaname != 'information_schema';");
-                        this.postgre.select("SELECT schemaname, tablename, "
-                                + "tableowner FROM pg_catalog.pg_tables WHERE "
-                                + "schemaname != 'pg_catalog' AND schemaname != "
-                                + "'information_schema';", "TABLAS", sizes);
-                        Console.toContinue();
-                        break;     
-                }
+                this.run(option);
             } catch (InputMismatchException e) {
-                System.out.println(Console.eof + "Opcin no vlida, intente lo de nuevo..." + Console.eof);
+                System.out.println(Console.eof + "Opción no válida, intente lo de nuevo..." + Console.eof);
                 option = 1;
             }
         } while (Console.inRange((int)option, 1, mainMenu.length));
     }
     
     /**
-     * Solicita al usuario los datos del cliente que se desea aadir.
+     * Realiza una de las opciones del menú.
+     * @param option Número de la opción.
+     */
+    @Override
+    public void run(int option){
+        switch(option) {
+            case 1:
+                this.postgre.query(INSERT, this.entryValues());
+                Console.toContinue();
+                break;
+            case 2:
+                this.postgre.query(UPDATE, this.updateValues());
+                Console.toContinue();
+                break;
+            case 3:
+                this.postgre.query(DELETE, this.deleteValues());
+                Console.toContinue();
+                break;
+            case 4:
+                this.postgre.select(SEARCH, "Customer", this.searchValues(), 
+                        Customer.MAPPER, Customer.LABELS, Customer::cells);
+                Console.toContinue();
+                break;
+            case 5:
+                /* PostgreSQL es case sensitive, para que cojas las 
+                 * mayusculas hay que escribir los nombre entre comillas.
+                 * https://www.postgresql.org/message-id/b7b967e00712070339j5fa60fd1uc873de03e3bd145e%40mail.gmail.com
+                 */
+                this.postgre.browse("SELECT \"CustomerId\", "
+                        + "\"FirstName\", "
+                        + "\"LastName\", "
+                        + "\"Address\", "
+                        + "\"City\", "
+                        + "\"Country\", "
+                        + "\"Phone\", "
+                        + "\"Email\" "
+                        + "FROM \"Customer\"", "\"CustomerId\"", true, 
+                        "Customer");
+                Console.toContinue();
+                break;
+            case 6:
+                this.postgre.select("SELECT schemaname, tablename, "
+                        + "tableowner FROM pg_catalog.pg_tables WHERE "
+                        + "schemaname != 'pg_catalog' AND schemaname != "
+                        + "'information_schema';", "TABLAS");
+                Console.toContinue();
+                break;     
+            case 7:
+                this.postgre.export(EXPORT, new Param[0], this.exportFile());
+                Console.toContinue();
+                break;
+            case 8:
+                this.postgre.load("Customer", this.importFile());
+                Console.toContinue();
+                break;
+        }
+    }
+    
+    @Override
+    public String[] getOperations(){
+        return new String[]{"insert", "update", "delete", "search", "list", "tables",
+            "export", "import"};
+    }
+    
+    @Override
+    public LoadGenerator.Workload getWorkload(){
+        return new LoadGenerator.Workload(INSERT, UPDATE, SEARCH, DELETE, 
+                Customer.MAPPER){
+            private long first;
+            
+            /**
+             * Los ID de los clientes no se generan, se usan los siguientes 
+             * al mayor que existe.
+             */
+            @Override
+            protected void prepare(Database database) throws SQLException{
+                // MAX() es NULL si no hay clientes y getLong() devuelve 0.
+                this.first = database.list("SELECT MAX(\"CustomerId\") FROM "
+                        + "\"Customer\"", new Param[0], 
+                        result -> result.getLong(1)).get(0);
+            }
+            
+            @Override
+            protected Param[] insertValues(long row){
+                return new Param[]{Param.of((int)(this.first + row)), 
+                    Param.of("Load"), Param.of(this.lastName(row)), 
+                    Param.of("Calle de prueba " + row), Param.of("Madrid"), 
+                    Param.of("Spain"), Param.of("+34 600 000 000"), 
+                    Param.of("load" + row + "@example.com")};
+            }
+            
+            @Override
+            protected Param[] updateValues(long row, long id){
+                return new Param[]{Param.of("+34 600 000 " + String.format(
+                        "%03d", row % 1000)), Param.of("load" + row 
+                        + "@example.org"), Param.of("Load"), 
+                    Param.of(this.lastName(row))};
+            }
+            
+            @Override
+            protected Param[] searchValues(long row, long id){
+                return new Param[]{Param.of("Load"), 
+                    Param.of(this.lastName(row))};
+            }
+            
+            @Override
+            protected Param[] deleteValues(long row, long id){
+                return new Param[]{Param.of((int)(this.first + row))};
+            }
+            
+            private String lastName(long row){
+                return this.tag + "-" + row;
+            }
+        };
+    }
+    
+    /**
+     * Solicita al usuario los datos del cliente que se desea añadir.
      * @return Array con los valores introducidos por el usuario.
      */
     @Override
-    public Object[] entryValues(){
-        Object[] values = new Object[8];
-        values[0] = Console.validInt("Escribe el ID del nuevo cliente: ");
-        values[1] = Console.validString("Escribe el nombre del cliente: ", 40);
-        values[2] = Console.validString("Escribe los apellidos del cliente: ", 20);
-        values[3] = Console.validString("Introduce la direccin del cliente: ", 70);
-        values[4] = Console.validString("Introduce la ciudad: ", 40);
-        values[5] = Console.validString("Introduce el pas: ", 40);
-        values[6] = Console.validString("Introduce el telfono del cliente: ", 24);
-        values[7] = Console.validEmail("Introduce el email de contacto: ");
+    public Param[] entryValues(){
+        Param[] values = new Param[8];
+        values[0] = Param.of(Console.validInt("Escribe el ID del nuevo "
+                + "cliente: "));
+        values[1] = Param.of(Console.validString("Escribe el nombre del "
+                + "cliente: ", 40));
+        values[2] = Param.of(Console.validString("Escribe los apellidos del "
+                + "cliente: ", 20));
+        values[3] = Param.of(Console.validString("Introduce la dirección del "
+                + "cliente: ", 70));
+        values[4] = Param.of(Console.validString("Introduce la ciudad: ", 40));
+        values[5] = Param.of(Console.validString("Introduce el país: ", 40));
+        values[6] = Param.of(Console.validString("Introduce el teléfono del "
+                + "cliente: ", 24));
+        values[7] = Param.of(Console.validEmail("Introduce el email de "
+                + "contacto: "));
         return values;
     }
     
     /**
      * Solicita al usuario los nombre y apellidos del cliente sobre el que se 
-     * desea realizar la bsqueda.
+     * desea realizar la búsqueda.
      * @return Array con los valores introducidos por el usuario.
      */
     @Override
-    public Object[] searchValues(){
-        Object[] values = new Object[2];
-        values[0] = Console.readLine("Escribe el nombre del cliente: ").trim();
-        values[1] = Console.readLine("Escribe los apellidos del cliente: ").trim();
+    public Param[] searchValues(){
+        Param[] values = new Param[2];
+        values[0] = Param.of(Console.readLine("Escribe el nombre del "
+                + "cliente: ").trim());
+        values[1] = Param.of(Console.readLine("Escribe los apellidos del "
+                + "cliente: ").trim());
         return values;
     }
     
@@ -194,27 +262,79 @@ public class PostgreSQL implements Query {
      * @return Array con los valores introducidos por el usuario.
      */
     @Override
-    public Object[] updateValues(){
-        Object[] values = new Object[4];
-        values[2] = Console.readLine("Escribe el nombre del cliente: ").trim();
-        values[3] = Console.readLine("Escribe los apellidos del cliente: ").trim();
-        values[0] = Console.validString("Introduce el nuevo telfono: ", 24);
-        values[1] = Console.validEmail("Introduce el nuevo email de contacto: ");
+    public Param[] updateValues(){
+        Param[] values = new Param[4];
+        values[2] = Param.of(Console.readLine("Escribe el nombre del "
+                + "cliente: ").trim());
+        values[3] = Param.of(Console.readLine("Escribe los apellidos del "
+                + "cliente: ").trim());
+        values[0] = Param.of(Console.validString("Introduce el nuevo "
+                + "teléfono: ", 24));
+        values[1] = Param.of(Console.validEmail("Introduce el nuevo email de "
+                + "contacto: "));
         return values;
     }
     
     /**
      * Solicita al usuario los nombre y apellidos del cliente que se desea eliminar.
      * @return Array con los valores facilitador por el usuario. Devuelve NULL 
-     * si el usuario no confirma la eliminacin del cliente.
+     * si el usuario no confirma la eliminación del cliente.
      */
     @Override
-    public Object[] deleteValues(){
-        Object[] values = new Object[1];
-        values[0] = Console.validInt("Escribe el ID del cliente a eliminar: ");
-        if(Console.makeSure("Los datos almacenados se perdern Est seguro?"))
+    public Param[] deleteValues(){
+        Param[] values = new Param[1];
+        values[0] = Param.of(Console.validInt("Escribe el ID del cliente a "
+                + "eliminar: "));
+        if(Console.makeSure("Los datos almacenados se perderán ¿Está seguro?"))
             return values;
         else
             return null;
     }
+    
+    /**
+     * Cliente de la tienda.
+     */
+    static final class Customer {
+        
+        static final String[] LABELS = {"CustomerId", "FirstName", "LastName",
+            "Address", "City", "Country", "Phone", "Email"};
+        static final RowMapper<Customer> MAPPER = Customer::read;
+        
+        final int id;
+        final String firstName;
+        final String lastName;
+        final String address;
+        final String city;
+        final String country;
+        final String phone;
+        final String email;
+        
+        Customer(int id, String firstName, String lastName, String address, 
+                String city, String country, String phone, String email){
+            this.id = id;
+            this.firstName = firstName;
+            this.lastName = lastName;
+            this.address = address;
+            this.city = city;
+            this.country = country;
+            this.phone = phone;
+            this.email = email;
+        }
+        
+        /**
+         * Lee las columnas de SEARCH por su posición.
+         */
+        static Customer read(ResultSet result) throws SQLException{
+            return new Customer(result.getInt(1), result.getString(2), 
+                    result.getString(3), result.getString(4), 
+                    result.getString(5), result.getString(6), 
+                    result.getString(7), result.getString(8));
+        }
+        
+        String[] cells(){
+            return new String[]{Integer.toString(this.id), this.firstName, 
+                this.lastName, this.address, this.city, this.country, 
+                this.phone, this.email};
+        }
+    }
 }
\ No newline at end of file
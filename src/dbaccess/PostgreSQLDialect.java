@@ -0,0 +1,119 @@
+package dbaccess;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Properties;
+import org.postgresql.PGConnection;
+import org.postgresql.ds.PGSimpleDataSource;
+import utils.Configuration;
+
+/**
+ * Dialecto de PostgreSQL (PgJDBC).
+ * https://jdbc.postgresql.org/documentation/head/connect.html
+ * @author zelda
+ */
+public class PostgreSQLDialect implements Dialect {
+    
+    @Override
+    public String getName(){
+        return "PostgreSQL";
+    }
+    
+    /**
+     * <ul>
+     *     <li>prepareThreshold=1 - Usa una sentencia preparada en el servidor
+     *     desde la primera ejecución, ya que las sentencias se reutilizan 
+     *     gracias a la caché del pool.</li>
+     *     <li>defaultRowFetchSize - Filas que se leen en cada bloque.</li>
+     *     <li>reWriteBatchedInserts - Reescribe los lotes de INSERT como un
+     *     único INSERT de varias filas.</li>
+     * </ul>
+     */
+    @Override
+    public Properties getDefaults(Properties config){
+        Properties driver = new Properties();
+        driver.setProperty("prepareThreshold", "1");
+        driver.setProperty("preparedStatementCacheQueries", "256");
+        driver.setProperty("reWriteBatchedInserts", String.valueOf(
+                Configuration.getBoolean(config, "batch.rewrite", true)));
+        if (Configuration.getBoolean(config, "select.streaming", true))
+            driver.setProperty("defaultRowFetchSize", String.valueOf(
+                    Configuration.getInt(config, "select.fetchSize", 500)));
+        return driver;
+    }
+    
+    @Override
+    public Connection connect(String server, int port, String db, String login,
+            String password, Properties driver) throws SQLException{
+        PGSimpleDataSource dsPG = new PGSimpleDataSource();
+        for (String name : driver.stringPropertyNames())
+            dsPG.setProperty(name, driver.getProperty(name));
+        dsPG.setServerNames(new String[]{server});
+        if (port != 0)
+            dsPG.setPortNumbers(new int[]{port});
+        dsPG.setDatabaseName(db);
+        dsPG.setUser(login);
+        dsPG.setPassword(password);
+        return dsPG.getConnection();
+    }
+    
+    /**
+     * PostgreSQL solo usa un cursor si la conexión está dentro de una 
+     * transacción, así que se desactiva el autocommit (el pool restablece la
+     * conexión al devolverla).
+     * https://jdbc.postgresql.org/documentation/head/query.html#query-with-cursor
+     */
+    @Override
+    public void configureStreaming(Connection conn, PreparedStatement stmt, 
+            int fetchSize) throws SQLException{
+        if (conn.getAutoCommit())
+            conn.setAutoCommit(false);
+        stmt.setFetchSize(fetchSize);
+    }
+    
+    /**
+     * Con analyze se usa EXPLAIN (ANALYZE, BUFFERS), que ejecuta la consulta
+     * y da los tiempos, filas y bloques leídos reales de cada nodo. Se hace
+     * dentro de una transacción que se deshace, para que una inserción o
+     * actualización no cambie los datos.
+     * https://www.postgresql.org/docs/current/sql-explain.html
+     */
+    @Override
+    public String explain(Connection conn, String query, Object[] values, 
+            boolean analyze) throws SQLException{
+        if (!analyze)
+            return Dialect.plan(conn, "EXPLAIN " + query, values);
+        boolean autoCommit = conn.getAutoCommit();
+        if (autoCommit)
+            conn.setAutoCommit(false);
+        try {
+            return Dialect.plan(conn, "EXPLAIN (ANALYZE, BUFFERS) " + query, 
+                    values);
+        } finally {
+            conn.rollback();
+            if (autoCommit)
+                conn.setAutoCommit(true);
+        }
+    }
+    
+    /**
+     * Carga el archivo con COPY ... FROM STDIN, que envía los bytes del CSV
+     * tal cual y los analiza el servidor. En el formato CSV de PostgreSQL los
+     * valores vacíos sin comillas son nulos.
+     * https://jdbc.postgresql.org/documentation/publicapi/org/postgresql/copy/CopyManager.html
+     */
+    @Override
+    public long bulkLoad(Connection conn, String table, CsvFile csv, 
+            int batchSize) throws SQLException, IOException{
+        StringBuilder sql = new StringBuilder("COPY ").append(this.quote(table))
+                .append(" (");
+        String[] columns = csv.getColumns();
+        for (int i = 0; i < columns.length; i++)
+            sql.append(i > 0 ? ", " : "").append(this.quote(columns[i]));
+        sql.append(") FROM STDIN WITH (FORMAT csv)");
+        return conn.unwrap(PGConnection.class).getCopyAPI().copyIn(
+                sql.toString(), csv.getInput(), 1 << 16);
+    }
+}
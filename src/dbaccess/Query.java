@@ -1,13 +1,55 @@
 package dbaccess;
 
+import utils.Console;
+
 /**
- * Interfaz que define los mtodos que deben implementarse para realizar las
- * consultas SELECT, INSERT, UPDATE y DELETE.
+ * Interfaz que define los métodos que deben implementarse para realizar las
+ * consultas SELECT, INSERT, UPDATE y DELETE. Los valores se devuelven con su
+ * tipo JDBC (ver Param).
  * @author zelda
  */
 public interface Query {
-    Object[] entryValues();
-    Object[] searchValues();
-    Object[] updateValues();
-    Object[] deleteValues();
+    Param[] entryValues();
+    Param[] searchValues();
+    Param[] updateValues();
+    Param[] deleteValues();
+    
+    /**
+     * Realiza una de las opciones del menú, pidiendo sus valores por consola.
+     * @param option Número de la opción, empezando en 1.
+     */
+    void run(int option);
+    
+    /**
+     * @return Nombre de cada opción del menú en orden, para indicarlas por
+     * nombre en lugar de por número (ver Runner).
+     */
+    String[] getOperations();
+    
+    /**
+     * @return Sentencias de inserción, actualización, búsqueda y eliminación
+     * del menú con valores sintéticos, que solo afectan a las filas que 
+     * inserta el generador de carga (ver LoadGenerator).
+     */
+    LoadGenerator.Workload getWorkload();
+    
+    /**
+     * Solicita al usuario el archivo al que exportar un listado.
+     * @return Ruta del archivo, su extensión indica el formato (.csv o 
+     * .jsonl, seguida de .gz para comprimirlo).
+     */
+    default String exportFile(){
+        return Console.readLine("Escribe el archivo de destino (.csv o .jsonl,"
+                + " añade .gz para comprimirlo): ").trim();
+    }
+    
+    /**
+     * Solicita al usuario el archivo CSV que se quiere cargar en la tabla.
+     * @return Ruta del archivo, con los nombres de las columnas en la primera
+     * línea (puede estar comprimido con gzip, .csv.gz).
+     */
+    default String importFile(){
+        return Console.readLine("Escribe el archivo CSV a cargar, con los "
+                + "nombres de las columnas en la primera línea: ").trim();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,122 @@
+package dbaccess;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sentencias en ejecución en cada hilo, para poder cancelarlas desde otro:
+ * al pulsar Ctrl+C mientras se ejecuta una consulta se cancela en el
+ * servidor (Statement.cancel()) en lugar de cerrar la aplicación, y la
+ * conexión vuelve al pool. Si no hay ninguna consulta en curso Ctrl+C
+ * cierra la aplicación como siempre.
+ * <p>
+ * La señal se captura con sun.misc.Signal, por reflexión para no depender
+ * de una API interna al compilar. Si la máquina virtual no la tiene, las
+ * consultas solo terminan por su tiempo máximo (ver Database.deadline()).
+ * @author zelda
+ */
+class QueryCanceller {
+
+    private static final Map<Thread, Statement> RUNNING = new ConcurrentHashMap<>();
+    private static boolean installed;
+
+    private QueryCanceller(){
+    }
+
+    /**
+     * Registra la sentencia que va a ejecutar el hilo actual.
+     * @param stmt La sentencia.
+     */
+    static void started(Statement stmt){
+        RUNNING.put(Thread.currentThread(), stmt);
+    }
+
+    /**
+     * Indica que el hilo actual ha terminado su sentencia.
+     */
+    static void finished(){
+        RUNNING.remove(Thread.currentThread());
+    }
+
+    /**
+     * Cancela todas las sentencias en ejecución.
+     * @return Número de sentencias canceladas.
+     */
+    static int cancelAll(){
+        int cancelled = 0;
+        for (Statement stmt : RUNNING.values())
+            try {
+                stmt.cancel();
+                cancelled++;
+            } catch (SQLException e){
+                //e.printStackTrace();
+            }
+        return cancelled;
+    }
+
+    /**
+     * Captura Ctrl+C (SIGINT) para cancelar las consultas en curso. Solo se
+     * instala una vez.
+     * @return True si se ha podido instalar.
+     */
+    static synchronized boolean install(){
+        if (installed)
+            return true;
+        try {
+            Class<?> signalClass = Class.forName("sun.misc.Signal");
+            Class<?> handlerClass = Class.forName("sun.misc.SignalHandler");
+            Method handle = signalClass.getMethod("handle", signalClass,
+                    handlerClass);
+            Object signal = signalClass.getConstructor(String.class)
+                    .newInstance("INT");
+            Method delegate = handlerClass.getMethod("handle", signalClass);
+            Object[] previous = new Object[1];
+            Object handler = Proxy.newProxyInstance(
+                    QueryCanceller.class.getClassLoader(),
+                    new Class<?>[]{handlerClass}, (proxy, method, args) -> {
+                        switch (method.getName()){
+                            case "handle":
+                                interrupted(delegate, previous[0], args[0]);
+                                return null;
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "equals":
+                                return proxy == args[0];
+                            default:
+                                return "QueryCanceller";
+                        }
+                    });
+            previous[0] = handle.invoke(null, signal, handler);
+            installed = true;
+        } catch (ClassNotFoundException | NoSuchMethodException
+                | InstantiationException | IllegalAccessException
+                | InvocationTargetException | RuntimeException e){
+            //e.printStackTrace();
+        }
+        return installed;
+    }
+
+    /**
+     * Atiende Ctrl+C: cancela las consultas en curso o, si no hay ninguna,
+     * pasa la señal al manejador anterior, que cierra la aplicación.
+     */
+    private static void interrupted(Method delegate, Object previous, 
+            Object signal){
+        if (cancelAll() > 0){
+            System.out.println();
+            System.out.println("Cancelando la consulta...");
+            return;
+        }
+        try {
+            delegate.invoke(previous, signal);
+        } catch (ReflectiveOperationException | RuntimeException e){
+            // El manejador por defecto (SIG_DFL) no se puede llamar.
+            System.exit(130);
+        }
+    }
+}
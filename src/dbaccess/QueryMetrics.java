@@ -0,0 +1,451 @@
+package dbaccess;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Métricas de las consultas realizadas por todas las bases de datos: tiempo
+ * de espera por la conexión, de preparación, de ejecución, de lectura de las
+ * filas y de dibujado de la tabla, junto con las filas devueltas o
+ * modificadas, los caracteres escritos y los errores.
+ * <p>
+ * Las métricas se agrupan por tipo de base de datos y texto SQL normalizado
+ * (los literales se sustituyen por ?), y los tiempos se guardan en
+ * histogramas de tamaño fijo de los que se obtienen los percentiles. Se
+ * pueden ver en la opción de estadísticas del menú principal o por JMX como
+ * <code>dbaccess:type=QueryMetrics</code>.
+ * @author zelda
+ */
+public class QueryMetrics implements QueryMetricsMXBean {
+
+    /**
+     * Consultas distintas que se registran como mucho, el resto se agrupan
+     * en una sola entrada para que la memoria no crezca sin límite.
+     */
+    private static final int MAX_STATEMENTS = 500;
+    private static final String OTHERS = "(otras consultas)";
+    private static final Pattern STRING = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER = Pattern.compile(
+            "(?<![\\w$.])-?\\d+(?:\\.\\d+)?(?![\\w$])");
+    private static final Pattern LIST = Pattern.compile(
+            "\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+    private static QueryMetrics instance;
+
+    private final ConcurrentMap<Key, Stats> statements = new ConcurrentHashMap<>();
+    private volatile boolean enabled = true;
+
+    /**
+     * Obtiene las métricas de la aplicación, registrándolas en JMX la primera
+     * vez.
+     * @return Las métricas compartidas por todas las bases de datos.
+     */
+    public static synchronized QueryMetrics getDefault(){
+        if (instance == null){
+            instance = new QueryMetrics();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(
+                        instance, new ObjectName("dbaccess:type=QueryMetrics"));
+            } catch (JMException | SecurityException e){
+                // Sin JMX las métricas siguen disponibles desde el menú.
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Empieza a medir una consulta.
+     * @param dbType Tipo de base de datos.
+     * @param query Texto SQL de la consulta.
+     * @return El cronómetro de la consulta, que no mide nada si las métricas
+     * están desactivadas.
+     */
+    public Timing start(String dbType, String query){
+        if (!this.enabled)
+            return Timing.NONE;
+        Key key = new Key(dbType, normalize(query));
+        Stats stats = this.statements.get(key);
+        if (stats == null){
+            if (this.statements.size() >= MAX_STATEMENTS)
+                key = new Key(dbType, OTHERS);
+            stats = this.statements.computeIfAbsent(key, k -> new Stats());
+        }
+        return new Timing(stats, true);
+    }
+
+    @Override
+    public boolean isEnabled(){
+        return this.enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled){
+        this.enabled = enabled;
+    }
+
+    @Override
+    public int getStatementCount(){
+        return this.statements.size();
+    }
+
+    @Override
+    public List<StatementStatistics> getStatements(){
+        List<Map.Entry<Key, Stats>> entries = new ArrayList<>(
+                this.statements.entrySet());
+        Collections.sort(entries, Comparator.comparingLong(
+                (Map.Entry<Key, Stats> entry) -> entry.getValue().total.getSum())
+                .reversed());
+        List<StatementStatistics> result = new ArrayList<>(entries.size());
+        for (Map.Entry<Key, Stats> entry : entries)
+            result.add(entry.getValue().snapshot(entry.getKey()));
+        return result;
+    }
+
+    @Override
+    public void reset(){
+        this.statements.clear();
+    }
+
+    /**
+     * Normaliza el texto de una consulta para agrupar las que solo cambian en
+     * sus valores: sustituye los literales de texto y números por ?, las
+     * listas de valores por (?) y une los espacios.
+     * @param query Texto SQL de la consulta.
+     * @return El texto normalizado.
+     */
+    static String normalize(String query){
+        String sql = STRING.matcher(query).replaceAll("?");
+        sql = NUMBER.matcher(sql).replaceAll("?");
+        sql = LIST.matcher(sql).replaceAll("(?)");
+        sql = SPACES.matcher(sql).replaceAll(" ").trim();
+        if (sql.endsWith(";"))
+            sql = sql.substring(0, sql.length() - 1).trim();
+        return sql;
+    }
+
+    private static double millis(double nanos){
+        return nanos / 1_000_000;
+    }
+
+    /**
+     * Clave de una consulta: tipo de base de datos y SQL normalizado.
+     */
+    private static class Key {
+
+        private final String database;
+        private final String sql;
+
+        Key(String database, String sql){
+            this.database = database;
+            this.sql = sql;
+        }
+
+        @Override
+        public boolean equals(Object other){
+            if (!(other instanceof Key))
+                return false;
+            Key key = (Key)other;
+            return this.database.equals(key.database) && this.sql.equals(key.sql);
+        }
+
+        @Override
+        public int hashCode(){
+            return this.database.hashCode() * 31 + this.sql.hashCode();
+        }
+    }
+
+    /**
+     * Métricas acumuladas de una consulta.
+     */
+    private static class Stats {
+
+        private final Histogram total = new Histogram();
+        private final Histogram acquire = new Histogram();
+        private final Histogram prepare = new Histogram();
+        private final Histogram execute = new Histogram();
+        private final Histogram fetch = new Histogram();
+        private final Histogram render = new Histogram();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong affected = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private volatile String lastError;
+
+        StatementStatistics snapshot(Key key){
+            return new StatementStatistics(key.database, key.sql,
+                    this.total.getCount(), this.hits.get(), this.errors.get(),
+                    this.lastError,
+                    millis(this.total.getMean()),
+                    millis(this.total.getPercentile(50)),
+                    millis(this.total.getPercentile(95)),
+                    millis(this.total.getPercentile(99)),
+                    millis(this.total.getMax()),
+                    millis(this.acquire.getMean()),
+                    millis(this.prepare.getMean()),
+                    millis(this.execute.getMean()),
+                    millis(this.fetch.getMean()),
+                    millis(this.render.getMean()),
+                    this.rows.get(), this.affected.get(), this.bytes.get());
+        }
+    }
+
+    /**
+     * Cronómetro de una ejecución de una consulta. Cada fase se mide desde el
+     * final de la anterior y los tiempos se acumulan hasta llamar a
+     * <code>stop()</code>, que los registra. Lo usa un solo hilo.
+     * <pre>
+     * Timing timing = metrics.start(dbType, query);
+     * try (
+     *         Connection conn = timing.acquired(this.connect());
+     *         PreparedStatement stmt = timing.prepared(conn.prepareStatement(query));
+     *         ResultSet result = timing.executed(stmt.executeQuery());
+     *     ){
+     *     ...
+     * } catch (SQLException e){
+     *     timing.failed(e);
+     * } finally {
+     *     timing.stop();
+     * }
+     * </pre>
+     */
+    public static final class Timing {
+
+        /**
+         * Cronómetro que no mide nada, para cuando las métricas están
+         * desactivadas.
+         */
+        public static final Timing NONE = new Timing(null, false);
+
+        private final Stats stats;
+        private final boolean measured;
+        private final long start;
+        private long mark;
+        private long acquire, prepare, execute, fetch, render;
+        private long rows, affected, bytes;
+        private boolean hit;
+        private Exception error;
+        private SlowQueryLog slowLog;
+        private Database database;
+        private String sql;
+        private Object[] values;
+
+        private Timing(Stats stats, boolean measured){
+            this.stats = stats;
+            this.measured = measured;
+            this.start = this.mark = measured ? System.nanoTime() : 0;
+        }
+
+        /**
+         * @return Cronómetro que mide la consulta sin registrarla en las 
+         * métricas, para el registro de consultas lentas.
+         */
+        static Timing unrecorded(){
+            return new Timing(null, true);
+        }
+
+        /**
+         * Al terminar pasa la consulta al registro de consultas lentas, que
+         * la guarda si ha superado el umbral o ha fallado.
+         * @param log El registro.
+         * @param database Base de datos, para obtener el plan de la consulta.
+         * @param sql Texto SQL de la consulta.
+         * @param values Parámetros de la consulta, null si no es una consulta
+         * de la que se pueda obtener el plan (por ejemplo una carga masiva).
+         * @return Este mismo cronómetro.
+         */
+        Timing watch(SlowQueryLog log, Database database, String sql, 
+                Object[] values){
+            if (this.measured){
+                this.slowLog = log;
+                this.database = database;
+                this.sql = sql;
+                this.values = values != null ? values.clone() : null;
+            }
+            return this;
+        }
+
+        /**
+         * Marca el final de la espera por la conexión.
+         * @param <T> Tipo del valor.
+         * @param value La conexión obtenida.
+         * @return El mismo valor recibido.
+         */
+        public <T> T acquired(T value){
+            if (this.measured)
+                this.acquire += this.lap();
+            return value;
+        }
+
+        /**
+         * Marca el final de la preparación de la sentencia.
+         * @param <T> Tipo del valor.
+         * @param value La sentencia preparada.
+         * @return El mismo valor recibido.
+         */
+        public <T> T prepared(T value){
+            if (this.measured)
+                this.prepare += this.lap();
+            return value;
+        }
+
+        /**
+         * Marca el final de la ejecución en el servidor.
+         * @param <T> Tipo del valor.
+         * @param value El resultado de la ejecución.
+         * @return El mismo valor recibido.
+         */
+        public <T> T executed(T value){
+            if (this.measured)
+                this.execute += this.lap();
+            return value;
+        }
+
+        /**
+         * Marca el final de la lectura de una o varias filas.
+         */
+        public void fetched(){
+            if (this.measured)
+                this.fetch += this.lap();
+        }
+
+        /**
+         * Marca el final del dibujado de una o varias filas.
+         */
+        public void rendered(){
+            if (this.measured)
+                this.render += this.lap();
+        }
+
+        /**
+         * @param count Filas devueltas por la consulta.
+         */
+        public void rows(long count){
+            this.rows += count;
+        }
+
+        /**
+         * Marca que el resultado se ha obtenido de la caché de resultados, 
+         * sin consultar la base de datos: se cuenta como una ejecución más, 
+         * con el tiempo de la caché como lectura, pero no pasa al registro 
+         * de consultas lentas.
+         * @param count Filas del resultado.
+         */
+        public void cached(long count){
+            this.hit = true;
+            this.rows += count;
+            this.fetched();
+        }
+
+        /**
+         * @param count Filas insertadas, actualizadas o eliminadas.
+         */
+        public void affected(long count){
+            this.affected += count;
+        }
+
+        /**
+         * @param count Caracteres escritos en consola.
+         */
+        public void bytes(long count){
+            this.bytes += count;
+        }
+
+        /**
+         * Registra el error de la consulta.
+         * @param e La excepción producida.
+         */
+        public void failed(Exception e){
+            this.error = e;
+            if (this.stats != null){
+                this.stats.errors.incrementAndGet();
+                this.stats.lastError = e.getMessage();
+            }
+        }
+
+        /**
+         * Termina la medición y registra los tiempos.
+         */
+        public void stop(){
+            if (!this.measured)
+                return;
+            long total = System.nanoTime() - this.start;
+            if (this.stats != null){
+                this.stats.total.record(total);
+                this.stats.acquire.record(this.acquire);
+                this.stats.prepare.record(this.prepare);
+                this.stats.execute.record(this.execute);
+                this.stats.fetch.record(this.fetch);
+                this.stats.render.record(this.render);
+                if (this.hit)
+                    this.stats.hits.incrementAndGet();
+                this.stats.rows.addAndGet(this.rows);
+                this.stats.affected.addAndGet(this.affected);
+                this.stats.bytes.addAndGet(this.bytes);
+            }
+            if (this.slowLog != null && !this.hit)
+                this.slowLog.stopped(this, total);
+        }
+
+        /**
+         * @return Base de datos de la consulta vigilada (ver watch()).
+         */
+        Database getDatabase(){
+            return this.database;
+        }
+
+        /**
+         * @return Texto SQL de la consulta vigilada.
+         */
+        String getSql(){
+            return this.sql;
+        }
+
+        /**
+         * @return Parámetros de la consulta vigilada.
+         */
+        Object[] getValues(){
+            return this.values;
+        }
+
+        /**
+         * @return El error de la consulta, null si no ha fallado.
+         */
+        Exception getError(){
+            return this.error;
+        }
+
+        /**
+         * @return Tiempos de cada fase en nanosegundos: conexión, 
+         * preparación, ejecución, lectura y dibujado.
+         */
+        long[] getPhases(){
+            return new long[]{this.acquire, this.prepare, this.execute, 
+                this.fetch, this.render};
+        }
+
+        /**
+         * @return Filas devueltas, filas afectadas y caracteres escritos.
+         */
+        long[] getCounts(){
+            return new long[]{this.rows, this.affected, this.bytes};
+        }
+
+        private long lap(){
+            long now = System.nanoTime();
+            long elapsed = now - this.mark;
+            this.mark = now;
+            return elapsed;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package dbaccess;
+
+import java.util.List;
+
+/**
+ * Interfaz JMX de las métricas de las consultas, registrada como
+ * <code>dbaccess:type=QueryMetrics</code> para poder consultarla con
+ * JConsole o VisualVM mientras se usa la aplicación.
+ * @author zelda
+ */
+public interface QueryMetricsMXBean {
+
+    /**
+     * @return True si se están registrando métricas.
+     */
+    boolean isEnabled();
+
+    /**
+     * @param enabled True para registrar métricas, false para dejar de hacerlo.
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * @return Número de consultas distintas registradas.
+     */
+    int getStatementCount();
+
+    /**
+     * @return Estadísticas de cada consulta, de la más lenta a la más rápida
+     * según su tiempo total acumulado.
+     */
+    List<StatementStatistics> getStatements();
+
+    /**
+     * Descarta todas las métricas registradas.
+     */
+    void reset();
+}
@@ -0,0 +1,297 @@
+package dbaccess;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Resultado de una consulta de selección leído completamente en memoria, con
+ * los nombres de las columnas y sus valores.
+ * <p>
+ * Los valores se guardan por columnas y con su tipo (ver ResultColumn): los
+ * números en arrays primitivos con un mapa de bits para los nulos y los
+ * textos que se repiten (categorías, ciudades...) codificados con un
+ * diccionario, de forma que un resultado grande ocupa una fracción de la
+ * memoria que ocuparía con un String por celda. Los valores se pueden leer
+ * como texto, igual que con <code>ResultSet.getString()</code>, o como
+ * números sin crear objetos.
+ * @author zelda
+ */
+public class QueryResult {
+
+    private final String[] labels;
+    private final ResultColumn[] columns;
+    private final int rowCount;
+    /**
+     * Orden de las filas si el resultado está ordenado, null si es el de la
+     * consulta. Las columnas se comparten con el resultado original.
+     */
+    private final int[] order;
+
+    /**
+     * Crea un resultado de texto a partir de sus filas.
+     * @param labels Nombres de las columnas.
+     * @param rows Valores de cada fila, en el mismo orden que las columnas.
+     */
+    public QueryResult(String[] labels, List<String[]> rows){
+        this.labels = labels;
+        this.columns = new ResultColumn[labels.length];
+        for (int i = 0; i < this.columns.length; i++){
+            ResultColumn column = new ResultColumn.DictionaryColumn(Types.VARCHAR);
+            for (String[] row : rows)
+                column = column.add(row[i]);
+            this.columns[i] = column.finish();
+        }
+        this.rowCount = rows.size();
+        this.order = null;
+    }
+
+    private QueryResult(String[] labels, ResultColumn[] columns, int rowCount,
+            int[] order){
+        this.labels = labels;
+        this.columns = columns;
+        this.rowCount = rowCount;
+        this.order = order;
+    }
+
+    /**
+     * Lee todas las filas restantes de un resultado.
+     * @param result El resultado de la consulta.
+     * @return El resultado en memoria.
+     * @throws SQLException
+     */
+    public static QueryResult read(ResultSet result) throws SQLException{
+        Builder builder = new Builder(result.getMetaData());
+        while (result.next())
+            builder.add(result);
+        return builder.build();
+    }
+
+    /**
+     * @return Número de columnas.
+     */
+    public int getColumnCount(){
+        return this.labels.length;
+    }
+
+    /**
+     * @return Número de filas.
+     */
+    public int getRowCount(){
+        return this.rowCount;
+    }
+
+    /**
+     * @param column Índice de la columna, empezando en 0.
+     * @return Nombre de la columna.
+     */
+    public String getLabel(int column){
+        return this.labels[column];
+    }
+
+    /**
+     * @return Nombres de las columnas.
+     */
+    public String[] getLabels(){
+        return this.labels.clone();
+    }
+
+    /**
+     * @param column Índice de la columna, empezando en 0.
+     * @return Tipo SQL de la columna (java.sql.Types), VARCHAR si el
+     * resultado se ha creado a partir de texto.
+     */
+    public int getColumnType(int column){
+        return this.columns[column].getType();
+    }
+
+    /**
+     * @param row Índice de la fila, empezando en 0.
+     * @param column Índice de la columna, empezando en 0.
+     * @return True si el valor es nulo.
+     */
+    public boolean isNull(int row, int column){
+        return this.columns[column].isNull(this.index(row));
+    }
+
+    /**
+     * @param row Índice de la fila, empezando en 0.
+     * @param column Índice de la columna, empezando en 0.
+     * @return Valor de la celda, null si es nulo.
+     */
+    public String getString(int row, int column){
+        return this.columns[column].getString(this.index(row));
+    }
+
+    /**
+     * @param row Índice de la fila, empezando en 0.
+     * @param column Índice de la columna, empezando en 0.
+     * @return Valor de la celda como entero (truncado), 0 si es nulo.
+     * @throws NumberFormatException Si la columna es de texto y el valor no
+     * es un número.
+     */
+    public long getLong(int row, int column){
+        return this.columns[column].getLong(this.index(row));
+    }
+
+    /**
+     * @param row Índice de la fila, empezando en 0.
+     * @param column Índice de la columna, empezando en 0.
+     * @return Valor de la celda como entero, 0 si es nulo.
+     * @throws NumberFormatException Si la columna es de texto y el valor no
+     * es un número.
+     */
+    public int getInt(int row, int column){
+        return (int)this.getLong(row, column);
+    }
+
+    /**
+     * @param row Índice de la fila, empezando en 0.
+     * @param column Índice de la columna, empezando en 0.
+     * @return Valor de la celda como número real, 0 si es nulo.
+     * @throws NumberFormatException Si la columna es de texto y el valor no
+     * es un número.
+     */
+    public double getDouble(int row, int column){
+        return this.columns[column].getDouble(this.index(row));
+    }
+
+    /**
+     * Copia los valores de una fila en un array, para poder reutilizarlo.
+     * @param row Índice de la fila, empezando en 0.
+     * @param values Array con tantas posiciones como columnas.
+     */
+    public void copyRow(int row, String[] values){
+        int index = this.index(row);
+        for (int i = 0; i < this.columns.length; i++)
+            values[i] = this.columns[i].getString(index);
+    }
+
+    /**
+     * Calcula el ancho necesario para mostrar cada columna, el de su nombre o
+     * el de su valor más largo (los valores nulos se muestran como "null").
+     * @return Ancho de cada columna.
+     */
+    public int[] getWidths(){
+        int[] widths = new int[this.labels.length];
+        for (int i = 0; i < widths.length; i++)
+            widths[i] = this.rowCount == 0 ? this.labels[i].length()
+                    : Math.max(this.labels[i].length(), this.columns[i].getWidth());
+        return widths;
+    }
+
+    /**
+     * Ordena el resultado por una columna, comparando los números como
+     * números. Los nulos van primero en orden ascendente.
+     * @param column Índice de la columna, empezando en 0.
+     * @param ascending True para ordenar de menor a mayor.
+     * @return El resultado ordenado, que comparte los valores con este.
+     */
+    public QueryResult sort(int column, boolean ascending){
+        int[] sorted = new int[this.rowCount];
+        for (int i = 0; i < sorted.length; i++)
+            sorted[i] = this.index(i);
+        ResultColumn key = this.columns[column];
+        int sign = ascending ? 1 : -1;
+        mergeSort(sorted, new int[sorted.length], 0, sorted.length, key, sign);
+        return new QueryResult(this.labels, this.columns, this.rowCount, sorted);
+    }
+
+    /**
+     * @param rows Número de filas.
+     * @return Las primeras filas del resultado, que comparten los valores con
+     * este.
+     */
+    QueryResult first(int rows){
+        int[] first = new int[Math.min(rows, this.rowCount)];
+        for (int i = 0; i < first.length; i++)
+            first[i] = this.index(i);
+        return new QueryResult(this.labels, this.columns, first.length, first);
+    }
+
+    private int index(int row){
+        if (row < 0 || row >= this.rowCount)
+            throw new IndexOutOfBoundsException("Fila " + row + " de "
+                    + this.rowCount);
+        return this.order == null ? row : this.order[row];
+    }
+
+    /**
+     * Ordenación estable de los índices de las filas sin crear objetos por
+     * cada comparación.
+     */
+    private static void mergeSort(int[] rows, int[] buffer, int from, int to,
+            ResultColumn key, int sign){
+        if (to - from < 2)
+            return;
+        int middle = (from + to) >>> 1;
+        mergeSort(rows, buffer, from, middle, key, sign);
+        mergeSort(rows, buffer, middle, to, key, sign);
+        if (sign * key.compare(rows[middle - 1], rows[middle]) <= 0)
+            return; // Ya están en orden.
+        System.arraycopy(rows, from, buffer, from, to - from);
+        int left = from, right = middle;
+        for (int i = from; i < to; i++){
+            if (right >= to || (left < middle
+                    && sign * key.compare(buffer[left], buffer[right]) <= 0))
+                rows[i] = buffer[left++];
+            else
+                rows[i] = buffer[right++];
+        }
+    }
+
+    /**
+     * Construye un resultado leyendo fila a fila de un ResultSet.
+     */
+    static class Builder {
+
+        private final String[] labels;
+        private final ResultColumn[] columns;
+        private int rowCount;
+
+        /**
+         * @param data Información de las columnas del resultado, de la que
+         * se obtiene el tipo de cada columna.
+         * @throws SQLException
+         */
+        Builder(ResultSetMetaData data) throws SQLException{
+            this.labels = new String[data.getColumnCount()];
+            this.columns = new ResultColumn[this.labels.length];
+            for (int i = 0; i < this.labels.length; i++){
+                this.labels[i] = data.getColumnLabel(i + 1);
+                this.columns[i] = ResultColumn.forType(data, i + 1);
+            }
+        }
+
+        /**
+         * Añade la fila actual del resultado.
+         * @param result El resultado, situado en la fila.
+         * @throws SQLException
+         */
+        void add(ResultSet result) throws SQLException{
+            for (int i = 0; i < this.columns.length; i++)
+                this.columns[i] = this.columns[i].read(result, i + 1);
+            this.rowCount++;
+        }
+
+        /**
+         * @return Número de filas añadidas.
+         */
+        int size(){
+            return this.rowCount;
+        }
+
+        /**
+         * @return El resultado con las filas añadidas. El constructor no se
+         * puede seguir usando.
+         */
+        QueryResult build(){
+            for (int i = 0; i < this.columns.length; i++)
+                this.columns[i] = this.columns[i].finish();
+            return new QueryResult(this.labels, this.columns, this.rowCount,
+                    null);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package dbaccess;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import utils.Configuration;
+
+/**
+ * Réplicas de lectura de una base de datos. Cada réplica se configura con
+ * los parámetros <b>replica.N.</b> (N desde 1) que sustituyen a los del
+ * primario, por ejemplo <b>replica.1.url</b> y <b>replica.1.port</b>, o
+ * <b>replica.1.file</b> para una copia de una base de datos SQLite, y tiene
+ * su propio pool de conexiones.
+ * <p>
+ * Cada <b>replica.checkInterval</b> segundos se comprueba en segundo plano
+ * cada réplica con la consulta de validación del dialecto y su tiempo de
+ * respuesta se suma a una media móvil exponencial (<b>replica.alpha</b> es
+ * el peso de cada medida, en tanto por ciento). Las lecturas eligen dos
+ * réplicas al azar y usan la de menor media, lo que reparte la carga sin que
+ * todas vayan a la misma.
+ * <p>
+ * Una réplica que falla <b>replica.maxFailures</b> veces seguidas, al
+ * conectar o en la comprobación, se expulsa durante
+ * <b>replica.ejectTime</b> segundos; pasado ese tiempo se vuelve a probar y
+ * si responde se readmite.
+ * <p>
+ * Con SQLite en modo WAL, si no hay réplicas, se usa como réplica un pool
+ * de <b>sqlite.readers</b> conexiones de solo lectura al mismo archivo (ver
+ * readers()): en WAL los lectores no bloquean al que escribe ni entre ellos.
+ * @author zelda
+ */
+class ReplicaSet {
+
+    private final List<Replica> replicas;
+    private final double alpha;
+    private final int maxFailures;
+    private final long ejectTime;
+    private final long interval;
+    private final boolean local;
+    private ScheduledExecutorService checker;
+
+    /**
+     * @param databases Una base de datos por réplica.
+     * @param config Configuración del primario.
+     * @param local True si las réplicas leen el mismo archivo que el 
+     * primario.
+     */
+    ReplicaSet(List<Database> databases, Properties config, boolean local){
+        List<Replica> list = new ArrayList<>();
+        for (int i = 0; i < databases.size(); i++)
+            list.add(new Replica(i + 1, databases.get(i)));
+        this.replicas = Collections.unmodifiableList(list);
+        this.alpha = Math.min(1, Math.max(0.01, Configuration.getInt(config,
+                "replica.alpha", 30) / 100.0));
+        this.maxFailures = Math.max(1, Configuration.getInt(config,
+                "replica.maxFailures", 3));
+        this.ejectTime = TimeUnit.SECONDS.toNanos(Math.max(1,
+                Configuration.getInt(config, "replica.ejectTime", 30)));
+        this.interval = Math.max(1, Configuration.getInt(config,
+                "replica.checkInterval", 5));
+        this.local = local;
+    }
+
+    /**
+     * Crea las réplicas indicadas en la configuración del primario.
+     * @param dbType Tipo de base de datos.
+     * @param config Configuración del primario.
+     * @return Las réplicas o null si no hay ninguna.
+     */
+    static ReplicaSet create(String dbType, Properties config){
+        List<Database> databases = new ArrayList<>();
+        for (int n = 1; hasReplica(config, n); n++)
+            databases.add(Database.create(dbType, 
+                    replicaConfig(config, "replica." + n + ".")));
+        return databases.isEmpty() ? null 
+                : new ReplicaSet(databases, config, false);
+    }
+
+    /**
+     * Crea el pool de lectores de una base de datos SQLite en modo WAL: 
+     * <b>sqlite.readers</b> conexiones de solo lectura (open_mode=1) al mismo
+     * archivo, que leen a la vez mientras el primario escribe.
+     * https://www.sqlite.org/wal.html
+     * @param dbType Tipo de base de datos.
+     * @param config Configuración del primario.
+     * @param driver Propiedades del driver del primario.
+     * @return Los lectores o null si no es SQLite, no está en modo WAL o 
+     * <b>sqlite.readers</b> es 0.
+     */
+    static ReplicaSet readers(String dbType, Properties config, 
+            Properties driver){
+        int readers = Configuration.getInt(config, "sqlite.readers", 4);
+        if (!(Dialect.forType(dbType) instanceof SQLiteDialect) || readers <= 0
+                || !"wal".equalsIgnoreCase(driver.getProperty("journal_mode")))
+            return null;
+        Properties reader = replicaConfig(config, "sqlite.reader.");
+        // journal_mode=WAL no escribe nada en una conexión de solo lectura:
+        // el archivo ya está en WAL desde que lo abre el primario.
+        reader.setProperty("driver.open_mode", "1");
+        reader.setProperty("pool.maxSize", String.valueOf(readers));
+        return new ReplicaSet(Collections.singletonList(
+                Database.create(dbType, reader)), config, true);
+    }
+
+    /**
+     * Configuración de una réplica: la del primario sin los parámetros de 
+     * réplicas, sustituyendo los que empiezan por el prefijo.
+     */
+    private static Properties replicaConfig(Properties config, String prefix){
+        Properties replica = new Properties();
+        for (String key : config.stringPropertyNames())
+            if (!key.startsWith("replica."))
+                replica.setProperty(key, config.getProperty(key));
+        for (String key : config.stringPropertyNames())
+            if (key.startsWith(prefix))
+                replica.setProperty(key.substring(prefix.length()),
+                        config.getProperty(key));
+        // Las lecturas se miden y registran en el primario.
+        replica.setProperty("metrics.enabled", "false");
+        replica.setProperty("slowlog.enabled", "false");
+        replica.setProperty("catalog.enabled", "false");
+        replica.setProperty("cache.enabled", "false");
+        replica.setProperty("sqlite.readers", "0");
+        return replica;
+    }
+
+    private static boolean hasReplica(Properties config, int n){
+        String prefix = "replica." + n + ".";
+        for (String key : config.stringPropertyNames())
+            if (key.startsWith(prefix))
+                return true;
+        return false;
+    }
+
+    /**
+     * @return True si las réplicas leen el mismo archivo que el primario y 
+     * ven sus escrituras en cuanto se confirman.
+     */
+    boolean isLocal(){
+        return this.local;
+    }
+
+    /**
+     * Obtiene una conexión de una de las réplicas sanas, probando con otra
+     * si no se puede conectar.
+     * @return La conexión o null si no hay ninguna réplica disponible.
+     */
+    Connection connect(){
+        this.start();
+        List<Replica> tried = new ArrayList<>();
+        Replica replica;
+        while ((replica = this.choose(tried)) != null){
+            try {
+                Connection conn = replica.database.connect();
+                if (conn != null){
+                    replica.failures.set(0);
+                    return conn;
+                }
+            } catch (SQLException e){
+                //e.printStackTrace();
+            }
+            this.failed(replica);
+            tried.add(replica);
+        }
+        return null;
+    }
+
+    /**
+     * Elige entre dos réplicas disponibles al azar la de menor tiempo medio.
+     * Las que todavía no se han medido tienen preferencia.
+     * @param excluded Réplicas que no se deben elegir.
+     * @return La réplica o null si no hay ninguna disponible.
+     */
+    private Replica choose(List<Replica> excluded){
+        List<Replica> available = new ArrayList<>();
+        long now = System.nanoTime();
+        for (Replica replica : this.replicas)
+            if (replica.isAvailable(now) && !excluded.contains(replica))
+                available.add(replica);
+        if (available.isEmpty())
+            return null;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Replica first = available.get(random.nextInt(available.size()));
+        if (available.size() == 1)
+            return first;
+        Replica second;
+        do {
+            second = available.get(random.nextInt(available.size()));
+        } while (second == first);
+        return first.latency <= second.latency ? first : second;
+    }
+
+    /**
+     * Cuenta un fallo de una réplica y la expulsa si ha llegado al máximo de
+     * fallos seguidos.
+     */
+    private void failed(Replica replica){
+        // Tras una expulsión basta un fallo para volver a expulsarla.
+        if (replica.failures.incrementAndGet() >= this.maxFailures
+                || replica.ejectedUntil != 0){
+            replica.ejectedUntil = System.nanoTime() + this.ejectTime;
+            replica.database.close();
+        }
+    }
+
+    /**
+     * Comprueba una réplica y actualiza su tiempo medio de respuesta.
+     */
+    private void check(Replica replica){
+        if (!replica.isAvailable(System.nanoTime()))
+            return; // Sigue expulsada.
+        replica.database.getPool(); // Abrir el pool no cuenta como respuesta.
+        long start = System.nanoTime();
+        try {
+            replica.database.probe();
+        } catch (SQLException | RuntimeException e){
+            this.failed(replica);
+            return;
+        }
+        double elapsed = System.nanoTime() - start;
+        // La primera comprobación carga clases y prepara la sentencia, no 
+        // se tiene en cuenta.
+        if (replica.checks++ > 0)
+            replica.latency = replica.latency == 0 ? elapsed
+                    : this.alpha * elapsed + (1 - this.alpha) * replica.latency;
+        replica.failures.set(0);
+        replica.ejectedUntil = 0;
+    }
+
+    /**
+     * Empieza las comprobaciones periódicas la primera vez.
+     */
+    private synchronized void start(){
+        if (this.checker != null)
+            return;
+        this.checker = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "replicas");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.checker.scheduleWithFixedDelay(() -> {
+            for (Replica replica : this.replicas)
+                this.check(replica);
+        }, 0, this.interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return Estado de cada réplica: número, si está disponible, tiempo
+     * medio de respuesta en milisegundos y fallos seguidos.
+     */
+    List<String[]> getStatus(){
+        List<String[]> status = new ArrayList<>();
+        long now = System.nanoTime();
+        for (Replica replica : this.replicas)
+            status.add(new String[]{String.valueOf(replica.number),
+                replica.isAvailable(now) ? "Disponible" : "Expulsada",
+                String.format("%.2f", replica.latency / 1e6),
+                String.valueOf(replica.failures.get())});
+        return status;
+    }
+
+    /**
+     * Detiene las comprobaciones y cierra los pools de las réplicas. Se
+     * vuelven a abrir con la siguiente conexión.
+     */
+    synchronized void close(){
+        if (this.checker != null){
+            this.checker.shutdownNow();
+            this.checker = null;
+        }
+        for (Replica replica : this.replicas)
+            replica.database.close();
+    }
+
+    /**
+     * Una réplica y sus medidas.
+     */
+    private static class Replica {
+
+        private final int number;
+        private final Database database;
+        private final AtomicInteger failures = new AtomicInteger();
+        /**
+         * Comprobaciones hechas, solo desde el hilo de las comprobaciones.
+         */
+        private long checks;
+        /**
+         * Media móvil del tiempo de respuesta en nanosegundos, 0 hasta la
+         * primera comprobación.
+         */
+        private volatile double latency;
+        /**
+         * Hora hasta la que está expulsada, 0 si no lo está.
+         */
+        private volatile long ejectedUntil;
+
+        Replica(int number, Database database){
+            this.number = number;
+            this.database = database;
+        }
+
+        /**
+         * @return True si no está expulsada o ya ha pasado el tiempo de
+         * expulsión y se puede volver a probar.
+         */
+        boolean isAvailable(long now){
+            long until = this.ejectedUntil;
+            return until == 0 || now - until >= 0;
+        }
+    }
+}
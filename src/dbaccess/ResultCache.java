@@ -0,0 +1,275 @@
+package dbaccess;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import utils.Configuration;
+
+/**
+ * Caché en memoria de resultados de consultas de selección, indexada por el
+ * texto SQL y los parámetros. Guarda como mucho <b>cache.size</b> resultados
+ * (100 por defecto), descartando el usado hace más tiempo, y cada uno caduca
+ * a los <b>cache.ttl</b> segundos (60 por defecto).
+ * <p>
+ * Cada resultado recuerda las tablas que ha leído la consulta, de forma que
+ * al modificar una tabla con un INSERT, UPDATE o DELETE se descartan todos
+ * los resultados que dependen de ella. Como una vista no se puede deducir del
+ * texto SQL, sus tablas se pueden indicar en la configuración con
+ * <b>cache.depends.&lt;vista&gt;</b>=tabla1,tabla2...
+ * @author zelda
+ */
+public class ResultCache {
+
+    private static final Pattern READ = Pattern.compile(
+            "\\b(?:FROM|JOIN)\\s+", Pattern.CASE_INSENSITIVE);
+    private static final Pattern WRITE = Pattern.compile(
+            "^\\s*(?:INSERT\\s+INTO|UPDATE|DELETE\\s+FROM|REPLACE\\s+INTO"
+            + "|MERGE\\s+INTO|TRUNCATE\\s+TABLE)\\s+([\\w$.\"`\\[\\]]+)",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern IDENTIFIER = Pattern.compile(
+            "([\\w$.\"`\\[\\]]+)(?:\\s+(?:AS\\s+)?(?!WHERE\\b|ORDER\\b|GROUP"
+            + "\\b|LIMIT\\b|JOIN\\b|INNER\\b|LEFT\\b|RIGHT\\b|FULL\\b|CROSS\\b"
+            + "|ON\\b|UNION\\b|HAVING\\b)[\\w$]+)?\\s*(,\\s*)?",
+            Pattern.CASE_INSENSITIVE);
+
+    private final int maxSize;
+    private final long ttl;
+    private final Map<String, Set<String>> depends = new LinkedHashMap<>();
+    private final Map<Map.Entry<String, List<Object>>, Cached> entries;
+    private long hits, misses, evictions, expirations, invalidations;
+
+    /**
+     * Crea la caché a partir de la configuración de la base de datos.
+     * @param config Propiedades de configuración, puede ser null.
+     */
+    public ResultCache(Properties config){
+        this.maxSize = Math.max(1, Configuration.getInt(config, "cache.size", 100));
+        this.ttl = TimeUnit.SECONDS.toMillis(
+                Configuration.getInt(config, "cache.ttl", 60));
+        if (config != null)
+            for (String key : config.stringPropertyNames())
+                if (key.startsWith("cache.depends."))
+                    this.depends.put(normalize(key.substring(14)),
+                            tableSet(config.getProperty(key).split(",")));
+        this.entries = new LinkedHashMap<Map.Entry<String, List<Object>>, Cached>(
+                16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<Map.Entry<String, List<Object>>, Cached> eldest){
+                if (size() <= ResultCache.this.maxSize)
+                    return false;
+                ResultCache.this.evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Busca el resultado de una consulta.
+     * @param query La consulta.
+     * @param values Parámetros en orden que la consulta.
+     * @return El resultado guardado o null si no está o ha caducado.
+     */
+    public synchronized QueryResult get(String query, Object[] values){
+        Map.Entry<String, List<Object>> key = key(query, values);
+        Cached cached = this.entries.get(key);
+        if (cached != null && cached.expires < System.currentTimeMillis()){
+            this.entries.remove(key);
+            this.expirations++;
+            cached = null;
+        }
+        if (cached == null){
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        return cached.result;
+    }
+
+    /**
+     * Guarda el resultado de una consulta.
+     * @param query La consulta.
+     * @param values Parámetros en orden que la consulta.
+     * @param result El resultado completo de la consulta.
+     */
+    public synchronized void put(String query, Object[] values, QueryResult result){
+        Set<String> tables = new HashSet<>();
+        for (String table : readTables(query)){
+            tables.add(table);
+            Set<String> base = this.depends.get(table);
+            if (base != null)
+                tables.addAll(base);
+        }
+        this.entries.put(key(query, values), new Cached(result, tables,
+                System.currentTimeMillis() + this.ttl));
+    }
+
+    /**
+     * Descarta los resultados que dependen de la tabla modificada por una
+     * consulta de inserción, actualización o eliminación.
+     * @param query La consulta que modifica la tabla.
+     */
+    public synchronized void invalidate(String query){
+        String table = writtenTable(query);
+        if (table == null){
+            // No sabemos qué tabla modifica, es más seguro vaciar la caché.
+            this.invalidations += this.entries.size();
+            this.entries.clear();
+            return;
+        }
+        Iterator<Cached> it = this.entries.values().iterator();
+        while (it.hasNext())
+            if (it.next().tables.contains(table)){
+                it.remove();
+                this.invalidations++;
+            }
+    }
+
+    /**
+     * Vacía la caché.
+     */
+    public synchronized void clear(){
+        this.entries.clear();
+    }
+
+    /**
+     * @return Número de resultados guardados.
+     */
+    public synchronized int size(){
+        return this.entries.size();
+    }
+
+    /**
+     * @return Consultas servidas desde la caché.
+     */
+    public synchronized long getHits(){
+        return this.hits;
+    }
+
+    /**
+     * @return Consultas que no estaban en la caché.
+     */
+    public synchronized long getMisses(){
+        return this.misses;
+    }
+
+    /**
+     * @return Proporción de consultas servidas desde la caché, entre 0 y 1.
+     */
+    public synchronized double getHitRatio(){
+        long total = this.hits + this.misses;
+        return total == 0 ? 0 : (double)this.hits / total;
+    }
+
+    /**
+     * @return Resultados descartados por falta de espacio.
+     */
+    public synchronized long getEvictions(){
+        return this.evictions;
+    }
+
+    /**
+     * @return Resultados descartados por haber caducado.
+     */
+    public synchronized long getExpirations(){
+        return this.expirations;
+    }
+
+    /**
+     * @return Resultados descartados al modificarse una tabla de la que
+     * dependían.
+     */
+    public synchronized long getInvalidations(){
+        return this.invalidations;
+    }
+
+    @Override
+    public synchronized String toString(){
+        return String.format("Caché: %d resultados, %d aciertos, %d fallos "
+                + "(%.1f%%), %d descartados por espacio, %d caducados, %d "
+                + "invalidados", this.entries.size(), this.hits, this.misses,
+                this.getHitRatio() * 100, this.evictions, this.expirations,
+                this.invalidations);
+    }
+
+    /**
+     * Obtiene las tablas que lee una consulta de selección.
+     * @param query La consulta.
+     * @return Nombres de las tablas en minúsculas y sin esquema.
+     */
+    static Set<String> readTables(String query){
+        Set<String> tables = new HashSet<>();
+        Matcher from = READ.matcher(query);
+        Matcher identifier = IDENTIFIER.matcher(query);
+        while (from.find()){
+            int position = from.end();
+            while (position < query.length()
+                    && identifier.region(position, query.length()).lookingAt()){
+                tables.add(normalize(identifier.group(1)));
+                if (identifier.group(2) == null)
+                    break;
+                position = identifier.end();
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Obtiene la tabla que modifica una consulta de inserción, actualización
+     * o eliminación.
+     * @param query La consulta.
+     * @return Nombre de la tabla en minúsculas y sin esquema, o null si no
+     * se reconoce la consulta.
+     */
+    static String writtenTable(String query){
+        Matcher matcher = WRITE.matcher(query);
+        return matcher.find() ? normalize(matcher.group(1)) : null;
+    }
+
+    private static String normalize(String name){
+        String[] parts = name.split("\\.");
+        return parts[parts.length - 1].replaceAll("[\"`\\[\\]]", "")
+                .trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> tableSet(String[] names){
+        Set<String> tables = new HashSet<>();
+        for (String name : names)
+            if (!name.trim().isEmpty())
+                tables.add(normalize(name.trim()));
+        return Collections.unmodifiableSet(tables);
+    }
+
+    private static Map.Entry<String, List<Object>> key(String query, Object[] values){
+        return new AbstractMap.SimpleImmutableEntry<String, List<Object>>(query,
+                values == null ? Collections.emptyList()
+                        : Arrays.asList(values.clone()));
+    }
+
+    /**
+     * Resultado guardado con su caducidad y las tablas de las que depende.
+     */
+    private static class Cached {
+
+        private final QueryResult result;
+        private final Set<String> tables;
+        private final long expires;
+
+        Cached(QueryResult result, Set<String> tables, long expires){
+            this.result = result;
+            this.tables = tables;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,692 @@
+package dbaccess;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columna de un resultado en memoria. Cada tipo de columna guarda sus valores
+ * en el array primitivo que le corresponde en lugar de un String por celda:
+ * los enteros en <code>int[]</code> o <code>long[]</code>, los decimales de
+ * escala fija como enteros escalados y los textos con pocos valores distintos
+ * codificados con un diccionario. Los nulos de las columnas numéricas se 
+ * marcan en un mapa de bits.
+ * <p>
+ * Los valores se leen de la fila actual del ResultSet según el tipo de
+ * ResultSetMetaData. Los textos se obtienen con la misma forma que devolvería
+ * <code>getString()</code>, por lo que las tablas se dibujan igual: los 
+ * reales (FLOAT, DOUBLE, REAL) se guardan con el texto del driver, ya que 
+ * Double.toString() no lo reproduce (1.0E10 en lugar de 10000000000), y los
+ * decimales se muestran en notación normal con su escala, como los envían 
+ * los servidores. Si una columna entera recibe un valor que no es entero
+ * (SQLite no comprueba el tipo declarado), pasa a ser de texto. Las columnas
+ * de texto de tipo numérico se ordenan por su valor.
+ * @author zelda
+ */
+abstract class ResultColumn {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    protected int size;
+    private long[] nulls = new long[1];
+
+    /**
+     * Crea la columna adecuada para el tipo de una columna del resultado.
+     * @param data Información de las columnas del resultado.
+     * @param index Índice de la columna, empezando en 1.
+     * @return La columna vacía.
+     * @throws SQLException
+     */
+    static ResultColumn forType(ResultSetMetaData data, int index)
+            throws SQLException{
+        switch (data.getColumnType(index)){
+            case Types.TINYINT:
+            case Types.SMALLINT:
+                return new IntColumn(data.getColumnType(index));
+            case Types.INTEGER:
+                // Los INT UNSIGNED de MySQL no caben en un int.
+                return data.isSigned(index) ? new IntColumn(Types.INTEGER)
+                        : new LongColumn(Types.INTEGER);
+            case Types.BIGINT:
+                return data.isSigned(index) ? new LongColumn(Types.BIGINT)
+                        : new DictionaryColumn(Types.BIGINT);
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                int scale = data.getScale(index);
+                int precision = data.getPrecision(index);
+                if (scale >= 0 && scale <= precision && precision > 0
+                        && precision <= 18)
+                    return new DecimalColumn(data.getColumnType(index), scale);
+                return new DictionaryColumn(data.getColumnType(index));
+            default:
+                return new DictionaryColumn(data.getColumnType(index));
+        }
+    }
+
+    /**
+     * @return Tipo SQL de la columna (java.sql.Types).
+     */
+    abstract int getType();
+
+    /**
+     * Añade el valor de la columna de la fila actual del resultado.
+     * @param result El resultado, situado en la fila.
+     * @param index Índice de la columna en el resultado, empezando en 1.
+     * @return La columna en la que se ha añadido, normalmente esta misma; si
+     * el valor no cabe en su tipo se devuelve una columna de texto con todos
+     * los valores anteriores.
+     * @throws SQLException
+     */
+    abstract ResultColumn read(ResultSet result, int index) throws SQLException;
+
+    /**
+     * Añade un valor de texto, solo en las columnas de texto.
+     * @param value El valor, puede ser null.
+     * @return La columna en la que se ha añadido (ver read()).
+     */
+    ResultColumn add(String value){
+        throw new UnsupportedOperationException("Columna de tipo "
+                + this.getType() + ", no de texto");
+    }
+
+    /**
+     * @param row Índice de la fila.
+     * @return El valor como texto, null si es nulo.
+     */
+    abstract String getString(int row);
+
+    /**
+     * @param row Índice de la fila.
+     * @return El valor como número, 0 si es nulo.
+     * @throws NumberFormatException Si es una columna de texto que no
+     * contiene un número.
+     */
+    abstract double getDouble(int row);
+
+    /**
+     * @param row Índice de la fila.
+     * @return El valor como entero (truncado), 0 si es nulo.
+     * @throws NumberFormatException Si es una columna de texto que no
+     * contiene un número.
+     */
+    long getLong(int row){
+        return (long)this.getDouble(row);
+    }
+
+    /**
+     * Compara dos valores de la columna, los nulos van primero.
+     * @return Negativo, cero o positivo como en Comparator.
+     */
+    abstract int compare(int a, int b);
+
+    /**
+     * @return Longitud del valor más largo como texto (4 para los nulos).
+     */
+    abstract int getWidth();
+
+    /**
+     * Ajusta los arrays al número de filas leídas.
+     * @return La columna definitiva, que puede ser de otro tipo si así ocupa
+     * menos memoria.
+     */
+    abstract ResultColumn finish();
+
+    /**
+     * @return Número de filas.
+     */
+    int size(){
+        return this.size;
+    }
+
+    /**
+     * @param row Índice de la fila.
+     * @return True si el valor es nulo.
+     */
+    boolean isNull(int row){
+        int word = row >>> 6;
+        return word < this.nulls.length && (this.nulls[word] & (1L << row)) != 0;
+    }
+
+    protected void setNull(int row){
+        if ((row >>> 6) >= this.nulls.length)
+            this.nulls = Arrays.copyOf(this.nulls,
+                    Math.max(this.nulls.length * 2, (row >>> 6) + 1));
+        this.nulls[row >>> 6] |= 1L << row;
+    }
+
+    protected void trimNulls(){
+        this.nulls = Arrays.copyOf(this.nulls, Math.max(1, (this.size + 63) >>> 6));
+    }
+
+    protected static int capacity(int current, int needed){
+        return Math.max(needed, Math.max(INITIAL_CAPACITY, current * 2));
+    }
+
+    protected int compareNulls(int a, int b){
+        return Boolean.compare(!this.isNull(a), !this.isNull(b));
+    }
+
+    /**
+     * @return True si el tipo SQL es numérico.
+     */
+    protected static boolean isNumeric(int type){
+        switch (type){
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.FLOAT:
+            case Types.REAL:
+            case Types.DOUBLE:
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Indica si un valor de getObject() es un entero de hasta 64 bits. El 
+     * tipo de ResultSetMetaData no basta: SQLite informa del tipo declarado
+     * de la columna (INTEGER para NUMERIC) aunque el valor sea real o texto,
+     * y getInt() o getLong() perderían los decimales.
+     */
+    protected static boolean isIntegral(Object value){
+        return value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte;
+    }
+
+    /**
+     * Convierte la columna en una de texto con los mismos valores.
+     */
+    protected ResultColumn toText(){
+        ResultColumn text = new DictionaryColumn(this.getType());
+        for (int row = 0; row < this.size; row++)
+            text = text.add(this.getString(row));
+        return text;
+    }
+
+    /**
+     * Número de dígitos de un entero, contando el signo.
+     */
+    protected static int digits(long value){
+        if (value == Long.MIN_VALUE)
+            return 20;
+        int length = value < 0 ? 2 : 1;
+        long rest = Math.abs(value);
+        while (rest >= 10){
+            rest /= 10;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Columna de enteros de hasta 32 bits.
+     */
+    static class IntColumn extends ResultColumn {
+
+        private final int type;
+        private int[] values = new int[0];
+
+        IntColumn(int type){
+            this.type = type;
+        }
+
+        @Override
+        int getType(){
+            return this.type;
+        }
+
+        @Override
+        ResultColumn read(ResultSet result, int index) throws SQLException{
+            Object value = result.getObject(index);
+            if (value != null && !(value instanceof Integer
+                    || value instanceof Short || value instanceof Byte))
+                // No es un entero, se guarda como texto.
+                return this.toText().read(result, index);
+            if (this.size == this.values.length)
+                this.values = Arrays.copyOf(this.values,
+                        capacity(this.values.length, this.size + 1));
+            if (value == null)
+                this.setNull(this.size);
+            else
+                this.values[this.size] = ((Number)value).intValue();
+            this.size++;
+            return this;
+        }
+
+        @Override
+        String getString(int row){
+            return this.isNull(row) ? null : Integer.toString(this.values[row]);
+        }
+
+        @Override
+        double getDouble(int row){
+            return this.values[row];
+        }
+
+        @Override
+        long getLong(int row){
+            return this.values[row];
+        }
+
+        @Override
+        int compare(int a, int b){
+            int nulls = this.compareNulls(a, b);
+            return nulls != 0 ? nulls
+                    : Integer.compare(this.values[a], this.values[b]);
+        }
+
+        @Override
+        int getWidth(){
+            int width = 0;
+            for (int row = 0; row < this.size; row++)
+                width = Math.max(width, this.isNull(row) ? 4
+                        : digits(this.values[row]));
+            return width;
+        }
+
+        @Override
+        ResultColumn finish(){
+            this.values = Arrays.copyOf(this.values, this.size);
+            this.trimNulls();
+            return this;
+        }
+    }
+
+    /**
+     * Columna de enteros de 64 bits.
+     */
+    static class LongColumn extends ResultColumn {
+
+        private final int type;
+        private long[] values = new long[0];
+
+        LongColumn(int type){
+            this.type = type;
+        }
+
+        @Override
+        int getType(){
+            return this.type;
+        }
+
+        @Override
+        ResultColumn read(ResultSet result, int index) throws SQLException{
+            Object value = result.getObject(index);
+            if (value != null && !isIntegral(value))
+                // No es un entero, se guarda como texto.
+                return this.toText().read(result, index);
+            if (this.size == this.values.length)
+                this.values = Arrays.copyOf(this.values,
+                        capacity(this.values.length, this.size + 1));
+            if (value == null)
+                this.setNull(this.size);
+            else
+                this.values[this.size] = ((Number)value).longValue();
+            this.size++;
+            return this;
+        }
+
+        @Override
+        String getString(int row){
+            return this.isNull(row) ? null : Long.toString(this.values[row]);
+        }
+
+        @Override
+        double getDouble(int row){
+            return this.values[row];
+        }
+
+        @Override
+        long getLong(int row){
+            return this.values[row];
+        }
+
+        @Override
+        int compare(int a, int b){
+            int nulls = this.compareNulls(a, b);
+            return nulls != 0 ? nulls
+                    : Long.compare(this.values[a], this.values[b]);
+        }
+
+        @Override
+        int getWidth(){
+            int width = 0;
+            for (int row = 0; row < this.size; row++)
+                width = Math.max(width, this.isNull(row) ? 4
+                        : digits(this.values[row]));
+            return width;
+        }
+
+        @Override
+        ResultColumn finish(){
+            this.values = Arrays.copyOf(this.values, this.size);
+            this.trimNulls();
+            return this;
+        }
+    }
+
+    /**
+     * Columna de decimales de escala fija (DECIMAL(p,s) con p hasta 18),
+     * guardados como enteros escalados: 12.50 con escala 2 se guarda como
+     * 1250. Se muestran siempre con su escala y sin exponente 
+     * (toPlainString()), igual que los devuelve el servidor en texto.
+     */
+    static class DecimalColumn extends ResultColumn {
+
+        private final int type;
+        private final int scale;
+        private long[] values = new long[0];
+
+        DecimalColumn(int type, int scale){
+            this.type = type;
+            this.scale = scale;
+        }
+
+        @Override
+        int getType(){
+            return this.type;
+        }
+
+        @Override
+        ResultColumn read(ResultSet result, int index) throws SQLException{
+            BigDecimal value = result.getBigDecimal(index);
+            long unscaled = 0;
+            if (value != null)
+                try {
+                    unscaled = value.setScale(this.scale).unscaledValue()
+                            .longValueExact();
+                } catch (ArithmeticException e){
+                    // No cabe sin perder precisión, se guarda como texto.
+                    ResultColumn text = this.toText();
+                    return text.read(result, index);
+                }
+            if (this.size == this.values.length)
+                this.values = Arrays.copyOf(this.values,
+                        capacity(this.values.length, this.size + 1));
+            if (value == null)
+                this.setNull(this.size);
+            this.values[this.size++] = unscaled;
+            return this;
+        }
+
+        @Override
+        String getString(int row){
+            return this.isNull(row) ? null
+                    : BigDecimal.valueOf(this.values[row], this.scale).toPlainString();
+        }
+
+        @Override
+        double getDouble(int row){
+            return BigDecimal.valueOf(this.values[row], this.scale).doubleValue();
+        }
+
+        @Override
+        int compare(int a, int b){
+            int nulls = this.compareNulls(a, b);
+            return nulls != 0 ? nulls
+                    : Long.compare(this.values[a], this.values[b]);
+        }
+
+        @Override
+        int getWidth(){
+            int width = 0;
+            for (int row = 0; row < this.size; row++){
+                if (this.isNull(row)){
+                    width = Math.max(width, 4);
+                    continue;
+                }
+                long value = this.values[row];
+                // Parte entera con al menos un 0, el punto y los decimales.
+                int length = Math.max(digits(value), this.scale + (value < 0 ? 2 : 1));
+                width = Math.max(width, this.scale > 0 ? length + 1 : length);
+            }
+            return width;
+        }
+
+        @Override
+        ResultColumn finish(){
+            this.values = Arrays.copyOf(this.values, this.size);
+            this.trimNulls();
+            return this;
+        }
+    }
+
+    /**
+     * Columna de texto codificada con un diccionario: cada valor distinto se
+     * guarda una sola vez y cada fila guarda su código en un char (el 0 es
+     * nulo). Si al terminar la mayoría de valores son distintos, o hay más
+     * de 65535, se convierte en una columna de Strings normal. En las de tipo
+     * numérico el valor de cada código se calcula una vez al terminar, para
+     * ordenar sin convertir el texto en cada comparación.
+     */
+    static class DictionaryColumn extends ResultColumn {
+
+        private static final int MAX_CODES = Character.MAX_VALUE;
+
+        private final int type;
+        private char[] codes = new char[0];
+        private List<String> dictionary = new ArrayList<>();
+        private Map<String, Character> index = new HashMap<>();
+        /**
+         * Valor de cada código de las columnas numéricas, null hasta 
+         * terminar o si no es numérica.
+         */
+        private double[] numbers;
+
+        DictionaryColumn(int type){
+            this.type = type;
+            this.dictionary.add(null);
+        }
+
+        @Override
+        int getType(){
+            return this.type;
+        }
+
+        @Override
+        ResultColumn read(ResultSet result, int index) throws SQLException{
+            return this.add(result.getString(index));
+        }
+
+        /**
+         * @return Esta columna o la de Strings si ya no caben más códigos.
+         */
+        @Override
+        ResultColumn add(String value){
+            char code = 0;
+            if (value != null){
+                Character known = this.index.get(value);
+                if (known == null){
+                    if (this.dictionary.size() > MAX_CODES)
+                        return this.toPlain().add(value);
+                    known = (char)this.dictionary.size();
+                    this.dictionary.add(value);
+                    this.index.put(value, known);
+                }
+                code = known;
+            }
+            if (this.size == this.codes.length)
+                this.codes = Arrays.copyOf(this.codes,
+                        capacity(this.codes.length, this.size + 1));
+            this.codes[this.size++] = code;
+            return this;
+        }
+
+        @Override
+        boolean isNull(int row){
+            return this.codes[row] == 0;
+        }
+
+        @Override
+        String getString(int row){
+            return this.dictionary.get(this.codes[row]);
+        }
+
+        @Override
+        double getDouble(int row){
+            if (this.numbers != null)
+                return this.numbers[this.codes[row]];
+            String value = this.getString(row);
+            return value == null ? 0 : Double.parseDouble(value.trim());
+        }
+
+        @Override
+        long getLong(int row){
+            String value = this.getString(row);
+            return value == null ? 0 : new BigDecimal(value.trim()).longValue();
+        }
+
+        @Override
+        int compare(int a, int b){
+            int nulls = this.compareNulls(a, b);
+            if (nulls != 0 || this.isNull(a))
+                return nulls; // Uno nulo o los dos.
+            if (this.numbers != null)
+                return Double.compare(this.getDouble(a), this.getDouble(b));
+            return this.getString(a).compareTo(this.getString(b));
+        }
+
+        @Override
+        int getWidth(){
+            boolean[] used = new boolean[this.dictionary.size()];
+            for (int row = 0; row < this.size; row++)
+                used[this.codes[row]] = true;
+            int width = used[0] ? 4 : 0;
+            for (int code = 1; code < used.length; code++)
+                if (used[code])
+                    width = Math.max(width, this.dictionary.get(code).length());
+            return width;
+        }
+
+        @Override
+        ResultColumn finish(){
+            if (this.dictionary.size() - 1 > this.size / 2)
+                return this.toPlain().finish();
+            this.codes = Arrays.copyOf(this.codes, this.size);
+            this.index = null; // Ya no se añaden más valores.
+            if (isNumeric(this.type))
+                try {
+                    double[] parsed = new double[this.dictionary.size()];
+                    for (int code = 1; code < parsed.length; code++)
+                        parsed[code] = Double.parseDouble(
+                                this.dictionary.get(code).trim());
+                    this.numbers = parsed;
+                } catch (NumberFormatException e){
+                    // Se ordena como texto.
+                }
+            return this;
+        }
+
+        private StringColumn toPlain(){
+            StringColumn plain = new StringColumn(this.type, this.size);
+            for (int row = 0; row < this.size; row++)
+                plain.add(this.getString(row));
+            return plain;
+        }
+    }
+
+    /**
+     * Columna de texto sin codificar, para las que casi no repiten valores.
+     * Las de tipo numérico guardan también el valor de cada fila al terminar,
+     * para ordenarlas.
+     */
+    static class StringColumn extends ResultColumn {
+
+        private final int type;
+        private String[] values;
+        private double[] numbers;
+
+        StringColumn(int type, int capacity){
+            this.type = type;
+            this.values = new String[capacity];
+        }
+
+        @Override
+        int getType(){
+            return this.type;
+        }
+
+        @Override
+        ResultColumn read(ResultSet result, int index) throws SQLException{
+            return this.add(result.getString(index));
+        }
+
+        @Override
+        ResultColumn add(String value){
+            if (this.size == this.values.length)
+                this.values = Arrays.copyOf(this.values,
+                        capacity(this.values.length, this.size + 1));
+            this.values[this.size++] = value;
+            return this;
+        }
+
+        @Override
+        boolean isNull(int row){
+            return this.values[row] == null;
+        }
+
+        @Override
+        String getString(int row){
+            return this.values[row];
+        }
+
+        @Override
+        double getDouble(int row){
+            if (this.numbers != null)
+                return this.numbers[row];
+            return this.values[row] == null ? 0
+                    : Double.parseDouble(this.values[row].trim());
+        }
+
+        @Override
+        long getLong(int row){
+            return this.values[row] == null ? 0
+                    : new BigDecimal(this.values[row].trim()).longValue();
+        }
+
+        @Override
+        int compare(int a, int b){
+            int nulls = this.compareNulls(a, b);
+            if (nulls != 0 || this.isNull(a))
+                return nulls; // Uno nulo o los dos.
+            if (this.numbers != null)
+                return Double.compare(this.numbers[a], this.numbers[b]);
+            return this.values[a].compareTo(this.values[b]);
+        }
+
+        @Override
+        int getWidth(){
+            int width = 0;
+            for (int row = 0; row < this.size; row++)
+                width = Math.max(width, this.values[row] == null ? 4
+                        : this.values[row].length());
+            return width;
+        }
+
+        @Override
+        ResultColumn finish(){
+            this.values = Arrays.copyOf(this.values, this.size);
+            if (isNumeric(this.type))
+                try {
+                    double[] parsed = new double[this.size];
+                    for (int row = 0; row < this.size; row++)
+                        parsed[row] = this.getDouble(row);
+                    this.numbers = parsed;
+                } catch (NumberFormatException e){
+                    // Se ordena como texto.
+                }
+            return this;
+        }
+    }
+}
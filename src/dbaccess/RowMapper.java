@@ -0,0 +1,28 @@
+package dbaccess;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Convierte la fila actual de un resultado en un objeto, leyendo cada 
+ * columna por su posición con el método de su tipo (getInt(), getLong(), 
+ * getDate()...) en lugar de pasar cada valor por getString(). Se escribe una
+ * vez junto a la consulta, así que no se busca ninguna columna por su nombre
+ * en cada fila (ver Database.list()).
+ * <pre>
+ * RowMapper&lt;Long&gt; max = result -&gt; result.getLong(1);
+ * </pre>
+ * @param <T> Clase de los objetos.
+ * @author zelda
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+    
+    /**
+     * @param result Resultado situado en la fila a convertir, no se debe 
+     * mover.
+     * @return El objeto de la fila.
+     * @throws SQLException 
+     */
+    T map(ResultSet result) throws SQLException;
+}
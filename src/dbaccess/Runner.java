@@ -0,0 +1,390 @@
+package dbaccess;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.function.Function;
+import utils.Configuration;
+import utils.Console;
+
+/**
+ * Realiza opciones de los menús sin interacción, indicadas en la línea de
+ * comandos o en un script, con las mismas implementaciones de Query que los
+ * menús. Las respuestas que pediría cada opción por consola se pasan como
+ * parámetros, en el orden en que se piden, y no se hacen pausas.
+ * <pre>
+ * java -jar dbaccess.jar --db SQLite --op search --param Nancy
+ * java -jar dbaccess.jar --script operaciones.txt --format jsonl
+ * </pre>
+ * Cada línea del script es una operación: base de datos, opción (su número o
+ * su nombre, ver Query.getOperations()) y parámetros, separados por espacios
+ * y entre comillas dobles si los contienen. Las líneas en blanco y las que
+ * empiezan por # se ignoran. Con <em>--script -</em> se lee de la entrada
+ * estándar.
+ * <p>
+ * La salida es la de los menús (<em>--format plain</em>) o una línea JSON
+ * por operación con su resultado, tiempo y salida (<em>--format jsonl</em>).
+ * Al final se muestra un resumen en la salida de errores.
+ * @author zelda
+ */
+public class Runner {
+
+    private static final Map<String, Function<Database, Query>> MENUS
+            = new LinkedHashMap<>();
+
+    static {
+        MENUS.put("MySQL", MySQL::new);
+        MENUS.put("SQLServer", SQLServer::new);
+        MENUS.put("PostgreSQL", PostgreSQL::new);
+        MENUS.put("SQLite", SQLite::new);
+    }
+
+    private final Map<String, Query> opened = new LinkedHashMap<>();
+    private final List<Database> databases = new ArrayList<>();
+    private final boolean json;
+    private final PrintStream out;
+    private final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+    private final PrintStream capture;
+    private long operations;
+    private long failures;
+
+    /**
+     * @param json True para escribir una línea JSON por operación.
+     */
+    public Runner(boolean json){
+        this.json = json;
+        this.out = System.out;
+        try {
+            this.capture = new PrintStream(this.captured, false, "UTF-8");
+        } catch (UnsupportedEncodingException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Ejecuta las operaciones indicadas en los argumentos.
+     * <ul>
+     *     <li><b>--db</b> Tipo de base de datos.</li>
+     *     <li><b>--op</b> Opción del menú, número o nombre.</li>
+     *     <li><b>--param</b> Respuesta a una pregunta de la opción, se puede
+     *     repetir.</li>
+     *     <li><b>--script</b> Archivo con una operación por línea, - para la
+     *     entrada estándar.</li>
+     *     <li><b>--format</b> <em>plain</em> (por defecto) o
+     *     <em>jsonl</em>.</li>
+     * </ul>
+     * @param args Argumentos de la línea de comandos.
+     * @return 0 si todas las operaciones se han realizado, 1 si alguna ha
+     * fallado, 2 si los argumentos no son válidos.
+     */
+    public static int run(String[] args){
+        String db = null, op = null, script = null, format = "plain";
+        List<String> params = new ArrayList<>();
+        for (int i = 0; i < args.length; i++){
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]){
+                case "--db":
+                    db = value;
+                    break;
+                case "--op":
+                    op = value;
+                    break;
+                case "--param":
+                    params.add(value);
+                    break;
+                case "--script":
+                    script = value;
+                    break;
+                case "--format":
+                    format = value;
+                    break;
+                default:
+                    System.err.println("Argumento no válido: " + args[i]);
+                    return 2;
+            }
+            if (value == null){
+                System.err.println("Falta el valor de " + args[i]);
+                return 2;
+            }
+            i++;
+        }
+        if ((script == null) == (db == null || op == null)
+                || !("plain".equals(format) || "jsonl".equals(format))){
+            System.err.println("Uso: --db tipo --op opción [--param valor]... "
+                    + "| --script archivo [--format plain|jsonl]");
+            return 2;
+        }
+        Runner runner = new Runner("jsonl".equals(format));
+        boolean interactive = Console.isInteractive();
+        Console.setInteractive(false);
+        long start = System.nanoTime();
+        try {
+            if (script == null)
+                runner.execute(0, db, op, params);
+            else
+                try (BufferedReader in = "-".equals(script)
+                        ? new BufferedReader(new InputStreamReader(System.in,
+                                StandardCharsets.UTF_8))
+                        : Files.newBufferedReader(Paths.get(script),
+                                StandardCharsets.UTF_8)){
+                    runner.execute(in);
+                } catch (IOException e){
+                    System.err.println("No se ha podido leer el script: "
+                            + e.getMessage());
+                    return 2;
+                }
+        } finally {
+            runner.close();
+            Console.setInteractive(interactive);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.println(String.format("%d operaciones en %.2f s (%.0f op/s)"
+                + ", %d con errores", runner.operations, seconds,
+                runner.operations / Math.max(seconds, 1e-9), runner.failures));
+        return runner.failures > 0 ? 1 : 0;
+    }
+
+    /**
+     * Ejecuta las operaciones de un script.
+     * @param script El script, una operación por línea.
+     * @throws IOException Si no se puede leer.
+     */
+    public void execute(BufferedReader script) throws IOException{
+        String line;
+        int number = 0;
+        while ((line = script.readLine()) != null){
+            number++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#"))
+                continue;
+            List<String> words = split(trimmed);
+            if (words.size() < 2){
+                this.report(number, words.get(0), "", false, 0, "",
+                        "falta la opción");
+                continue;
+            }
+            this.execute(number, words.get(0), words.get(1),
+                    words.subList(2, words.size()));
+        }
+    }
+
+    /**
+     * Ejecuta una operación.
+     * @param line Número de línea del script, 0 si no viene de un script.
+     * @param dbType Tipo de base de datos.
+     * @param operation Opción del menú, número o nombre.
+     * @param params Respuestas a las preguntas de la opción, en orden.
+     */
+    public void execute(int line, String dbType, String operation,
+            List<String> params){
+        long start = System.nanoTime();
+        String error = null;
+        long errors = errors();
+        Query menu = this.menu(dbType);
+        int option = menu != null ? option(menu, operation) : 0;
+        if (menu == null)
+            error = "base de datos no soportada";
+        else if (option == 0)
+            error = "opción no válida";
+        else {
+            Console.setInput(new StringReader(String.join("\n", params)));
+            if (this.json){
+                this.captured.reset();
+                System.setOut(this.capture);
+            }
+            try {
+                menu.run(option);
+            } catch (NoSuchElementException e){
+                error = "faltan parámetros";
+            } catch (RuntimeException e){
+                error = e.toString();
+            } finally {
+                if (this.json){
+                    this.capture.flush();
+                    System.setOut(this.out);
+                }
+            }
+            if (error == null && errors() > errors)
+                error = "la consulta ha fallado";
+        }
+        String output = this.json ? new String(this.captured.toByteArray(),
+                StandardCharsets.UTF_8) : "";
+        this.report(line, dbType, operation, error == null,
+                System.nanoTime() - start, output, error);
+    }
+
+    /**
+     * Cierra las bases de datos abiertas.
+     */
+    public void close(){
+        for (Database database : this.databases)
+            database.close();
+        this.databases.clear();
+        this.opened.clear();
+    }
+
+    /**
+     * Obtiene el menú de una base de datos, abriéndola la primera vez.
+     * @return El menú o null si el tipo no está soportado.
+     */
+    private Query menu(String dbType){
+        Query menu = this.opened.get(dbType.toLowerCase());
+        if (menu != null)
+            return menu;
+        String type = type(dbType);
+        Properties config = type != null ? Configuration.getConfig("config/"
+                + type + ".cfg") : null;
+        if (config == null)
+            return null;
+        Database database = Database.create(type, config);
+        this.databases.add(database);
+        menu = menu(type, database);
+        this.opened.put(dbType.toLowerCase(), menu);
+        return menu;
+    }
+
+    /**
+     * @param dbType Tipo de base de datos, sin distinguir mayúsculas.
+     * @return El tipo tal como se escribe en el nombre de su archivo de
+     * configuración, null si no hay menú para él.
+     */
+    static String type(String dbType){
+        for (String type : MENUS.keySet())
+            if (type.equalsIgnoreCase(dbType))
+                return type;
+        return null;
+    }
+
+    /**
+     * Crea el menú de una base de datos ya abierta, sin mostrarlo.
+     * @param type Tipo de base de datos (ver type()).
+     * @param database La base de datos.
+     * @return El menú.
+     */
+    static Query menu(String type, Database database){
+        return MENUS.get(type).apply(database);
+    }
+
+    private void report(int line, String dbType, String operation,
+            boolean ok, long nanos, String output, String error){
+        this.operations++;
+        if (!ok)
+            this.failures++;
+        if (!this.json){
+            if (!ok)
+                this.out.println((line > 0 ? "Línea " + line + ": " : "")
+                        + dbType + " " + operation + ": " + error);
+            return;
+        }
+        StringBuilder text = new StringBuilder("{\"line\":").append(line)
+                .append(",\"db\":");
+        json(text, dbType);
+        text.append(",\"op\":");
+        json(text, operation);
+        text.append(",\"ok\":").append(ok).append(",\"ms\":")
+                .append(String.format("%.3f", nanos / 1e6).replace(',', '.'));
+        if (error != null){
+            text.append(",\"error\":");
+            json(text, error);
+        }
+        text.append(",\"output\":");
+        json(text, output);
+        this.out.println(text.append('}'));
+    }
+
+    /**
+     * @return Número de la opción indicada por número o por nombre, 0 si no
+     * existe.
+     */
+    private static int option(Query menu, String operation){
+        String[] names = menu.getOperations();
+        for (int i = 0; i < names.length; i++)
+            if (names[i].equalsIgnoreCase(operation))
+                return i + 1;
+        try {
+            int number = Integer.parseInt(operation.trim());
+            return number >= 1 && number <= names.length ? number : 0;
+        } catch (NumberFormatException e){
+            return 0;
+        }
+    }
+
+    /**
+     * @return Consultas fallidas desde que se inició la aplicación, según las
+     * métricas.
+     */
+    private static long errors(){
+        long errors = 0;
+        for (StatementStatistics stats : QueryMetrics.getDefault().getStatements())
+            errors += stats.getErrors();
+        return errors;
+    }
+
+    /**
+     * Separa una línea en palabras por espacios, respetando las comillas
+     * dobles ("" dentro de comillas es una comilla).
+     */
+    static List<String> split(String line){
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean quoted = false, inWord = false;
+        for (int i = 0; i < line.length(); i++){
+            char c = line.charAt(i);
+            if (quoted){
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"'){
+                    word.append('"');
+                    i++;
+                } else if (c == '"')
+                    quoted = false;
+                else
+                    word.append(c);
+            } else if (c == '"'){
+                quoted = inWord = true;
+            } else if (Character.isWhitespace(c)){
+                if (inWord)
+                    words.add(word.toString());
+                word.setLength(0);
+                inWord = false;
+            } else {
+                word.append(c);
+                inWord = true;
+            }
+        }
+        if (inWord)
+            words.add(word.toString());
+        return words;
+    }
+
+    private static void json(StringBuilder out, String text){
+        out.append('"');
+        for (int i = 0; i < text.length(); i++){
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\')
+                out.append('\\').append(c);
+            else if (c == '\n')
+                out.append("\\n");
+            else if (c == '\r')
+                out.append("\\r");
+            else if (c == '\t')
+                out.append("\\t");
+            else if (c < 0x20)
+                out.append(String.format("\\u%04x", (int)c));
+            else
+                out.append(c);
+        }
+        out.append('"');
+    }
+}
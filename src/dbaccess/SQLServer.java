@@ -1,29 +1,58 @@
 package dbaccess;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.InputMismatchException;
 import utils.Console;
 import utils.Configuration;
 import java.util.Properties;
 
 /**
- * Clase que trabaja con una base de datos SQLServer que contiene informacin de
- * empresa de venta de productos informticos.
+ * Clase que trabaja con una base de datos SQLServer que contiene información de
+ * empresa de venta de productos informáticos.
  * @author zelda
  */
 public class SQLServer implements Query {
     
+    private static final String INSERT = "INSERT INTO Componente VALUES(?,?,?,?);";
+    private static final String UPDATE = "UPDATE Componente SET precio = ? "
+            + "WHERE clave = ?;";
+    private static final String DELETE = "DELETE FROM Componente WHERE clave = ?;";
+    private static final String SEARCH = "SELECT clave, descripcion, precio, "
+            + "CodTipo FROM Componente WHERE clave = ?;";
+    private static final String EXPORT = "SELECT clave, descripcion, precio, "
+            + "CodTipo FROM Componente;";
+    /**
+     * Sentencias del menú que se pueden preparar por adelantado (ver Warmup).
+     */
+    static final String[] STATEMENTS = {INSERT, UPDATE, DELETE, SEARCH, EXPORT};
+
     Database mssql;
     
     public SQLServer(){
         this.load();
         this.menu();
+        Warmup.release(this.mssql);
     }
     
     /**
-     * Carga los datos de configuracin de la base de datos desde un archivo externo.
+     * Trabaja con una base de datos ya abierta sin mostrar el menú, para 
+     * realizar sus opciones con run() (ver Runner).
+     * @param database La base de datos.
+     */
+    SQLServer(Database database){
+        this.mssql = database;
+    }
+    
+    /**
+     * Carga los datos de configuración de la base de datos desde un archivo externo,
+     * o usa la base de datos ya calentada al iniciar la aplicación (ver Warmup).
      */
     public void load(){
-        Properties config = Configuration.loadConfig("config/SQLServer.cfg");
+        this.mssql = Warmup.get("SQLServer");
+        if (this.mssql != null)
+            return;
+        Properties config = Configuration.getConfig("config/SQLServer.cfg");
         this.mssql = new Database( 
                config.getProperty("url"),
                config.getProperty("port"),
@@ -32,96 +61,138 @@ public class SQLServer implements Query {
                config.getProperty("password"),
                "SQLServer"
         );
+        this.mssql.configure(config);
     }
     
     /**
-     * Muestra el menu con los diferentes acciones que sobre el catlogo de 
+     * Muestra el menu con los diferentes acciones que sobre el catálogo de 
      * componentes.
      */
     public void menu(){
         byte option = 0;
-        int[] sizes;
-        Object[] values;
         String[] mainMenu = { 
-            "Aadir un componente al catlogo",
+            "Añadir un componente al catálogo",
             "Modificar el precio de un componente",
-            "Eliminar un componente del catlogo",
-            "Buscar componente en el catlogo",
-            "Mostrar catlogo de componentes"
+            "Eliminar un componente del catálogo",
+            "Buscar componente en el catálogo",
+            "Mostrar catálogo de componentes",
+            "Exportar el catálogo a un archivo",
+            "Importar componentes desde un archivo CSV"
         };
         do {
-            Console.showMenu("SQL Server: Empresa informtica", mainMenu);
+            Console.showMenu("SQL Server: Empresa informática", mainMenu);
             try {
-                option = (byte)Console.readNumber(Console.eof + "Escoge una opcin: ", "byte");
+                option = (byte)Console.readNumber(Console.eof + "Escoge una opción: ", "byte");
                 System.out.println();
-                switch(option) {
-                    case 1:
-                        this.mssql.query("INSERT INTO Componente VALUES(?,?,?,?);",
-                                this.entryValues());
-                        Console.toContinue();
-                        break;
-                    case 2:
-                        this.mssql.query("UPDATE Componente SET precio = ? WHERE"
-                                + " clave = ?;", this.updateValues());
-                        Console.toContinue();
-                        break;
-                    case 3:
-                        this.mssql.query("DELETE FROM Componente WHERE clave = ?;",
-                                this.deleteValues());
-                        Console.toContinue();
-                        break;
-                    case 4:
-                        values = this.searchValues();
-                        sizes = this.mssql.loadSizeByQuery("SELECT "
-                                + "MAX(LEN(clave)) as clave, "
-                                + "MAX(LEN(descripcion)) as descripcion, "
-                                + "MAX(LEN(precio)) as precio, "
-                                + "MAX(LEN(CodTipo))as CodTipo, "
-                                + "COUNT(clave) FROM Componente "
-                                + "WHERE clave = ?;", values);
-                        this.mssql.select("SELECT "
-                                + "clave, "
-                                + "descripcion, "
-                                + "precio, "
-                                + "CodTipo FROM Componente WHERE clave = ?;", 
-                                "Componente", sizes, values);
-                        Console.toContinue();
-                        break;
-                    case 5:
-                        sizes = this.mssql.loadSizeByQuery("SELECT "
-                                + "MAX(LEN(clave)) as clave, "
-                                + "MAX(LEN(descripcion)) as descripcion, "
-                                + "MAX(LEN(precio)) as precio, "
-                                + "MAX(LEN(CodTipo))as CodTipo, "
-                                + "COUNT(clave) FROM Componente;");
-                        this.mssql.select("SELECT "
-                                + "clave, "
-                                + "descripcion, "
-                                + "precio, "
-                                + "CodTipo FROM Componente;", "Componente", sizes);
-                        Console.toContinue();
-                        break;
-                }
+                this.run(option);
             } catch (InputMismatchException e) {
-                System.out.println(Console.eof + "Opcin no vlida, intente lo de nuevo..." + Console.eof);
+                System.out.println(Console.eof + "Opción no válida, intente lo de nuevo..." + Console.eof);
                 option = 1;
             }
         } while (Console.inRange((int)option, 1, mainMenu.length));
     }
     
     /**
-     * Solcita al usuario los datos para la insercin de un nevo artculo al 
-     * catlogo.
+     * Realiza una de las opciones del menú.
+     * @param option Número de la opción.
+     */
+    @Override
+    public void run(int option){
+        switch(option) {
+            case 1:
+                this.mssql.query(INSERT, this.entryValues());
+                Console.toContinue();
+                break;
+            case 2:
+                this.mssql.query(UPDATE, this.updateValues());
+                Console.toContinue();
+                break;
+            case 3:
+                this.mssql.query(DELETE, this.deleteValues());
+                Console.toContinue();
+                break;
+            case 4:
+                this.mssql.select(SEARCH, "Componente", this.searchValues(), 
+                        Component.MAPPER, Component.LABELS, Component::cells);
+                Console.toContinue();
+                break;
+            case 5:
+                this.mssql.browse("SELECT "
+                        + "clave, "
+                        + "descripcion, "
+                        + "precio, "
+                        + "CodTipo FROM Componente", "clave", true, 
+                        "Componente");
+                Console.toContinue();
+                break;
+            case 6:
+                this.mssql.export(EXPORT, new Param[0], this.exportFile());
+                Console.toContinue();
+                break;
+            case 7:
+                this.mssql.load("Componente", this.importFile());
+                Console.toContinue();
+                break;
+        }
+    }
+    
+    @Override
+    public String[] getOperations(){
+        return new String[]{"insert", "update", "delete", "search", "list", "export",
+            "import"};
+    }
+    
+    @Override
+    public LoadGenerator.Workload getWorkload(){
+        return new LoadGenerator.Workload(INSERT, UPDATE, SEARCH, DELETE, 
+                Component.MAPPER){
+            @Override
+            protected Param[] insertValues(long row){
+                return new Param[]{Param.of(this.key(row)), Param.of(
+                        "Componente de prueba del generador de carga"), 
+                    Param.of(10.0 + row % 100), Param.of(1)};
+            }
+            
+            @Override
+            protected Param[] updateValues(long row, long id){
+                return new Param[]{Param.of(20.0 + row % 100), 
+                    Param.of(this.key(row))};
+            }
+            
+            @Override
+            protected Param[] searchValues(long row, long id){
+                return new Param[]{Param.of(this.key(row))};
+            }
+            
+            @Override
+            protected Param[] deleteValues(long row, long id){
+                return new Param[]{Param.of(this.key(row))};
+            }
+            
+            /**
+             * Clave de 20 caracteres como máximo.
+             */
+            private String key(long row){
+                return "L" + this.tag + "-" + row;
+            }
+        };
+    }
+    
+    /**
+     * Solcita al usuario los datos para la inserción de un núevo artículo al 
+     * catálogo.
      * @return Array con los valores introducidos por el usuario.
      */
     @Override
-    public Object[] entryValues(){
-        Object[] values = new Object[4];
-        values[1] = Console.validString("Escribe una descripcin del componente:"
-                + " ", 255);
-        values[0] = Console.validString("Escribe la clave del producto: ", 20);
-        values[2] = Console.validDouble("Escribe el precio del producto: ");
-        values[3] = getTypes();
+    public Param[] entryValues(){
+        Param[] values = new Param[4];
+        values[1] = Param.of(Console.validString("Escribe una descripción del "
+                + "componente: ", 255));
+        values[0] = Param.of(Console.validString("Escribe la clave del "
+                + "producto: ", 20));
+        values[2] = Param.of(Console.validDouble("Escribe el precio del "
+                + "producto: "));
+        values[3] = Param.of(getTypes());
         return values;
     }
     
@@ -135,15 +206,15 @@ public class SQLServer implements Query {
             "Altavoces",
             "Cables y Adaptadores",
             "Discos Duros",
-            "Fuentes de alimentacin",
-            "Impresoras Mutifuncin",
+            "Fuentes de alimentación",
+            "Impresoras Mutifunción",
             "Memorias RAM",
             "Ordenadores premontados",
-            "Porttiles",
+            "Portátiles",
             "Ratones",
             "Software",
             "Tablets",
-            "Tarjeta grficas",
+            "Tarjeta gráficas",
             "Teclados",
             "Torres de PC",
             "Otros"
@@ -186,7 +257,7 @@ public class SQLServer implements Query {
                         return 75;
                 }
             } catch (InputMismatchException e) {
-                System.out.println(Console.eof + "Tipo no vlido, intente lo de "
+                System.out.println(Console.eof + "Tipo no válido, intente lo de "
                         + "nuevo..." + Console.eof);
                 value = 1;
             }
@@ -196,42 +267,88 @@ public class SQLServer implements Query {
     
     /**
      * Solicita al usuario la clave del componente a buscar.
-     * @return La clave del artculo que se quiere encontrar.
+     * @return La clave del artículo que se quiere encontrar.
      */
     @Override
-    public Object[] searchValues(){
-        Object[] values = new Object[1];
-        values[0] = Console.validString("Escribe la clave del producto que desea"
-                + " buscar: ", 20);
+    public Param[] searchValues(){
+        Param[] values = new Param[1];
+        values[0] = Param.of(Console.validString("Escribe la clave del producto"
+                + " que desea buscar: ", 20));
         return values;
     }
     
     /**
      * Solicita al usuario la clave del producto a modificar y el nuevo precio.
-     * @return Array con los valores necesario para la modificacin.
+     * @return Array con los valores necesario para la modificación.
      */
     @Override
-    public Object[] updateValues(){
-        Object[] values = new Object[2];
-        values[1] = Console.validString("Escribe la clave del producto que desea"
-                + " cambiar: ", 20);
-        values[0] = Console.validDouble("Escribe el nuevo precio del artculo: ");
+    public Param[] updateValues(){
+        Param[] values = new Param[2];
+        values[1] = Param.of(Console.validString("Escribe la clave del producto"
+                + " que desea cambiar: ", 20));
+        values[0] = Param.of(Console.validDouble("Escribe el nuevo precio del "
+                + "artículo: "));
         return values;
     }
     
     /**
-     * Solicita al usuario la clave del artculo que se desea eliminar.
+     * Solicita al usuario la clave del artículo que se desea eliminar.
      * @return Array con los valores facilitador por el usuario. Devuelve NULL 
-     * si el usuario no confirma la eliminacin del artculo.
+     * si el usuario no confirma la eliminación del artículo.
      */
     @Override
-    public Object[] deleteValues(){
-        Object[] values = new Object[1];
-        values[0] = Console.validString("Escribe la clave del producto a eliminar:"
-                + " ", 20);
-        if(Console.makeSure("Los datos almacenados se perdern Est seguro?"))
+    public Param[] deleteValues(){
+        Param[] values = new Param[1];
+        values[0] = Param.of(Console.validString("Escribe la clave del producto"
+                + " a eliminar: ", 20));
+        if(Console.makeSure("Los datos almacenados se perderán ¿Está seguro?"))
             return values;
         else
             return null;
     }
+    
+    /**
+     * Componente del catálogo.
+     */
+    static final class Component {
+        
+        static final String[] LABELS = {"clave", "descripcion", "precio", 
+            "CodTipo"};
+        static final RowMapper<Component> MAPPER = Component::read;
+        
+        final String key;
+        final String description;
+        final Double price;
+        final Integer type;
+        
+        Component(String key, String description, Double price, Integer type){
+            this.key = key;
+            this.description = description;
+            this.price = price;
+            this.type = type;
+        }
+        
+        /**
+         * Lee las columnas de SEARCH por su posición.
+         */
+        static Component read(ResultSet result) throws SQLException{
+            String key = result.getString(1);
+            String description = result.getString(2);
+            double price = result.getDouble(3);
+            boolean noPrice = result.wasNull();
+            int type = result.getInt(4);
+            return new Component(key, description, noPrice ? null : price, 
+                    result.wasNull() ? null : type);
+        }
+        
+        /**
+         * El precio se muestra como lo devuelve getString() del driver de SQL
+         * Server para FLOAT (Double.toString()).
+         */
+        String[] cells(){
+            return new String[]{this.key, this.description, 
+                this.price == null ? null : this.price.toString(), 
+                this.type == null ? null : this.type.toString()};
+        }
+    }
 }
\ No newline at end of file
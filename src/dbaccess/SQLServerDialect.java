@@ -0,0 +1,307 @@
+package dbaccess;
+
+import com.microsoft.sqlserver.jdbc.ISQLServerBulkData;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopy;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopyOptions;
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+import com.microsoft.sqlserver.jdbc.SQLServerDataSource;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+import utils.Configuration;
+
+/**
+ * Dialecto de SQL Server (Microsoft JDBC Driver).
+ * https://docs.microsoft.com/es-es/sql/connect/jdbc/setting-the-connection-properties?view=sql-server-ver15
+ * @author zelda
+ */
+public class SQLServerDialect implements Dialect {
+    
+    @Override
+    public String getName(){
+        return "SQLServer";
+    }
+    
+    /**
+     * <ul>
+     *     <li>sendStringParametersAsUnicode=false - Los parámetros de texto se 
+     *     envían como varchar y no como nvarchar, si no el servidor tiene que
+     *     convertir la columna y las búsquedas por índice sobre columnas 
+     *     varchar (como Componente.clave) se convierten en recorridos.</li>
+     *     <li>useBulkCopyForBatchInsert - Los lotes de INSERT se envían con la
+     *     API de copia masiva.</li>
+     *     <li>responseBuffering=adaptive - Lee la respuesta según se necesita
+     *     en lugar de cargarla entera en memoria.</li>
+     * </ul>
+     */
+    @Override
+    public Properties getDefaults(Properties config){
+        Properties driver = new Properties();
+        driver.setProperty("sendStringParametersAsUnicode", "false");
+        driver.setProperty("useBulkCopyForBatchInsert", String.valueOf(
+                Configuration.getBoolean(config, "batch.rewrite", true)));
+        if (Configuration.getBoolean(config, "select.streaming", true))
+            driver.setProperty("responseBuffering", "adaptive");
+        return driver;
+    }
+    
+    /**
+     * El DataSource de SQL Server no permite asignar propiedades por nombre, 
+     * así que se añaden a la URL de conexión.
+     */
+    @Override
+    public Connection connect(String server, int port, String db, String login,
+            String password, Properties driver) throws SQLException{
+        SQLServerDataSource dsSQLServer = new SQLServerDataSource();
+        StringBuilder url = new StringBuilder("jdbc:sqlserver://");
+        for (String name : driver.stringPropertyNames())
+            url.append(';').append(name).append('=')
+                    .append(driver.getProperty(name));
+        dsSQLServer.setURL(url.toString());
+        dsSQLServer.setServerName(server);
+        if (port != 0)
+            dsSQLServer.setPortNumber(port);
+        dsSQLServer.setDatabaseName(db);
+        dsSQLServer.setUser(login);
+        dsSQLServer.setPassword(password);
+        return dsSQLServer.getConnection();
+    }
+    
+    /**
+     * SQL Server no tiene LIMIT, se usa OFFSET ... FETCH (SQL Server 2012 o
+     * posterior), que necesita el ORDER BY.
+     */
+    @Override
+    public String limit(String query, int rows){
+        return query + " OFFSET 0 ROWS FETCH NEXT " + rows + " ROWS ONLY";
+    }
+    
+    /**
+     * SQL Server no tiene EXPLAIN: con SHOWPLAN_XML activado las consultas no
+     * se ejecutan y devuelven su plan estimado en XML. Con analyze se usa
+     * STATISTICS XML, que ejecuta la consulta, dentro de una transacción que
+     * se deshace, y añade al final el plan con las filas reales.
+     * https://docs.microsoft.com/sql/t-sql/statements/set-showplan-xml-transact-sql
+     */
+    @Override
+    public String explain(Connection conn, String query, Object[] values, 
+            boolean analyze) throws SQLException{
+        String option = analyze ? "STATISTICS XML" : "SHOWPLAN_XML";
+        boolean autoCommit = conn.getAutoCommit();
+        if (analyze && autoCommit)
+            conn.setAutoCommit(false);
+        String plan = "";
+        try (Statement settings = conn.createStatement()){
+            settings.execute("SET " + option + " ON");
+            try (PreparedStatement stmt = conn.prepareStatement(query)){
+                Param.bind(stmt, values);
+                boolean isResult = stmt.execute();
+                while (isResult || stmt.getUpdateCount() != -1){
+                    if (isResult)
+                        try (ResultSet result = stmt.getResultSet()){
+                            // El plan es el único valor del último resultado.
+                            if (result.getMetaData().getColumnCount() == 1
+                                    && result.next())
+                                plan = result.getString(1);
+                        }
+                    isResult = stmt.getMoreResults();
+                }
+            } finally {
+                settings.execute("SET " + option + " OFF");
+            }
+        } finally {
+            if (analyze){
+                conn.rollback();
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+        return plan;
+    }
+    
+    @Override
+    public String quote(String identifier){
+        StringBuilder quoted = new StringBuilder();
+        for (String part : identifier.split("\\.")){
+            if (quoted.length() > 0)
+                quoted.append('.');
+            quoted.append('[').append(part.trim().replace("]", "]]")).append(']');
+        }
+        return quoted.toString();
+    }
+    
+    /**
+     * Carga el archivo con SQLServerBulkCopy, que envía las filas con el 
+     * protocolo de copia masiva (el mismo que bcp) por lotes de batchSize 
+     * filas. Los tipos de las columnas se leen de la tabla para convertir el
+     * texto del CSV.
+     * https://docs.microsoft.com/es-es/sql/connect/jdbc/using-bulk-copy-with-the-jdbc-driver?view=sql-server-ver15
+     */
+    @Override
+    public long bulkLoad(Connection conn, String table, CsvFile csv, 
+            int batchSize) throws SQLException, IOException{
+        String[] columns = csv.getColumns();
+        StringBuilder sql = new StringBuilder("SELECT TOP 0 ");
+        for (int i = 0; i < columns.length; i++)
+            sql.append(i > 0 ? ", " : "").append(this.quote(columns[i]));
+        sql.append(" FROM ").append(this.quote(table));
+        CsvRecord record;
+        try (
+                Statement stmt = conn.createStatement();
+                ResultSet result = stmt.executeQuery(sql.toString());
+            ){
+            record = new CsvRecord(csv, result.getMetaData());
+        }
+        SQLServerBulkCopyOptions options = new SQLServerBulkCopyOptions();
+        options.setBatchSize(batchSize);
+        options.setBulkCopyTimeout(0);
+        options.setTableLock(true);
+        try (SQLServerBulkCopy copy = new SQLServerBulkCopy(
+                conn.unwrap(SQLServerConnection.class))){
+            copy.setBulkCopyOptions(options);
+            copy.setDestinationTableName(this.quote(table));
+            for (int i = 0; i < columns.length; i++)
+                copy.addColumnMapping(i + 1, columns[i]);
+            copy.writeToServer(record);
+        } catch (SQLException e){
+            if (record.error != null)
+                throw record.error; // El error al leer el archivo.
+            throw e;
+        }
+        if (record.error != null)
+            throw record.error;
+        return record.rows;
+    }
+    
+    /**
+     * Filas del CSV convertidas a los tipos de las columnas de la tabla, en
+     * la forma que las lee SQLServerBulkCopy.
+     */
+    private static class CsvRecord implements ISQLServerBulkData {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final transient CsvFile csv;
+        private final String[] names;
+        private final int[] types;
+        private final int[] precisions;
+        private final int[] scales;
+        private String[] row;
+        private long rows;
+        private transient IOException error;
+        
+        CsvRecord(CsvFile csv, ResultSetMetaData data) throws SQLException{
+            this.csv = csv;
+            this.names = new String[data.getColumnCount()];
+            this.types = new int[this.names.length];
+            this.precisions = new int[this.names.length];
+            this.scales = new int[this.names.length];
+            for (int i = 0; i < this.names.length; i++){
+                this.names[i] = data.getColumnName(i + 1);
+                this.types[i] = data.getColumnType(i + 1);
+                this.precisions[i] = data.getPrecision(i + 1);
+                this.scales[i] = data.getScale(i + 1);
+            }
+        }
+        
+        @Override
+        public Set<Integer> getColumnOrdinals(){
+            Set<Integer> ordinals = new LinkedHashSet<>();
+            for (int i = 1; i <= this.names.length; i++)
+                ordinals.add(i);
+            return ordinals;
+        }
+        
+        @Override
+        public String getColumnName(int column){
+            return this.names[column - 1];
+        }
+        
+        @Override
+        public int getColumnType(int column){
+            return this.types[column - 1];
+        }
+        
+        @Override
+        public int getPrecision(int column){
+            return this.precisions[column - 1];
+        }
+        
+        @Override
+        public int getScale(int column){
+            return this.scales[column - 1];
+        }
+        
+        @Override
+        public boolean next() throws SQLException{
+            try {
+                this.row = this.csv.next();
+            } catch (IOException e){
+                this.error = e;
+                throw new SQLException("No se ha podido leer el archivo", e);
+            }
+            if (this.row == null)
+                return false;
+            if (this.row.length != this.names.length)
+                throw new SQLException("La fila " + (this.rows + 1) + " tiene "
+                        + this.row.length + " valores y la cabecera " 
+                        + this.names.length);
+            this.rows++;
+            return true;
+        }
+        
+        @Override
+        public Object[] getRowData() throws SQLException{
+            Object[] values = new Object[this.row.length];
+            for (int i = 0; i < values.length; i++){
+                String value = this.row[i];
+                try {
+                    values[i] = value == null ? null : convert(value.trim(), 
+                            this.types[i], value);
+                } catch (IllegalArgumentException e){
+                    throw new SQLException("Valor no válido en la fila " 
+                            + this.rows + ", columna " + this.names[i] + ": " 
+                            + value, e);
+                }
+            }
+            return values;
+        }
+        
+        /**
+         * Convierte el texto al tipo Java que espera la copia masiva, las
+         * fechas y el texto se pasan tal cual.
+         */
+        private static Object convert(String trimmed, int type, String value){
+            switch (type){
+                case Types.BIT:
+                case Types.BOOLEAN:
+                    return trimmed.equals("1") || trimmed.equalsIgnoreCase("true");
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                    return Short.valueOf(trimmed);
+                case Types.INTEGER:
+                    return Integer.valueOf(trimmed);
+                case Types.BIGINT:
+                    return Long.valueOf(trimmed);
+                case Types.DECIMAL:
+                case Types.NUMERIC:
+                    return new BigDecimal(trimmed);
+                case Types.REAL:
+                    return Float.valueOf(trimmed);
+                case Types.FLOAT:
+                case Types.DOUBLE:
+                    return Double.valueOf(trimmed);
+                default:
+                    return value;
+            }
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package dbaccess;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
 import java.util.InputMismatchException;
 import java.util.Properties;
 import utils.Configuration;
@@ -9,28 +11,59 @@ import utils.Console;
 
 /**
  * Clase que trabajar con una base de datos local de SQLite3 que contiene una 
- * tabla con informacin relativa a los empleados de un negocio.
+ * tabla con información relativa a los empleados de un negocio.
  * @author zelda
  */
 public class SQLite implements Query {
     
+    private static final String INSERT = "INSERT INTO Employees(FirstName, "
+            + "LastName, HireDate, Address, City, HomePhone) VALUES (?,?,?,?,?,?)";
+    private static final String UPDATE = "UPDATE Employees SET Address = ?, "
+            + "City = ? WHERE EmployeeID = ?;";
+    private static final String DELETE = "DELETE FROM Employees WHERE "
+            + "EmployeeID = ?;";
+    private static final String SEARCH = "SELECT EmployeeID, FirstName, LastName, "
+            + "HireDate, Address, City, HomePhone FROM Employees WHERE "
+            + "FirstName = ?;";
+    private static final String EXPORT = "SELECT EmployeeID, FirstName, LastName, "
+            + "HireDate, Address, City, HomePhone FROM Employees;";
+    /**
+     * Sentencias del menú que se pueden preparar por adelantado (ver Warmup).
+     */
+    static final String[] STATEMENTS = {INSERT, UPDATE, DELETE, SEARCH, EXPORT};
+
     Database sqlite;
     
     public SQLite(){
         this.load();
         this.menu();
+        Warmup.release(this.sqlite);
+    }
+    
+    /**
+     * Trabaja con una base de datos ya abierta sin mostrar el menú, para 
+     * realizar sus opciones con run() (ver Runner).
+     * @param database La base de datos.
+     */
+    SQLite(Database database){
+        this.sqlite = database;
     }
     
     /**
-     * Carga los datos de configuracin de la base de datos desde un archivo externo.
+     * Carga los datos de configuración de la base de datos desde un archivo externo,
+     * o usa la base de datos ya calentada al iniciar la aplicación (ver Warmup).
      */
     public void load(){
-        Properties config = Configuration.loadConfig("config/SQLite.cfg");
+        this.sqlite = Warmup.get("SQLite");
+        if (this.sqlite != null)
+            return;
+        Properties config = Configuration.getConfig("config/SQLite.cfg");
         this.sqlite = new Database( 
                config.getProperty("path"),
                config.getProperty("file"),
                "SQLite"
         );
+        this.sqlite.configure(config);
     }
     
     /**
@@ -39,104 +72,132 @@ public class SQLite implements Query {
      */
     public void menu(){
         byte option = 0;
-        int[] sizes;
-        Object[] values;
         String[] mainMenu = { 
-            "Aadir un empleado a la base de datos",
-            "Cambiar la direccin de un empleado",
+            "Añadir un empleado a la base de datos",
+            "Cambiar la dirección de un empleado",
             "Dar de baja a un empleado",
             "Buscar un empleado",
-            "Mostrar el listado actual de empleados"
+            "Mostrar el listado actual de empleados",
+            "Exportar el listado de empleados a un archivo",
+            "Importar empleados desde un archivo CSV"
         };
         do {
-            Console.showMenu("SQLite: Gestin de empleados", mainMenu);
+            Console.showMenu("SQLite: Gestión de empleados", mainMenu);
             try {
-                option = (byte)Console.readNumber(Console.eof + "Escoge una opcin: ", "byte");
+                option = (byte)Console.readNumber(Console.eof + "Escoge una opción: ", "byte");
                 System.out.println();
-                switch(option) {
-                    case 1:
-                        this.sqlite.query("INSERT INTO Employees(FirstName, "
-                                + "LastName, HireDate, Address, City, HomePhone)"
-                                + " VALUES (?,?,?,?,?,?)", this.entryValues());
-                        Console.toContinue();
-                        break;
-                    case 2:
-                        this.sqlite.query("UPDATE Employees SET Address = ?, "
-                                + "City = ? WHERE EmployeeID = ?;", 
-                                this.updateValues());
-                        Console.toContinue();
-                        break;
-                    case 3:
-                        this.sqlite.query("DELETE FROM Employees WHERE "
-                                + "EmployeeID = ?;", this.deleteValues());
-                        Console.toContinue();
-                        break;
-                    case 4:
-                        values = this.searchValues();
-                        sizes = this.sqlite.loadSizeByQuery("SELECT "
-                                + "MAX(LENGTH(EmployeeID)) as EmployeeID, "
-                                + "MAX(LENGTH(FirstName)) as FirstName, "
-                                + "MAX(LENGTH(LastName)) as LastName, "
-                                + "MAX(LENGTH(HireDate)) as HireDate, "
-                                + "MAX(LENGTH(Address)) as Address, "
-                                + "MAX(LENGTH(City)) as City, "
-                                + "MAX(LENGTH(HomePhone)) as HomePhone, "
-                                + "COUNT(EMployeeID)"
-                                + "FROM Employees WHERE FirstName = ?;", values);
-                        this.sqlite.select("SELECT "
-                                + "EmployeeID, "
-                                + "FirstName, "
-                                + "LastName, "
-                                + "HireDate, "
-                                + "Address, "
-                                + "City, "
-                                + "HomePhone "
-                                + "FROM Employees WHERE FirstName = ?;", 
-                                "Employees", sizes, values);
-                        Console.toContinue();
-                        break;
-                    case 5:
-                        sizes = this.sqlite.loadSizeByQuery("SELECT "
-                                + "MAX(LENGTH(EmployeeID)) as EmployeeID, "
-                                + "MAX(LENGTH(FirstName)) as FirstName, "
-                                + "MAX(LENGTH(LastName)) as LastName, "
-                                + "MAX(LENGTH(HireDate)) as HireDate, "
-                                + "MAX(LENGTH(Address)) as Address, "
-                                + "MAX(LENGTH(City)) as City, "
-                                + "MAX(LENGTH(HomePhone)) as HomePhone, "
-                                + "COUNT(EmployeeID) FROM Employees;");
-                        this.sqlite.select("SELECT EmployeeID, FirstName, "
-                                + "LastName, HireDate, Address, City, HomePhone "
-                                + "FROM Employees;", "Employees", sizes);                        
-                        Console.toContinue();
-                        break;                       
-                }
+                this.run(option);
             } catch (InputMismatchException e) {
-                System.out.println(Console.eof + "Opcin no vlida, intente lo de nuevo..." + Console.eof);
+                System.out.println(Console.eof + "Opción no válida, intente lo de nuevo..." + Console.eof);
                 option = 1;
             }
         } while (Console.inRange((int)option, 1, mainMenu.length));
     }
     
     /**
-     * Solicita al usuario los datos necesario para aadir un nuevo empleado.
+     * Realiza una de las opciones del menú.
+     * @param option Número de la opción.
+     */
+    @Override
+    public void run(int option){
+        switch(option) {
+            case 1:
+                this.sqlite.query(INSERT, this.entryValues());
+                Console.toContinue();
+                break;
+            case 2:
+                this.sqlite.query(UPDATE, this.updateValues());
+                Console.toContinue();
+                break;
+            case 3:
+                this.sqlite.query(DELETE, this.deleteValues());
+                Console.toContinue();
+                break;
+            case 4:
+                this.sqlite.select(SEARCH, "Employees", this.searchValues(), 
+                        Employee.MAPPER, Employee.LABELS, Employee::cells);
+                Console.toContinue();
+                break;
+            case 5:
+                this.sqlite.browse("SELECT EmployeeID, FirstName, "
+                        + "LastName, HireDate, Address, City, HomePhone "
+                        + "FROM Employees", "EmployeeID", true, "Employees");                        
+                Console.toContinue();
+                break;                       
+            case 6:
+                this.sqlite.export(EXPORT, new Param[0], this.exportFile());
+                Console.toContinue();
+                break;
+            case 7:
+                this.sqlite.load("Employees", this.importFile());
+                Console.toContinue();
+                break;
+        }
+    }
+    
+    @Override
+    public String[] getOperations(){
+        return new String[]{"insert", "update", "delete", "search", "list", "export",
+            "import"};
+    }
+    
+    @Override
+    public LoadGenerator.Workload getWorkload(){
+        return new LoadGenerator.Workload(INSERT, UPDATE, SEARCH, DELETE, 
+                Employee.MAPPER){
+            @Override
+            protected Param[] insertValues(long row){
+                return new Param[]{Param.of(this.firstName(row)), 
+                    Param.of("Carga"), Param.of(LocalDate.now()), 
+                    Param.of("Calle de prueba " + row), Param.of("Madrid"), 
+                    Param.of("600000000")};
+            }
+            
+            /**
+             * El ID lo genera la base de datos al insertar.
+             */
+            @Override
+            protected Param[] updateValues(long row, long id){
+                return new Param[]{Param.of("Calle actualizada " + row), 
+                    Param.of("Sevilla"), Param.of(id)};
+            }
+            
+            @Override
+            protected Param[] searchValues(long row, long id){
+                return new Param[]{Param.of(this.firstName(row))};
+            }
+            
+            @Override
+            protected Param[] deleteValues(long row, long id){
+                return new Param[]{Param.of(id)};
+            }
+            
+            private String firstName(long row){
+                return "L" + this.tag + "-" + row;
+            }
+        };
+    }
+    
+    /**
+     * Solicita al usuario los datos necesario para añadir un nuevo empleado.
      * @return Array con los valores introducidos por el usuario.
      */
     @Override
-    public Object[] entryValues(){
-        Object[] values = new Object[6];
-        values[0] = Console.readLine("Introduce el nombre del nuevo empleado: ")
-                .trim();
-        values[1] = Console.readLine("Introduce los apellidos del nuevo empleado: ")
-                .trim();
-        // Aadimos la dechade insercin del empleado.
-        DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        values[2] = LocalDateTime.now().format(dateFormat);
-        values[3] = Console.readLine("Introduce la direccin de residencia del "
-                + "empleado: ").trim();
-        values[4] = Console.readLine("Introduce ahora la ciudad: ").trim();
-        values[5] = Console.validString("Por ltimo, Introduce el telfono del "
-                + "empleado: ", 15);
+    public Param[] entryValues(){
+        Param[] values = new Param[6];
+        values[0] = Param.of(Console.readLine("Introduce el nombre del nuevo "
+                + "empleado: ").trim());
+        values[1] = Param.of(Console.readLine("Introduce los apellidos del "
+                + "nuevo empleado: ").trim());
+        // Añadimos la fecha de inserción del empleado, se guarda como texto
+        // yyyy-MM-dd (ver SQLiteDialect).
+        values[2] = Param.of(LocalDate.now());
+        values[3] = Param.of(Console.readLine("Introduce la dirección de "
+                + "residencia del empleado: ").trim());
+        values[4] = Param.of(Console.readLine("Introduce ahora la ciudad: ")
+                .trim());
+        values[5] = Param.of(Console.validString("Por último, Introduce el "
+                + "teléfono del empleado: ", 15));
         return values;
     }
     
@@ -145,39 +206,91 @@ public class SQLite implements Query {
      * @return Array con los valores introducidos por el usuario.
      */
     @Override
-    public Object[] searchValues(){
-        Object[] values = new Object[1];
-        values[0] = Console.readLine("Introduce el nombre del empleado que desea"
-                + " buscar: ").trim();
+    public Param[] searchValues(){
+        Param[] values = new Param[1];
+        values[0] = Param.of(Console.readLine("Introduce el nombre del empleado"
+                + " que desea buscar: ").trim());
         return values;
     }
     
     /**
-     * Solicita al usuario el ID del empleado para modificar su direccin.
+     * Solicita al usuario el ID del empleado para modificar su dirección.
      * @return Array con los valores introducidos por el usuario.
      */
     @Override
-    public Object[] updateValues(){
-        Object[] values = new Object[3];
-        values[2] = Console.validInt("Introduce el ID del empleado a modificar: ");
-        values[0] = Console.readLine("Introduce la nueva direccin del empleado: ")
-                .trim();
-        values[1] = Console.readLine("Introduce la ciudad: ").trim();
+    public Param[] updateValues(){
+        Param[] values = new Param[3];
+        values[2] = Param.of(Console.validInt("Introduce el ID del empleado a "
+                + "modificar: "));
+        values[0] = Param.of(Console.readLine("Introduce la nueva dirección del"
+                + " empleado: ").trim());
+        values[1] = Param.of(Console.readLine("Introduce la ciudad: ").trim());
         return values;
     }
     
     /**
      * Solicita al usuario el ID que se desea eliminar.
      * @return Array con los valores facilitador por el usuario. Devuelve NULL 
-     * si el usuario no confirma la eliminacin del empleado.
+     * si el usuario no confirma la eliminación del empleado.
      */
     @Override 
-    public Object[] deleteValues(){
-        Object[] values = new Object[1];
-        values[0] = Console.validInt("Introduce el ID del empleado a eliminar: ");
-        if(Console.makeSure("Los datos almacenados se perdern Est seguro?"))
+    public Param[] deleteValues(){
+        Param[] values = new Param[1];
+        values[0] = Param.of(Console.validInt("Introduce el ID del empleado a "
+                + "eliminar: "));
+        if(Console.makeSure("Los datos almacenados se perderán ¿Está seguro?"))
             return values;
         else
             return null;
     }
+    
+    /**
+     * Empleado del negocio.
+     */
+    static final class Employee {
+        
+        static final String[] LABELS = {"EmployeeID", "FirstName", "LastName",
+            "HireDate", "Address", "City", "HomePhone"};
+        static final RowMapper<Employee> MAPPER = Employee::read;
+        
+        final long id;
+        final String firstName;
+        final String lastName;
+        final LocalDate hireDate;
+        final String address;
+        final String city;
+        final String homePhone;
+        
+        Employee(long id, String firstName, String lastName, LocalDate hireDate,
+                String address, String city, String homePhone){
+            this.id = id;
+            this.firstName = firstName;
+            this.lastName = lastName;
+            this.hireDate = hireDate;
+            this.address = address;
+            this.city = city;
+            this.homePhone = homePhone;
+        }
+        
+        /**
+         * Lee las columnas de SEARCH por su posición. La fecha se convierte 
+         * con el formato yyyy-MM-dd del driver (ver SQLiteDialect).
+         */
+        static Employee read(ResultSet result) throws SQLException{
+            long id = result.getLong(1);
+            String firstName = result.getString(2);
+            String lastName = result.getString(3);
+            Date hireDate = result.getDate(4);
+            return new Employee(id, firstName, lastName, hireDate == null ? null
+                    : hireDate.toLocalDate(), result.getString(5), 
+                    result.getString(6), result.getString(7));
+        }
+        
+        String[] cells(){
+            return new String[]{Long.toString(this.id), this.firstName, 
+                this.lastName, this.hireDate == null ? null 
+                        : this.hireDate.toString(), this.address, this.city, 
+                this.homePhone};
+        }
+    }
 }
\ No newline at end of file
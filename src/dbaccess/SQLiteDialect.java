@@ -0,0 +1,75 @@
+package dbaccess;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+/**
+ * Dialecto de SQLite (xerial sqlite-jdbc).
+ * https://github.com/xerial/sqlite-jdbc
+ * @author zelda
+ */
+public class SQLiteDialect implements Dialect {
+    
+    @Override
+    public String getName(){
+        return "SQLite";
+    }
+    
+    /**
+     * Pragmas recomendados: diario WAL, para que las lecturas no bloqueen
+     * las escrituras, con synchronous=NORMAL, que en WAL solo sincroniza el
+     * disco en los checkpoints; 16 MB de caché de páginas por conexión 
+     * (cache_size negativo son KB), 256 MB del archivo mapeados en memoria,
+     * tablas temporales en memoria y 5 segundos de espera si la base de 
+     * datos está bloqueada en lugar de fallar con SQLITE_BUSY. Se cambian
+     * con <b>driver.journal_mode</b>, <b>driver.cache_size</b>, etc.
+     * https://www.sqlite.org/pragma.html
+     * <p>
+     * Las fechas de los parámetros (setDate()) se guardan como texto 
+     * yyyy-MM-dd, igual que las de Northwind, en lugar de en milisegundos.
+     */
+    @Override
+    public Properties getDefaults(Properties config){
+        Properties driver = new Properties();
+        driver.setProperty("journal_mode", "WAL");
+        driver.setProperty("synchronous", "NORMAL");
+        driver.setProperty("cache_size", "-16000");
+        driver.setProperty("mmap_size", "268435456");
+        driver.setProperty("temp_store", "MEMORY");
+        driver.setProperty("busy_timeout", "5000");
+        driver.setProperty("date_class", "TEXT");
+        driver.setProperty("date_string_format", "yyyy-MM-dd");
+        return driver;
+    }
+    
+    /**
+     * Las propiedades del driver son los pragmas de SQLite.
+     * @param server Ruta de la carpeta con la base de datos.
+     * @param db Nombre del archivo de la base de datos.
+     */
+    @Override
+    public Connection connect(String server, int port, String db, String login,
+            String password, Properties driver) throws SQLException{
+        /** setDataBaseName() no funciona!!!
+         * https://stackoverflow.com/questions/41230234/using-datasource-to-connect-to-sqlite-with-xerial-sqlite-jdbc-driver
+         * https://stackoverflow.com/questions/1525444/how-to-connect-sqlite-with-java
+         */
+        SQLiteDataSource dsLite = new SQLiteDataSource(new SQLiteConfig(driver));
+        dsLite.setUrl(dsLite.getUrl() + server + db);
+        return dsLite.getConnection();
+    }
+    
+    /**
+     * EXPLAIN en SQLite muestra el programa de la máquina virtual, el plan
+     * legible es EXPLAIN QUERY PLAN.
+     * https://www.sqlite.org/eqp.html
+     */
+    @Override
+    public String explain(Connection conn, String query, Object[] values, 
+            boolean analyze) throws SQLException{
+        return Dialect.plan(conn, "EXPLAIN QUERY PLAN " + query, values);
+    }
+}
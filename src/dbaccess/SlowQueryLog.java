@@ -0,0 +1,233 @@
+package dbaccess;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import utils.Configuration;
+
+/**
+ * Registro de consultas lentas. Cada consulta que tarda más de
+ * <b>slowlog.threshold</b> milisegundos, o que falla, se guarda en un archivo
+ * con su texto SQL, sus parámetros, el tiempo de cada fase, las filas y el
+ * error, junto con su plan de ejecución obtenido con la herramienta de cada
+ * sistema gestor (ver Dialect.explain()).
+ * <p>
+ * El plan se obtiene y el archivo se escribe en un hilo aparte, para no
+ * retrasar más la consulta lenta. Cuando el archivo supera
+ * <b>slowlog.maxSize</b> bytes se renombra a <em>.1</em> (el <em>.1</em> a
+ * <em>.2</em>...) y se empieza uno nuevo, guardando como mucho
+ * <b>slowlog.files</b> archivos antiguos.
+ * @author zelda
+ */
+class SlowQueryLog {
+
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern(
+            "yyyy-MM-dd HH:mm:ss.SSS");
+    private static final String[] PHASES = {"conexión", "preparar",
+        "ejecutar", "leer", "dibujar"};
+    /**
+     * Un solo hilo para todos los registros, que escribe las entradas en el
+     * orden en que llegan.
+     */
+    private static final ThreadPoolExecutor WRITER = new ThreadPoolExecutor(1,
+            1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(100), task -> {
+                Thread thread = new Thread(task, "slowlog");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private static final Map<Path, RollingFile> FILES = new HashMap<>();
+
+    private final String dbType;
+    private final long threshold;
+    private final boolean explain;
+    private final boolean analyze;
+    private final RollingFile file;
+
+    /**
+     * @param dbType Tipo de base de datos.
+     * @param config Configuración de la base de datos.
+     */
+    SlowQueryLog(String dbType, Properties config){
+        this.dbType = dbType;
+        this.threshold = TimeUnit.MILLISECONDS.toNanos(Math.max(0,
+                Configuration.getInt(config, "slowlog.threshold", 1000)));
+        this.explain = Configuration.getBoolean(config, "slowlog.explain", true);
+        this.analyze = Configuration.getBoolean(config, "slowlog.analyze", false);
+        this.file = file(Paths.get(config.getProperty("slowlog.file",
+                "logs/slow-queries.log").trim()),
+                Math.max(1024, Configuration.getInt(config, "slowlog.maxSize",
+                        1 << 20)),
+                Math.max(0, Configuration.getInt(config, "slowlog.files", 5)));
+    }
+
+    /**
+     * Crea el registro de una base de datos si está activado
+     * (<b>slowlog.enabled</b>, desactivado si no se indica en la 
+     * configuración).
+     * @param dbType Tipo de base de datos.
+     * @param config Configuración de la base de datos.
+     * @return El registro o null si no está activado.
+     */
+    static SlowQueryLog create(String dbType, Properties config){
+        return Configuration.getBoolean(config, "slowlog.enabled", false)
+                ? new SlowQueryLog(dbType, config) : null;
+    }
+
+    /**
+     * Recibe una consulta terminada y la guarda si ha superado el umbral o
+     * ha fallado.
+     * @param timing Cronómetro de la consulta.
+     * @param total Tiempo total de la consulta en nanosegundos.
+     */
+    void stopped(QueryMetrics.Timing timing, long total){
+        if (total < this.threshold && timing.getError() == null)
+            return;
+        String entry = this.entry(timing, total);
+        boolean plan = this.explain && timing.getError() == null
+                && timing.getValues() != null;
+        try {
+            WRITER.execute(() -> this.file.write(plan ? entry
+                    + this.plan(timing) : entry));
+        } catch (RejectedExecutionException e){
+            // Demasiadas entradas pendientes, se guarda sin el plan.
+            this.file.write(entry + "Plan: no obtenido, demasiadas consultas "
+                    + "lentas pendientes." + System.lineSeparator());
+        }
+    }
+
+    /**
+     * Datos de la consulta, sin el plan.
+     */
+    private String entry(QueryMetrics.Timing timing, long total){
+        String eol = System.lineSeparator();
+        StringBuilder text = new StringBuilder();
+        text.append("# ").append(LocalDateTime.now().format(TIME)).append(' ')
+                .append(this.dbType).append(' ')
+                .append(String.format("%.2f ms", total / 1e6));
+        if (timing.getError() != null)
+            text.append(" ERROR");
+        text.append(eol).append("SQL: ").append(timing.getSql()).append(eol);
+        Object[] values = timing.getValues();
+        if (values != null && values.length > 0){
+            text.append("Parámetros: ");
+            for (int i = 0; i < values.length; i++){
+                Object value = Param.of(values[i]).getValue();
+                text.append(i > 0 ? ", " : "").append(value instanceof String
+                        ? "'" + value + "'" : String.valueOf(value));
+            }
+            text.append(eol);
+        }
+        long[] phases = timing.getPhases();
+        text.append("Tiempos (ms):");
+        for (int i = 0; i < phases.length; i++)
+            text.append(' ').append(PHASES[i]).append(String.format("=%.2f",
+                    phases[i] / 1e6));
+        long[] counts = timing.getCounts();
+        text.append(eol).append("Filas: ").append(counts[0])
+                .append(", afectadas: ").append(counts[1])
+                .append(", caracteres: ").append(counts[2]).append(eol);
+        if (timing.getError() != null)
+            text.append("Error: ").append(timing.getError().getMessage())
+                    .append(eol);
+        return text.toString();
+    }
+
+    /**
+     * Obtiene el plan de la consulta.
+     */
+    private String plan(QueryMetrics.Timing timing){
+        String eol = System.lineSeparator();
+        try {
+            return "Plan:" + eol + timing.getDatabase().explain(timing.getSql(),
+                    timing.getValues(), this.analyze) + eol;
+        } catch (SQLException | RuntimeException e){
+            return "Plan: no disponible (" + e.getMessage() + ")" + eol;
+        }
+    }
+
+    /**
+     * Obtiene el archivo compartido por todos los registros con la misma
+     * ruta.
+     */
+    private static RollingFile file(Path path, int maxSize, int files){
+        synchronized (FILES){
+            RollingFile file = FILES.get(path.toAbsolutePath());
+            if (file == null){
+                file = new RollingFile(path, maxSize, files);
+                FILES.put(path.toAbsolutePath(), file);
+            }
+            return file;
+        }
+    }
+
+    /**
+     * Archivo que se renueva al llegar a un tamaño.
+     */
+    private static class RollingFile {
+
+        private final Path path;
+        private final int maxSize;
+        private final int files;
+
+        RollingFile(Path path, int maxSize, int files){
+            this.path = path;
+            this.maxSize = maxSize;
+            this.files = files;
+        }
+
+        synchronized void write(String entry){
+            try {
+                if (this.path.getParent() != null)
+                    Files.createDirectories(this.path.getParent());
+                if (Files.exists(this.path) && Files.size(this.path)
+                        >= this.maxSize)
+                    this.roll();
+                try (Writer out = Files.newBufferedWriter(this.path,
+                        StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                        StandardOpenOption.APPEND)){
+                    out.write(entry);
+                    out.write(System.lineSeparator());
+                }
+            } catch (IOException e){
+                System.out.println("No se ha podido escribir en el registro de"
+                        + " consultas lentas: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Renombra los archivos antiguos (.1 a .2...) y el actual a .1.
+         */
+        private void roll() throws IOException{
+            if (this.files == 0){
+                Files.delete(this.path);
+                return;
+            }
+            Files.deleteIfExists(this.old(this.files));
+            for (int i = this.files - 1; i >= 1; i--)
+                if (Files.exists(this.old(i)))
+                    Files.move(this.old(i), this.old(i + 1),
+                            StandardCopyOption.REPLACE_EXISTING);
+            Files.move(this.path, this.old(1), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        private Path old(int number){
+            return this.path.resolveSibling(this.path.getFileName() + "."
+                    + number);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package dbaccess;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché LRU de sentencias preparadas de una conexión física, indexada por el
+ * texto SQL. Las sentencias que entrega se devuelven a la caché al cerrarlas,
+ * de forma que al repetir una misma consulta se reutiliza la sentencia ya
+ * preparada en el servidor en lugar de volver a analizarla.
+ * @author zelda
+ */
+class StatementCache {
+
+    private final int capacity;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final Map<String, Cached> entries;
+
+    /**
+     * @param capacity Número máximo de sentencias guardadas.
+     * @param hits Contador de sentencias reutilizadas.
+     * @param misses Contador de sentencias preparadas de nuevo.
+     */
+    StatementCache(int capacity, AtomicLong hits, AtomicLong misses){
+        this.capacity = capacity;
+        this.hits = hits;
+        this.misses = misses;
+        this.entries = new LinkedHashMap<String, Cached>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest){
+                if (size() <= StatementCache.this.capacity)
+                    return false;
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Comprueba si una llamada a <code>prepareStatement</code> se puede
+     * guardar en la caché: solo se guardan las que reciben el texto SQL y,
+     * opcionalmente, si devuelven las claves generadas o el tipo y la
+     * concurrencia del ResultSet.
+     * @param args Argumentos de la llamada.
+     * @return True si la sentencia se puede guardar.
+     */
+    static boolean isCacheable(Object[] args){
+        if (args == null || !(args[0] instanceof String))
+            return false;
+        return args.length == 1 || (args.length == 2 && args[1] instanceof Integer)
+                || (args.length == 3 && args[1] instanceof Integer 
+                && args[2] instanceof Integer);
+    }
+
+    /**
+     * Devuelve la sentencia guardada para la consulta o la prepara si no está
+     * en la caché o está siendo usada por otra parte del código.
+     * @param physical Conexión física sobre la que se prepara.
+     * @param method Variante de <code>prepareStatement</code> llamada.
+     * @param args Argumentos de la llamada.
+     * @return La sentencia preparada, se devuelve a la caché al cerrarla.
+     * @throws SQLException
+     */
+    synchronized PreparedStatement prepare(Connection physical, Method method,
+            Object[] args) throws SQLException{
+        String key = args.length == 1 ? (String)args[0] : args.length == 2
+                ? "keys" + args[1] + ":" + args[0]
+                : args[1] + ":" + args[2] + ":" + args[0];
+        Cached entry = this.entries.get(key);
+        if (entry != null && !entry.inUse){
+            this.hits.incrementAndGet();
+            return entry.lease();
+        }
+        this.misses.incrementAndGet();
+        PreparedStatement statement;
+        try {
+            statement = (PreparedStatement)method.invoke(physical, args);
+        } catch (InvocationTargetException e){
+            if (e.getCause() instanceof SQLException)
+                throw (SQLException)e.getCause();
+            throw new SQLException(e.getCause());
+        } catch (IllegalAccessException e){
+            throw new SQLException(e);
+        }
+        if (entry != null)
+            return statement; // La guardada está en uso, esta no se guarda.
+        entry = new Cached(statement);
+        this.entries.put(key, entry);
+        return entry.lease();
+    }
+
+    /**
+     * Cierra todas las sentencias guardadas, las que estén en uso se cierran
+     * cuando se devuelvan. Se llama al cerrar la conexión física.
+     */
+    synchronized void clear(){
+        List<Cached> current = new ArrayList<>(this.entries.values());
+        this.entries.clear();
+        for (Cached entry : current)
+            entry.evict();
+    }
+
+    /**
+     * @return Número de sentencias guardadas.
+     */
+    synchronized int size(){
+        return this.entries.size();
+    }
+
+    private synchronized void giveBack(Cached entry){
+        entry.inUse = false;
+        if (entry.evicted){
+            this.entries.values().remove(entry);
+            entry.closeQuietly();
+        }
+    }
+
+    /**
+     * Sentencia física guardada en la caché.
+     */
+    private class Cached {
+
+        private final PreparedStatement statement;
+        private boolean inUse;
+        private boolean evicted;
+        private boolean batched;
+
+        Cached(PreparedStatement statement){
+            this.statement = statement;
+        }
+
+        PreparedStatement lease(){
+            this.inUse = true;
+            return (PreparedStatement)Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new Lease(this));
+        }
+
+        void evict(){
+            this.evicted = true;
+            if (!this.inUse)
+                this.closeQuietly();
+        }
+
+        /**
+         * Deja la sentencia lista para el siguiente uso.
+         */
+        void reset() throws SQLException{
+            this.statement.clearParameters();
+            if (this.batched){
+                this.statement.clearBatch();
+                this.batched = false;
+            }
+        }
+
+        void closeQuietly(){
+            try {
+                this.statement.close();
+            } catch (SQLException e){
+                // La conexión ya no es utilizable, no hay nada más que hacer.
+            }
+        }
+    }
+
+    /**
+     * Intercepta las llamadas a la sentencia prestada: <code>close()</code>
+     * la devuelve a la caché y una vez cerrada no se puede utilizar.
+     */
+    private class Lease implements InvocationHandler {
+
+        private Cached entry;
+
+        Lease(Cached entry){
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+                throws Throwable{
+            switch (method.getName()){
+                case "close":
+                    if (this.entry != null){
+                        Cached current = this.entry;
+                        this.entry = null;
+                        try {
+                            current.reset();
+                        } catch (SQLException e){
+                            current.evicted = true;
+                        }
+                        giveBack(current);
+                    }
+                    return null;
+                case "isClosed":
+                    if (this.entry == null)
+                        return true;
+                    break;
+                case "addBatch":
+                    if (this.entry != null)
+                        this.entry.batched = true;
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached[" + (this.entry != null
+                            ? this.entry.statement : "closed") + "]";
+            }
+            if (this.entry == null)
+                throw new SQLException("La sentencia ya ha sido cerrada");
+            try {
+                return method.invoke(this.entry.statement, args);
+            } catch (InvocationTargetException e){
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package dbaccess;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Estadísticas de una consulta en un momento dado, tal como se muestran en la
+ * pantalla de estadísticas y en JMX. Los tiempos están en milisegundos.
+ * @author zelda
+ */
+public class StatementStatistics {
+
+    private final String database;
+    private final String sql;
+    private final long executions;
+    private final long cacheHits;
+    private final long errors;
+    private final String lastError;
+    private final double meanMillis;
+    private final double p50Millis;
+    private final double p95Millis;
+    private final double p99Millis;
+    private final double maxMillis;
+    private final double acquireMillis;
+    private final double prepareMillis;
+    private final double executeMillis;
+    private final double fetchMillis;
+    private final double renderMillis;
+    private final long rows;
+    private final long rowsAffected;
+    private final long bytes;
+
+    @ConstructorProperties({"database", "sql", "executions", "cacheHits",
+        "errors", "lastError", "meanMillis", "p50Millis", "p95Millis", "p99Millis",
+        "maxMillis", "acquireMillis", "prepareMillis", "executeMillis",
+        "fetchMillis", "renderMillis", "rows", "rowsAffected", "bytes"})
+    public StatementStatistics(String database, String sql, long executions,
+            long cacheHits, long errors, String lastError, double meanMillis, double p50Millis,
+            double p95Millis, double p99Millis, double maxMillis,
+            double acquireMillis, double prepareMillis, double executeMillis,
+            double fetchMillis, double renderMillis, long rows,
+            long rowsAffected, long bytes){
+        this.database = database;
+        this.sql = sql;
+        this.executions = executions;
+        this.cacheHits = cacheHits;
+        this.errors = errors;
+        this.lastError = lastError;
+        this.meanMillis = meanMillis;
+        this.p50Millis = p50Millis;
+        this.p95Millis = p95Millis;
+        this.p99Millis = p99Millis;
+        this.maxMillis = maxMillis;
+        this.acquireMillis = acquireMillis;
+        this.prepareMillis = prepareMillis;
+        this.executeMillis = executeMillis;
+        this.fetchMillis = fetchMillis;
+        this.renderMillis = renderMillis;
+        this.rows = rows;
+        this.rowsAffected = rowsAffected;
+        this.bytes = bytes;
+    }
+
+    /**
+     * @return Tipo de base de datos (mysql, sqlserver...).
+     */
+    public String getDatabase(){
+        return this.database;
+    }
+
+    /**
+     * @return Texto SQL normalizado, con los literales sustituidos por ?.
+     */
+    public String getSql(){
+        return this.sql;
+    }
+
+    /**
+     * @return Veces que se ha ejecutado.
+     */
+    public long getExecutions(){
+        return this.executions;
+    }
+
+    /**
+     * @return Veces que se ha obtenido de la caché de resultados, incluidas
+     * en las ejecuciones.
+     */
+    public long getCacheHits(){
+        return this.cacheHits;
+    }
+
+    /**
+     * @return Veces que ha terminado con error.
+     */
+    public long getErrors(){
+        return this.errors;
+    }
+
+    /**
+     * @return Mensaje del último error, null si no ha fallado nunca.
+     */
+    public String getLastError(){
+        return this.lastError;
+    }
+
+    /**
+     * @return Tiempo medio total.
+     */
+    public double getMeanMillis(){
+        return this.meanMillis;
+    }
+
+    /**
+     * @return Mediana del tiempo total.
+     */
+    public double getP50Millis(){
+        return this.p50Millis;
+    }
+
+    /**
+     * @return Percentil 95 del tiempo total.
+     */
+    public double getP95Millis(){
+        return this.p95Millis;
+    }
+
+    /**
+     * @return Percentil 99 del tiempo total.
+     */
+    public double getP99Millis(){
+        return this.p99Millis;
+    }
+
+    /**
+     * @return Tiempo total máximo.
+     */
+    public double getMaxMillis(){
+        return this.maxMillis;
+    }
+
+    /**
+     * @return Tiempo medio de espera por una conexión del pool.
+     */
+    public double getAcquireMillis(){
+        return this.acquireMillis;
+    }
+
+    /**
+     * @return Tiempo medio de preparación de la sentencia.
+     */
+    public double getPrepareMillis(){
+        return this.prepareMillis;
+    }
+
+    /**
+     * @return Tiempo medio de ejecución en el servidor.
+     */
+    public double getExecuteMillis(){
+        return this.executeMillis;
+    }
+
+    /**
+     * @return Tiempo medio de lectura de las filas del resultado.
+     */
+    public double getFetchMillis(){
+        return this.fetchMillis;
+    }
+
+    /**
+     * @return Tiempo medio de dibujado de la tabla.
+     */
+    public double getRenderMillis(){
+        return this.renderMillis;
+    }
+
+    /**
+     * @return Filas devueltas en total.
+     */
+    public long getRows(){
+        return this.rows;
+    }
+
+    /**
+     * @return Filas insertadas, actualizadas o eliminadas en total.
+     */
+    public long getRowsAffected(){
+        return this.rowsAffected;
+    }
+
+    /**
+     * @return Caracteres escritos en consola en total.
+     */
+    public long getBytes(){
+        return this.bytes;
+    }
+}
@@ -0,0 +1,241 @@
+package dbaccess;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Dibuja tablas en consola con el formato <code>+===+</code> de la clase
+ * Database. Los bordes y los espacios de relleno se calculan una sola vez por
+ * tabla y cada fila se compone directamente en un buffer de caracteres que se
+ * reutiliza, de forma que no se crean cadenas de formato por cada celda.
+ * El buffer se vuelca a la salida cuando se llena o al terminar la tabla.
+ * @author zelda
+ */
+public class TableRenderer {
+
+    private static final char[] NEW_LINE = System.lineSeparator().toCharArray();
+    private static final char[] NULL = "null".toCharArray();
+
+    private final PrintStream out;
+    private final int[] widths;
+    private final int totalSize;
+    private final boolean wrap;
+    private final char[] interline;
+    private final char[] border;
+    private final char[] spaces;
+    private final char[] buffer;
+    private int position;
+    private long written;
+    private boolean first = true;
+
+    /**
+     * Crea un renderizador que escribe en la salida estándar.
+     * @param widths Ancho de cada una de las columnas.
+     * @param wrap True para partir en varias líneas los valores más anchos que
+     * su columna, false para truncarlos.
+     */
+    public TableRenderer(int[] widths, boolean wrap){
+        this(widths, wrap, System.out);
+    }
+
+    /**
+     * Crea un renderizador.
+     * @param widths Ancho de cada una de las columnas.
+     * @param wrap True para partir en varias líneas los valores más anchos que
+     * su columna, false para truncarlos.
+     * @param out Salida en la que se escribe la tabla.
+     */
+    public TableRenderer(int[] widths, boolean wrap, PrintStream out){
+        this.out = out;
+        this.widths = widths.clone();
+        this.wrap = wrap;
+        int sum = 0, max = 0;
+        for (int width : this.widths){
+            sum += width;
+            max = Math.max(max, width);
+        }
+        int nColumns = this.widths.length;
+        /* (nColumns * 2) -> 2 espacios adicionales a cada lado para cada dato
+         * (nColumns - 1) -> el espacio para cada columna separadora. */
+        this.totalSize = sum + (nColumns * 2) + (nColumns - 1);
+        this.border = new char[this.totalSize + 2];
+        Arrays.fill(this.border, '=');
+        this.border[0] = this.border[this.border.length - 1] = '+';
+        this.interline = new char[sum + nColumns * 3 + 1];
+        Arrays.fill(this.interline, '=');
+        int pos = 0;
+        this.interline[pos] = '+';
+        for (int width : this.widths){
+            pos += width + 3;
+            this.interline[pos] = '+';
+        }
+        this.spaces = new char[Math.max(max, this.totalSize) + 3];
+        Arrays.fill(this.spaces, ' ');
+        this.buffer = new char[Math.max(8192, (this.totalSize + 2) * 4)];
+    }
+
+    /**
+     * @return Longitud total de la tabla sin contar los bordes laterales.
+     */
+    public int getTotalSize(){
+        return this.totalSize;
+    }
+
+    /**
+     * @return Caracteres volcados a la salida hasta el momento.
+     */
+    public long getWritten(){
+        return this.written;
+    }
+
+    /**
+     * Dibuja la cabecera con el título de la tabla.
+     * @param tableName Nombre de la tabla o vista.
+     */
+    public void title(String tableName){
+        String title = tableName.toUpperCase();
+        int titleLength = tableName.length();
+        this.write(this.border).write(NEW_LINE);
+        this.write('|').pad((this.totalSize - titleLength) / 2)
+                .write(title).pad((this.totalSize - titleLength + 1) / 2)
+                .write('|').write(NEW_LINE);
+        this.write(this.border).write(NEW_LINE);
+    }
+
+    /**
+     * Dibuja la fila con los nombres de las columnas y el borde inferior.
+     * @param labels Nombres de las columnas.
+     */
+    public void head(String[] labels){
+        this.cells(labels);
+        this.separator();
+    }
+
+    /**
+     * Dibuja una fila de datos, separándola de la anterior si la hay.
+     * @param values Valores de la fila, null se muestra como "null".
+     */
+    public void row(String[] values){
+        if (!this.first)
+            this.separator();
+        this.cells(values);
+        this.first = false;
+    }
+
+    /**
+     * Dibuja la línea que separa dos filas.
+     */
+    public void separator(){
+        this.write('\n').write(this.interline).write(NEW_LINE);
+    }
+
+    /**
+     * Dibuja los valores de una fila centrados en sus columnas, sin saltar de
+     * línea al final.
+     * @param values Valores de la fila, null se muestra como "null".
+     */
+    public void cells(String[] values){
+        int lines = 1;
+        if (this.wrap)
+            for (int i = 0; i < values.length; i++)
+                if (values[i] != null && this.widths[i] > 0)
+                    lines = Math.max(lines, (values[i].length()
+                            + this.widths[i] - 1) / this.widths[i]);
+        for (int line = 0; line < lines; line++){
+            if (line > 0)
+                this.write(NEW_LINE);
+            this.write('|');
+            for (int i = 0; i < values.length; i++){
+                int width = this.widths[i];
+                if (values[i] == null){
+                    this.cell(NULL, width);
+                    continue;
+                }
+                int start = Math.min(values[i].length(), line * width);
+                int end = Math.min(values[i].length(), start + width);
+                int length = end - start;
+                this.pad((width - length + 2) / 2);
+                this.reserve(length);
+                values[i].getChars(start, end, this.buffer, this.position);
+                this.position += length;
+                this.pad((width - length + 3) / 2).write('|');
+            }
+        }
+    }
+
+    /**
+     * Dibuja el borde final de la tabla y vuelca el buffer a la salida.
+     */
+    public void end(){
+        this.write('\n').write(this.border).write(NEW_LINE);
+        this.flush();
+    }
+
+    /**
+     * Vuelca a la salida lo que queda en el buffer.
+     */
+    public void flush(){
+        this.drain();
+        this.out.flush();
+    }
+
+    private void cell(char[] value, int width){
+        int length = Math.min(value.length, width);
+        this.pad((width - length + 2) / 2);
+        this.reserve(length);
+        System.arraycopy(value, 0, this.buffer, this.position, length);
+        this.position += length;
+        this.pad((width - length + 3) / 2).write('|');
+    }
+
+    private TableRenderer pad(int count){
+        if (count > 0){
+            this.reserve(count);
+            System.arraycopy(this.spaces, 0, this.buffer, this.position, count);
+            this.position += count;
+        }
+        return this;
+    }
+
+    private TableRenderer write(char c){
+        this.reserve(1);
+        this.buffer[this.position++] = c;
+        return this;
+    }
+
+    private TableRenderer write(char[] chars){
+        this.reserve(chars.length);
+        System.arraycopy(chars, 0, this.buffer, this.position, chars.length);
+        this.position += chars.length;
+        return this;
+    }
+
+    private TableRenderer write(String text){
+        int offset = 0;
+        while (offset < text.length()){
+            this.reserve(1);
+            int length = Math.min(text.length() - offset,
+                    this.buffer.length - this.position);
+            text.getChars(offset, offset + length, this.buffer, this.position);
+            this.position += length;
+            offset += length;
+        }
+        return this;
+    }
+
+    /**
+     * Se asegura de que hay hueco en el buffer, volcándolo si es necesario.
+     */
+    private void reserve(int count){
+        if (this.position + count > this.buffer.length)
+            this.drain();
+    }
+
+    private void drain(){
+        if (this.position > 0){
+            this.out.print(new String(this.buffer, 0, this.position));
+            this.written += this.position;
+            this.position = 0;
+        }
+    }
+}
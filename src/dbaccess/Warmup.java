@@ -0,0 +1,105 @@
+package dbaccess;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import utils.Configuration;
+
+/**
+ * Calentamiento de las bases de datos al iniciar la aplicación. Mientras se
+ * muestra el menú principal, en segundo plano y a la vez para todas las
+ * bases de datos que lo tienen activado (<b>warmup.enabled</b>), se cargan
+ * las clases del driver, se abren las conexiones mínimas del pool (DNS, TLS
+ * y autenticación) y se preparan en cada una las sentencias conocidas de su
+ * menú, que quedan en la caché de sentencias del pool. Así la primera
+ * operación de cada menú es tan rápida como las siguientes.
+ * <p>
+ * Las bases de datos calentadas se comparten entre las visitas a su menú y
+ * se cierran al salir de la aplicación (ver close()).
+ * @author zelda
+ */
+class Warmup {
+
+    private static final Map<String, String[]> STATEMENTS = new HashMap<>();
+    private static final Map<String, Database> DATABASES = new ConcurrentHashMap<>();
+    private static ExecutorService executor;
+
+    static {
+        STATEMENTS.put("MySQL", MySQL.STATEMENTS);
+        STATEMENTS.put("SQLServer", SQLServer.STATEMENTS);
+        STATEMENTS.put("PostgreSQL", PostgreSQL.STATEMENTS);
+        STATEMENTS.put("SQLite", SQLite.STATEMENTS);
+    }
+
+    private Warmup(){
+    }
+
+    /**
+     * Lanza el calentamiento de las bases de datos de una carpeta de
+     * configuración que lo tienen activado. El nombre de cada archivo
+     * <em>.cfg</em> es el tipo de la base de datos. No espera a que termine.
+     * @param folder Carpeta con los archivos de configuración.
+     */
+    static synchronized void start(String folder){
+        File[] files = new File(folder).listFiles(
+                (dir, name) -> name.toLowerCase().endsWith(".cfg"));
+        if (files == null || executor != null)
+            return;
+        Arrays.sort(files);
+        for (File file : files){
+            String name = file.getName().substring(0, file.getName().length() - 4);
+            if (!STATEMENTS.containsKey(name))
+                continue;
+            Properties config = Configuration.getConfig(file.getPath());
+            if (config == null || !Configuration.getBoolean(config,
+                    "warmup.enabled", false))
+                continue;
+            Database database = Database.create(name, config);
+            DATABASES.put(name, database);
+            if (executor == null)
+                executor = Executors.newCachedThreadPool(task -> {
+                    Thread thread = new Thread(task, "warmup");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            executor.execute(() -> database.warmUp(STATEMENTS.get(name)));
+        }
+    }
+
+    /**
+     * @param dbType Tipo de base de datos.
+     * @return La base de datos calentada de ese tipo, que puede estar
+     * todavía calentándose, o null si no tiene el calentamiento activado.
+     */
+    static Database get(String dbType){
+        return DATABASES.get(dbType);
+    }
+
+    /**
+     * Cierra una base de datos al salir de su menú, salvo que sea una de las
+     * calentadas, que siguen abiertas hasta salir de la aplicación.
+     * @param database La base de datos.
+     */
+    static void release(Database database){
+        if (!DATABASES.containsValue(database))
+            database.close();
+    }
+
+    /**
+     * Cierra todas las bases de datos calentadas.
+     */
+    static synchronized void close(){
+        if (executor != null){
+            executor.shutdownNow();
+            executor = null;
+        }
+        for (Database database : DATABASES.values())
+            database.close();
+        DATABASES.clear();
+    }
+}
@@ -5,21 +5,25 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Clase con los mtodos que nos permitira trabajar con un fichero externo de 
- * configuracin.
+ * Clase con los métodos que nos permitira trabajar con un fichero externo de 
+ * configuración.
  * https://docs.oracle.com/javase/8/docs/api/java/util/Properties.html
  * https://mkyong.com/java/java-properties-file-examples/
  * @author zelda
  */
 public class Configuration {
     
+    private static final Map<String, Properties> LOADED = new ConcurrentHashMap<>();
+    
     /** 
-     * Carga las propiedades de configuracin desde un archivo externo.
-     * @param url Ruta del archivo de configuracin.
-     * @return Una coleccin con las propiedades de configuracin.
+     * Carga las propiedades de configuración desde un archivo externo.
+     * @param url Ruta del archivo de configuración.
+     * @return Una colección con las propiedades de configuración.
      */
     public static Properties loadConfig(String url){
         try (
@@ -32,9 +36,65 @@ public class Configuration {
             current.load(file);
             return current;
         } catch (IOException e){
-            System.out.println("No se han podido cargar el archivo de configuracin:");
+            System.out.println("No se han podido cargar el archivo de configuración:");
             e.printStackTrace();
             return null;
         }
-    }    
+    }
+    
+    /**
+     * Obtiene las propiedades de un archivo de configuración, que solo se lee
+     * la primera vez: las siguientes se devuelven las mismas propiedades.
+     * @param url Ruta del archivo de configuración.
+     * @return Una colección con las propiedades de configuración, null si no
+     * se ha podido leer.
+     */
+    public static Properties getConfig(String url){
+        Properties config = LOADED.get(url);
+        if (config == null){
+            config = loadConfig(url);
+            if (config != null){
+                Properties previous = LOADED.putIfAbsent(url, config);
+                if (previous != null)
+                    config = previous;
+            }
+        }
+        return config;
+    }
+    
+    /**
+     * Obtiene un valor entero de la configuración.
+     * @param config Colección con las propiedades de configuración.
+     * @param key Nombre de la propiedad.
+     * @param defaultValue Valor que se devuelve si la propiedad no existe o no
+     * es un número válido.
+     * @return El valor de la propiedad.
+     */
+    public static int getInt(Properties config, String key, int defaultValue){
+        String value = config != null ? config.getProperty(key) : null;
+        if (value == null || value.trim().isEmpty())
+            return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e){
+            System.out.println("Valor no válido para '" + key + "', se usará " 
+                    + defaultValue);
+            return defaultValue;
+        }
+    }
+    
+    /**
+     * Obtiene un valor booleano de la configuración.
+     * @param config Colección con las propiedades de configuración.
+     * @param key Nombre de la propiedad.
+     * @param defaultValue Valor que se devuelve si la propiedad no existe.
+     * @return El valor de la propiedad.
+     */
+    public static boolean getBoolean(Properties config, String key, 
+            boolean defaultValue){
+        String value = config != null ? config.getProperty(key) : null;
+        if (value == null || value.trim().isEmpty())
+            return defaultValue;
+        return Boolean.parseBoolean(value.trim());
+    }
 }
\ No newline at end of file
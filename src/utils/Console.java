@@ -1,10 +1,20 @@
 package utils;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
 import java.util.Scanner;
 
 /**
  * Some Static method to work with console.
+ * <p>
+ * All the methods read from the same buffered input (System.in by default),
+ * so the lines piped in are not lost between calls. In non interactive mode
+ * (see setInteractive()) the prompts are not shown and toContinue() does not
+ * wait, to run scripted operations.
  * @author zelda
  */
 public class Console {
@@ -14,12 +24,43 @@ public class Console {
      */
     public static final String eof = System.getProperty("line.separator");
     
+    private static BufferedReader input = new BufferedReader(
+            new InputStreamReader(System.in));
+    private static boolean interactive = true;
+    
+    /**
+     * Change the input read by all the methods.
+     * @param reader The new input, for example the parameters of a scripted
+     * operation, one per line.
+     */
+    public static void setInput(Reader reader){
+        input = reader instanceof BufferedReader ? (BufferedReader)reader 
+                : new BufferedReader(reader);
+    }
+    
+    /**
+     * @param value False to hide the prompts and skip the toContinue() 
+     * pauses.
+     */
+    public static void setInteractive(boolean value){
+        interactive = value;
+    }
+    
+    /**
+     * @return True if the prompts are shown (default).
+     */
+    public static boolean isInteractive(){
+        return interactive;
+    }
+    
     /**
      * Show a message and wait util the user presses Enter to continue.
      */
     public static void toContinue() {
+        if (!interactive)
+            return;
         System.out.println(eof + "Presiona ENTER para continuar...");
-        new Scanner(System.in).nextLine();
+        nextLine();
     }
     
     /**
@@ -31,8 +72,8 @@ public class Console {
      * Return -1 in the case of error ocurred.
      */
     public static Number readNumber(String message, String type){
-        Scanner in = new Scanner(System.in);
-        System.out.print(message);
+        prompt(message);
+        Scanner in = new Scanner(nextToken());
         switch (type.toLowerCase().trim()){
             case "byte":
                 return in.nextByte();
@@ -57,9 +98,8 @@ public class Console {
      * @return The string writed by the user.
      */
     public static String readLine(String message){
-        Scanner in = new Scanner(System.in);
-        System.out.print(message);
-        return in.nextLine();
+        prompt(message);
+        return nextLine();
     }
     
     /**
@@ -68,9 +108,44 @@ public class Console {
      * @return The first character writed by the user.
      */
     public static char readCharacter(String message){
-        Scanner in = new Scanner(System.in);
-        System.out.print(message);
-        return in.next().charAt(0);
+        prompt(message);
+        return nextToken().charAt(0);
+    }
+    
+    /**
+     * Show a prompt, only in interactive mode.
+     */
+    private static void prompt(String message){
+        if (interactive)
+            System.out.print(message);
+    }
+    
+    /**
+     * Read the next line of the input.
+     * @throws NoSuchElementException If there are no more lines.
+     */
+    private static String nextLine(){
+        String line;
+        try {
+            line = input.readLine();
+        } catch (IOException e){
+            throw new NoSuchElementException(e.getMessage());
+        }
+        if (line == null)
+            throw new NoSuchElementException("No line found");
+        return line;
+    }
+    
+    /**
+     * Read the next line that is not blank, without the spaces around it.
+     * @throws NoSuchElementException If there are no more lines.
+     */
+    private static String nextToken(){
+        String line;
+        do {
+            line = nextLine().trim();
+        } while (line.isEmpty());
+        return line;
     }
     
     /**
@@ -128,7 +203,7 @@ public class Console {
             if (Console.validateQuestion(answer))
                 validChar = true;
             else
-                System.out.println("Opcin no vlida... ");
+                System.out.println("Opción no válida... ");
         } while(!validChar);
         if (Character.toLowerCase(answer) == 's')
             return true;
@@ -166,7 +241,7 @@ public class Console {
                 int value = (int)readNumber(message, "int");
                 return value;
             } catch (InputMismatchException e){
-                System.out.println("Debe introducir un valor numrico... ");
+                System.out.println("Debe introducir un valor numérico... ");
             }
         } while (true);
     }
@@ -182,7 +257,7 @@ public class Console {
                 double value = (double)readNumber(message, "double");
                 return value;
             } catch (InputMismatchException e){
-                System.out.println("Debe introducir un valor numrico vlido... ");
+                System.out.println("Debe introducir un valor numérico válido... ");
             }
         } while (true);
     }
@@ -199,7 +274,7 @@ public class Console {
             if (inRange(line.length(), 1, maxLength))
                 return line;
             else
-                System.out.println("El nmero mximo de caracteres es " + 
+                System.out.println("El número máximo de caracteres es " + 
                         maxLength + "... ");
         } while (true);
     }
@@ -213,13 +288,13 @@ public class Console {
     public static String validEmail(String message){
         do {
             String line = readLine(message).trim();
-            String regex = "^[\\w!#$%&*+/=?`{|}~^-]+(?:\\.[\\w!#$%&*+/=?"
+            String regex = "^[\\w!#$%&’*+/=?`{|}~^-]+(?:\\.[\\w!#$%&’*+/=?"
                     + "`{|}~^-]+)*@(?:[a-zA-Z0-9-]+\\.)+[a-zA-Z]{2,6}$";
             if (line.matches(regex))
                 return line;
             else
-                System.out.println("Debes introducir una direccin de correo "
-                        + "vlida... ");
+                System.out.println("Debes introducir una dirección de correo "
+                        + "válida... ");
         } while(true);
     }
 }